@@ -0,0 +1,114 @@
+package net.openesb.standalone.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPU cost of the gzip encoding of the REST API responses, and bytes saved.
+ *
+ * <p>The payload looks like an endpoint listing with statistics, of
+ * <code>entries</code> endpoints. It is written in 8 KB chunks, as the
+ * HTTP server output buffer does, to a stream counting the encoded bytes:
+ * the Grizzly gzip encoding deflates the body chunk by chunk in the same
+ * way. The sizes are printed at the end of each trial.</p>
+ *
+ * @author OpenESB Community
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"10", "100", "1000"})
+    private int entries;
+
+    private byte[] payload;
+    private CountingOutputStream sink;
+
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":\"{http://openesb.net/orders/v1}OrderService,OrderPort").append(i)
+                    .append("\",\"componentName\":\"sun-http-binding\",\"serviceAssembly\":\"OrdersCompositeApp\"")
+                    .append(",\"provider\":").append(i % 2 == 0)
+                    .append(",\"state\":\"Started\",\"statistics\":{\"activeExchanges\":").append(i % 7)
+                    .append(",\"receivedRequests\":").append(1000L + 37L * i)
+                    .append(",\"receivedReplies\":").append(990L + 31L * i)
+                    .append(",\"receivedErrors\":").append(i % 5)
+                    .append(",\"sentRequests\":").append(500L + 13L * i)
+                    .append(",\"responseTimeAverage\":").append(12.5 + (i % 11))
+                    .append(",\"lastActivity\":\"2015-03-0").append(1 + i % 9).append("T10:15:30Z\"}}");
+        }
+        payload = json.append(']').toString().getBytes("UTF-8");
+        sink = new CountingOutputStream();
+    }
+
+    @TearDown
+    public void report() throws IOException {
+        sink.count = 0;
+        gzip();
+        System.out.printf("%n%d endpoints: %d bytes, %d bytes gzip encoded (%.1f%% saved)%n",
+                entries, payload.length, sink.count,
+                100.0 * (payload.length - sink.count) / payload.length);
+    }
+
+    @Benchmark
+    public long identity() throws IOException {
+        sink.count = 0;
+        write(sink);
+        return sink.count;
+    }
+
+    @Benchmark
+    public long gzip() throws IOException {
+        sink.count = 0;
+        GZIPOutputStream out = new GZIPOutputStream(sink, CHUNK_SIZE);
+        write(out);
+        out.finish();
+        return sink.count;
+    }
+
+    private void write(OutputStream out) throws IOException {
+        for (int offset = 0; offset < payload.length; offset += CHUNK_SIZE) {
+            out.write(payload, offset, Math.min(CHUNK_SIZE, payload.length - offset));
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package net.openesb.standalone.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import net.openesb.standalone.logging.FileHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of <code>FileHandler.publish</code> with 1, 8 and 64 logging
+ * threads, in the synchronous and asynchronous modes.
+ *
+ * <p>Records are written to a temporary directory, deleted at the end of
+ * the trial.</p>
+ *
+ * @author OpenESB Community
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileHandlerBenchmark {
+
+    private static final String PREFIX = "net.openesb.standalone.logging.FileHandler.";
+
+    @Param({"false", "true"})
+    private boolean async;
+
+    private File directory;
+    private FileHandler handler;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = File.createTempFile("filehandler", "");
+        directory.delete();
+        directory.mkdirs();
+
+        String configuration = PREFIX + "formatter=net.openesb.standalone.logging.LogFormatter\n"
+                + PREFIX + "encoding=UTF-8\n"
+                + PREFIX + "async=" + async + "\n";
+        LogManager.getLogManager().readConfiguration(
+                new ByteArrayInputStream(configuration.getBytes("ISO-8859-1")));
+
+        handler = new FileHandler(directory.getPath(), "benchmark", ".log");
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private void publish() {
+        LogRecord record = new LogRecord(Level.INFO, "Message exchange {0} sent to {1}");
+        record.setLoggerName("com.sun.jbi.messaging.DeliveryChannelImpl");
+        record.setParameters(new Object[]{"1234567890", "sun-http-binding"});
+        handler.publish(record);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void publish1() {
+        publish();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void publish8() {
+        publish();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void publish64() {
+        publish();
+    }
+}
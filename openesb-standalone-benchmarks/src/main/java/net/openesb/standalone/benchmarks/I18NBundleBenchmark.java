@@ -0,0 +1,75 @@
+package net.openesb.standalone.benchmarks;
+
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.openesb.standalone.utils.I18NBundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the i18n messages of the container.
+ *
+ * <p><code>messageFormat</code> is the way messages were formatted before
+ * patterns were cached: a bundle lookup and a <code>MessageFormat</code>
+ * parse for every message. The <code>disabled</code> benchmarks log to a
+ * logger which is not enabled for the level.</p>
+ *
+ * @author OpenESB Community
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class I18NBundleBenchmark {
+
+    private static final String KEY = "DS_CLASS_NOT_FOUND";
+
+    private I18NBundle bundle;
+    private ResourceBundle resourceBundle;
+    private Logger logger;
+
+    private String className = "org.h2.Driver";
+    private String poolName = "jdbc/orders";
+
+    @Setup
+    public void setup() {
+        bundle = I18NBundle.getBundle();
+        resourceBundle = ResourceBundle.getBundle("net.openesb.standalone.Bundle");
+        logger = Logger.getLogger("net.openesb.standalone.benchmarks.disabled");
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.WARNING);
+    }
+
+    @Benchmark
+    public String messageFormat() {
+        return MessageFormat.format(resourceBundle.getString(KEY), className, poolName);
+    }
+
+    @Benchmark
+    public String getMessage() {
+        return bundle.getMessage(KEY, className, poolName);
+    }
+
+    @Benchmark
+    public void disabledEager() {
+        logger.log(Level.FINE, bundle.getMessage(KEY, className, poolName));
+    }
+
+    @Benchmark
+    public void disabledDeferred() {
+        bundle.log(logger, Level.FINE, KEY, className, poolName);
+    }
+}
@@ -0,0 +1,111 @@
+package net.openesb.standalone.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import net.openesb.standalone.logging.JsonFormatter;
+import net.openesb.standalone.logging.LogFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of formatting one record with the formatters of the bootstrap.
+ *
+ * @author OpenESB Community
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogFormatterBenchmark {
+
+    private LogFormatter formatter;
+    private JsonFormatter jsonFormatter;
+
+    private LogRecord simple;
+    private LogRecord parameters;
+    private LogRecord thrown;
+
+    private Writer sink;
+
+    @Setup
+    public void setup() {
+        formatter = new LogFormatter();
+        jsonFormatter = new JsonFormatter();
+
+        simple = record(Level.INFO, "OESE-1500: Using HTTP Port: 4848");
+
+        parameters = record(Level.WARNING, "Datasource class [{0}] can not be found for {1}");
+        parameters.setParameters(new Object[]{"org.h2.Driver", "jdbc/orders"});
+
+        thrown = record(Level.SEVERE, "Unable to deploy service assembly");
+        thrown.setThrown(new IllegalStateException("boom", new IOException("disk full")));
+
+        sink = new NullWriter();
+    }
+
+    private static LogRecord record(Level level, String message) {
+        LogRecord record = new LogRecord(level, message);
+        record.setLoggerName("com.sun.jbi.framework.ComponentFramework");
+        record.setSourceClassName("com.sun.jbi.framework.ComponentFramework");
+        record.setSourceMethodName("startComponent");
+        return record;
+    }
+
+    @Benchmark
+    public String simple() {
+        return formatter.format(simple);
+    }
+
+    @Benchmark
+    public String parameters() {
+        return formatter.format(parameters);
+    }
+
+    @Benchmark
+    public String thrown() {
+        return formatter.format(thrown);
+    }
+
+    @Benchmark
+    public void simpleToWriter(Blackhole bh) throws IOException {
+        formatter.format(simple, sink);
+        bh.consume(sink);
+    }
+
+    @Benchmark
+    public String json() {
+        return jsonFormatter.format(parameters);
+    }
+
+    /**
+     * Writer discarding everything, to measure the formatting only.
+     */
+    private static final class NullWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package net.openesb.standalone.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.openesb.standalone.settings.ImmutableSettings;
+import net.openesb.standalone.settings.Settings;
+import net.openesb.standalone.settings.SettingsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the <code>ImmutableSettings</code> lookups done when the
+ * services of the container are configured.
+ *
+ * @author OpenESB Community
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SettingsBenchmark {
+
+    private Settings settings;
+
+    @Setup
+    public void setup() {
+        Map<String, String> values = new HashMap<String, String>();
+        for (int i = 0; i < 50; i++) {
+            values.put("service" + i + ".property", "value" + i);
+        }
+        values.put("http.port", "4848");
+        values.put("http.enabled", "true");
+        values.put("instance.name", "server");
+        settings = new ImmutableSettings(values);
+    }
+
+    @Benchmark
+    public String get() {
+        return settings.get("instance.name");
+    }
+
+    @Benchmark
+    public String getDefault() {
+        return settings.get("http.binding", "0.0.0.0");
+    }
+
+    @Benchmark
+    public Integer getAsInt() throws SettingsException {
+        return settings.getAsInt("http.port", 4848);
+    }
+
+    @Benchmark
+    public Boolean getAsBoolean() {
+        return settings.getAsBoolean("http.enabled", Boolean.TRUE);
+    }
+}
@@ -0,0 +1,57 @@
+package net.openesb.standalone.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.openesb.standalone.utils.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the system property replacement applied to configuration values.
+ *
+ * @author OpenESB Community
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringUtilsBenchmark {
+
+    private String plain;
+    private String oneProperty;
+    private String severalProperties;
+
+    @Setup
+    public void setup() {
+        System.setProperty("openesb.home", "/opt/openesb");
+        System.setProperty("openesb.instance", "instance-1");
+
+        plain = "/opt/openesb/logs/server.log";
+        oneProperty = "${openesb.home}/logs/server.log";
+        severalProperties = "${openesb.home}/instances/${openesb.instance}/${unknown.property}/server.log";
+    }
+
+    @Benchmark
+    public String plain() {
+        return StringUtils.replace(plain);
+    }
+
+    @Benchmark
+    public String oneProperty() {
+        return StringUtils.replace(oneProperty);
+    }
+
+    @Benchmark
+    public String severalProperties() {
+        return StringUtils.replace(severalProperties);
+    }
+}
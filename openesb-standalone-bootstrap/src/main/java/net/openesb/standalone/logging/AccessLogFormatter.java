@@ -0,0 +1,35 @@
+package net.openesb.standalone.logging;
+
+import java.util.logging.LogRecord;
+
+/**
+ * Formats access log records as the bare line, without timestamp nor level:
+ * the line carries its own fields.
+ *
+ * <p>A record with the <code>{0}</code> message and a single parameter is
+ * written as the parameter text, so that the producer can hand over a
+ * captured entry and defer its rendering to the writer thread.</p>
+ *
+ * @author OpenESB Community
+ */
+public class AccessLogFormatter extends LogFormatter {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    @Override
+    boolean needsSource(LogRecord record) {
+        return false;
+    }
+
+    @Override
+    void format(LogRecord record, StringBuilder sb, FormatBuffer buffer) {
+        Object[] parameters = record.getParameters();
+        if ("{0}".equals(record.getMessage())
+                && parameters != null && parameters.length == 1) {
+            sb.append(parameters[0]);
+        } else {
+            sb.append(formatMessage(record));
+        }
+        sb.append(LINE_SEPARATOR);
+    }
+}
@@ -0,0 +1,25 @@
+package net.openesb.standalone.logging;
+
+/**
+ * {@link FileHandler} of the HTTP access log, configured by the properties
+ * prefixed by this class name.
+ *
+ * <p>It accepts the same properties as <code>FileHandler</code>, rotation,
+ * retention, compression and asynchronous mode included, with
+ * <code>access</code> as the default prefix and {@link AccessLogFormatter}
+ * as the default formatter. Attach it to the
+ * <code>net.openesb.standalone.http.access</code> logger.</p>
+ *
+ * @author OpenESB Community
+ */
+public class AccessLogHandler extends FileHandler {
+
+    private static final String CLASS_NAME = AccessLogHandler.class.getName();
+
+    public AccessLogHandler() {
+        super(null, LogProperties.getProperty(CLASS_NAME + ".prefix", "access"), null);
+        if (LogProperties.getProperty(CLASS_NAME + ".formatter", null) == null) {
+            setFormatter(new AccessLogFormatter());
+        }
+    }
+}
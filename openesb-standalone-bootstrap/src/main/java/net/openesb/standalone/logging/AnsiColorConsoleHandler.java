@@ -1,7 +1,5 @@
 package net.openesb.standalone.logging;
 
-import java.util.logging.LogRecord;
-
 /**
  *
  * @author David BRASSELY (brasseld at gmail.com)
@@ -10,7 +8,7 @@ import java.util.logging.LogRecord;
 public class AnsiColorConsoleHandler extends BaseColorConsoleHandler {
     
     @Override
-    public void publish(LogRecord record) {
-        System.err.print(logRecordToString(record));
+    protected void write(String text) {
+        System.err.print(text);
     }
 }
\ No newline at end of file
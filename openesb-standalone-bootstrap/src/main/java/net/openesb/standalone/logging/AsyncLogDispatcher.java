@@ -0,0 +1,287 @@
+package net.openesb.standalone.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands <code>LogRecord</code>s over from any number of logging threads to a
+ * single background thread through a {@link RingBuffer}.
+ *
+ * <p>Producers never take a lock. The writer thread drains the buffer in
+ * batches and passes each batch to {@link #process(List)}. When the buffer
+ * is full, the configured {@link OverflowPolicy} decides whether the
+ * producer waits for free space or the record is discarded.</p>
+ *
+ * @author OpenESB Community
+ */
+abstract class AsyncLogDispatcher implements Runnable {
+
+    /**
+     * What to do with a record when the ring buffer is full.
+     */
+    enum OverflowPolicy {
+        /**
+         * The producer waits until the writer frees a slot.
+         */
+        BLOCK,
+        /**
+         * Records below the overflow level are discarded, the others wait.
+         */
+        DROP,
+        /**
+         * One record out of <code>sampleRate</code> below the overflow level
+         * is kept (and waits), the others are discarded.
+         */
+        SAMPLE,
+        /**
+         * The buffer degrades by level as it fills up: once half full,
+         * records below <code>INFO</code> are discarded, then below
+         * <code>WARNING</code> at three quarters, and only
+         * <code>SEVERE</code> records are kept (and wait) when it is full.
+         */
+        DEGRADE;
+
+        static OverflowPolicy parse(String value, OverflowPolicy defaultValue) {
+            if (value == null || value.length() == 0) {
+                return defaultValue;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException iae) {
+                return defaultValue;
+            }
+        }
+    }
+
+    /**
+     * Maximum time the writer sleeps when it has nothing to do. Producers
+     * wake it up explicitly, this only bounds a missed signal.
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * Pause between two attempts of a producer waiting for a free slot.
+     */
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final RingBuffer<LogRecord> buffer;
+    private final String threadName;
+    private final int maxBatchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final int overflowLevel;
+    private final int sampleRate;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+
+    private volatile Thread thread;
+    private volatile boolean running;
+    private volatile boolean waiting;
+
+    AsyncLogDispatcher(String threadName, int capacity, int maxBatchSize,
+            OverflowPolicy overflowPolicy, Level overflowLevel, int sampleRate) {
+        this.buffer = new RingBuffer<LogRecord>(capacity);
+        this.threadName = threadName;
+        this.maxBatchSize = maxBatchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.overflowLevel = overflowLevel.intValue();
+        this.sampleRate = sampleRate < 1 ? 1 : sampleRate;
+    }
+
+    /**
+     * Write a batch of records. Called from the writer thread only.
+     *
+     * @param batch records in publication order
+     */
+    protected abstract void process(List<LogRecord> batch);
+
+    /**
+     * Called when {@link #process(List)} throws an unexpected exception.
+     */
+    protected abstract void failed(Exception ex);
+
+    /**
+     * Whether the caller source of the record has to be inferred before it
+     * is handed over. Called from the producing thread.
+     */
+    protected boolean needsSource(LogRecord record) {
+        return true;
+    }
+
+    synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Enqueue a record, applying the overflow policy if needed.
+     *
+     * @return <code>false</code> if the dispatcher is not running and the
+     * record has not been accepted.
+     */
+    boolean dispatch(LogRecord record) {
+        if (!running) {
+            return false;
+        }
+
+        if (overflowPolicy == OverflowPolicy.DEGRADE && mustDegrade(record)) {
+            dropped.incrementAndGet();
+            return true;
+        }
+
+        AsyncLogRecord snapshot = new AsyncLogRecord(record, needsSource(record));
+        if (!buffer.offer(snapshot)) {
+            overflowed.incrementAndGet();
+            // The writer thread must never wait on itself
+            if (!mustWait(snapshot) || Thread.currentThread() == thread) {
+                dropped.incrementAndGet();
+                return true;
+            }
+            while (!buffer.offer(snapshot)) {
+                if (!running) {
+                    return false;
+                }
+                signal();
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+            }
+        }
+        signal();
+        return true;
+    }
+
+    private boolean mustWait(LogRecord record) {
+        switch (overflowPolicy) {
+            case DROP:
+                return record.getLevel().intValue() >= overflowLevel;
+            case SAMPLE:
+                return record.getLevel().intValue() >= overflowLevel
+                        || overflowed.get() % sampleRate == 0;
+            case DEGRADE:
+                return record.getLevel().intValue() >= Level.SEVERE.intValue();
+            default:
+                return true;
+        }
+    }
+
+    private boolean mustDegrade(LogRecord record) {
+        int level = record.getLevel().intValue();
+        if (level >= Level.WARNING.intValue()) {
+            return false;
+        }
+        int size = buffer.size();
+        int capacity = buffer.capacity();
+        if (level >= Level.INFO.intValue()) {
+            return size >= capacity - (capacity >> 2);
+        }
+        return size >= capacity >> 1;
+    }
+
+    private void signal() {
+        if (waiting) {
+            Thread t = thread;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    /**
+     * Wait until every record published so far has been processed.
+     *
+     * @param timeout maximum time to wait, in milliseconds
+     */
+    void awaitDrained(long timeout) {
+        Thread t = thread;
+        if (t == null || t == Thread.currentThread()) {
+            return;
+        }
+        long target = buffer.published();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (buffer.consumed() < target && t.isAlive()
+                && System.nanoTime() < deadline) {
+            LockSupport.unpark(t);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Stop accepting records, write the pending ones and stop the writer
+     * thread.
+     *
+     * @param timeout maximum time to wait for the writer, in milliseconds
+     */
+    void shutdown(long timeout) {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            if (t == null) {
+                return;
+            }
+            running = false;
+            thread = null;
+        }
+        LockSupport.unpark(t);
+        if (t != Thread.currentThread()) {
+            try {
+                t.join(timeout);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        List<LogRecord> batch = new ArrayList<LogRecord>(maxBatchSize);
+        for (;;) {
+            if (buffer.drainTo(batch, maxBatchSize) > 0) {
+                try {
+                    process(batch);
+                } catch (Exception ex) {
+                    failed(ex);
+                } finally {
+                    batch.clear();
+                }
+                continue;
+            }
+
+            if (!running && buffer.isEmpty()) {
+                return;
+            }
+
+            waiting = true;
+            if (running && buffer.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            waiting = false;
+        }
+    }
+
+    /**
+     * @return the number of records waiting to be written.
+     */
+    int getQueueDepth() {
+        return buffer.size();
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return the number of records discarded because the buffer was full.
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+}
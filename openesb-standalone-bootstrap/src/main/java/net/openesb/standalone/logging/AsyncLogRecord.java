@@ -0,0 +1,72 @@
+package net.openesb.standalone.logging;
+
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Snapshot of a <code>LogRecord</code> taken on the producing thread before
+ * it is handed over to a background writer.
+ *
+ * <p>The name of the producing thread is captured eagerly, and so is the
+ * caller source when the formatter prints it, since both would be wrong
+ * once the record is formatted by the writer thread. Inferring the source
+ * walks the stack, so it is skipped for the other records.</p>
+ *
+ * @author OpenESB Community
+ */
+final class AsyncLogRecord extends LogRecord {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String threadName;
+
+    AsyncLogRecord(LogRecord record, boolean inferSource) {
+        super(record.getLevel(), record.getMessage());
+        setLoggerName(record.getLoggerName());
+        setMillis(record.getMillis());
+        setParameters(record.getParameters());
+        setResourceBundle(record.getResourceBundle());
+        setResourceBundleName(record.getResourceBundleName());
+        setSequenceNumber(record.getSequenceNumber());
+        if (inferSource) {
+            // Forces the caller inference while we are still on the caller stack
+            setSourceClassName(record.getSourceClassName());
+            setSourceMethodName(record.getSourceMethodName());
+        } else {
+            // Never infer it from the writer stack
+            setSourceClassName(null);
+            setSourceMethodName(null);
+        }
+        setThreadID(record.getThreadID());
+        setThrown(record.getThrown());
+        this.threadName = Thread.currentThread().getName();
+    }
+
+    /**
+     * Returns whether the caller source of a record has to be inferred on
+     * the producing thread.
+     *
+     * @param formatter the formatter of the handler
+     * @param record the record being published
+     * @return <code>false</code> if the formatter does not print the source
+     */
+    static boolean needsSource(Formatter formatter, LogRecord record) {
+        if (formatter instanceof LogFormatter) {
+            return ((LogFormatter) formatter).needsSource(record);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the name of the thread which produced the record.
+     *
+     * @param record the record being formatted
+     * @return the producing thread name
+     */
+    static String threadName(LogRecord record) {
+        if (record instanceof AsyncLogRecord) {
+            return ((AsyncLogRecord) record).threadName;
+        }
+        return Thread.currentThread().getName();
+    }
+}
@@ -1,17 +1,48 @@
 package net.openesb.standalone.logging;
 
+import java.util.List;
 import java.util.logging.ConsoleHandler;
+import java.util.logging.ErrorManager;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
+import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
 
 /**
  * Color Console Handler for jdk: using ANSI sequences directly
  * 
+ * <p>In addition to the <code>ConsoleHandler</code> ones, the following
+ * configuration properties are available:</p>
+ *
+ * <ul>
+ *   <li><code>async</code> - If <code>true</code>, records are queued in a
+ *    bounded ring buffer and written by a background thread, which
+ *    coalesces all the pending records into a single console write. The
+ *    logging threads are not stalled by a slow console anymore. Default
+ *    value: <code>false</code></li>
+ *   <li><code>queueSize</code> - Capacity of the ring buffer, rounded up to
+ *    a power of two. Default value: <code>4096</code></li>
+ *   <li><code>overflowPolicy</code> - What to do when the buffer fills up,
+ *    see <code>FileHandler</code>. The default <code>degrade</code> policy
+ *    drops records below <code>INFO</code> once the buffer is half full,
+ *    below <code>WARNING</code> at three quarters, and only waits for
+ *    <code>SEVERE</code> ones when it is full. Default value:
+ *    <code>degrade</code></li>
+ *   <li><code>overflowLevel</code> - See <code>FileHandler</code>.
+ *    Default value: <code>WARNING</code></li>
+ *   <li><code>sampleRate</code> - See <code>FileHandler</code>.
+ *    Default value: <code>10</code></li>
+ * </ul>
+ *
  * @author David BRASSELY (brasseld at gmail.com)
  * @author OpenESB Community
  */
 public class BaseColorConsoleHandler extends ConsoleHandler {
+
+    private static final int MAX_BATCH_SIZE = 512;
+
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
     protected static final String COLOR_RESET   = "\u001b[0m";
 
     protected static final String COLOR_SEVERE  = "\u001b[1;31m";
@@ -21,7 +52,179 @@ public class BaseColorConsoleHandler extends ConsoleHandler {
     protected static final String COLOR_FINE    = "\u001b[1;32m";
     protected static final String COLOR_FINER   = "\u001b[0;36m";
     protected static final String COLOR_FINEST  = "\u001b[1;30m";
-    
+
+    private volatile AsyncLogDispatcher dispatcher = null;
+
+    private Thread shutdownHook = null;
+
+    /**
+     * Text of the batch being written, only used by the writer thread.
+     */
+    private final StringBuilder batchBuffer = new StringBuilder(1024);
+
+    public BaseColorConsoleHandler() {
+        super();
+        configure();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+
+        AsyncLogDispatcher asyncWriter = dispatcher;
+        if (asyncWriter != null && asyncWriter.dispatch(record)) {
+            return;
+        }
+
+        try {
+            write(logRecordToString(record));
+        } catch (Exception ex) {
+            reportError(null, ex, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    /**
+     * Write colored text to the console.
+     *
+     * @param text one or several formatted records
+     */
+    protected void write(String text) {
+        System.err.print(text);
+    }
+
+    /**
+     * Write a batch of records with a single console write.
+     */
+    private void write(List<LogRecord> batch) {
+        StringBuilder sb = batchBuffer;
+        sb.setLength(0);
+        for (LogRecord record : batch) {
+            try {
+                sb.append(logRecordToString(record));
+            } catch (Exception ex) {
+                reportError(null, ex, ErrorManager.FORMAT_FAILURE);
+            }
+        }
+        write(sb.toString());
+        if (sb.capacity() > 64 * 1024) {
+            sb.setLength(0);
+            sb.trimToSize();
+        }
+    }
+
+    @Override
+    public void flush() {
+        AsyncLogDispatcher asyncWriter = dispatcher;
+        if (asyncWriter != null) {
+            asyncWriter.awaitDrained(SHUTDOWN_TIMEOUT);
+        }
+        super.flush();
+    }
+
+    @Override
+    public void close() {
+        AsyncLogDispatcher asyncWriter = dispatcher;
+        dispatcher = null;
+        if (asyncWriter != null) {
+            asyncWriter.shutdown(SHUTDOWN_TIMEOUT);
+        }
+        removeShutdownHook();
+        super.close();
+    }
+
+    /**
+     * @return the number of records waiting to be written by the background
+     * writer, or <code>0</code> in synchronous mode.
+     */
+    public int getQueueDepth() {
+        AsyncLogDispatcher asyncWriter = dispatcher;
+        return asyncWriter == null ? 0 : asyncWriter.getQueueDepth();
+    }
+
+    /**
+     * @return the number of records discarded by the overflow policy since
+     * this handler has been created.
+     */
+    public long getDroppedCount() {
+        AsyncLogDispatcher asyncWriter = dispatcher;
+        return asyncWriter == null ? 0 : asyncWriter.getDroppedCount();
+    }
+
+    private void configure() {
+        String className = getClass().getName();
+        if (!Boolean.parseBoolean(LogProperties.getProperty(className + ".async", "false"))) {
+            return;
+        }
+
+        int queueSize = LogProperties.getIntProperty(className + ".queueSize", 4096);
+        AsyncLogDispatcher.OverflowPolicy overflowPolicy =
+                AsyncLogDispatcher.OverflowPolicy.parse(
+                        LogProperties.getProperty(className + ".overflowPolicy", null),
+                        AsyncLogDispatcher.OverflowPolicy.DEGRADE);
+        Level overflowLevel = Level.WARNING;
+        try {
+            overflowLevel = Level.parse(LogProperties.getProperty(className + ".overflowLevel", "" + Level.WARNING));
+        } catch (IllegalArgumentException ignore) {
+            //no op
+        }
+        int sampleRate = LogProperties.getIntProperty(className + ".sampleRate", 10);
+
+        AsyncLogDispatcher asyncWriter = new AsyncLogDispatcher("ConsoleHandler-writer",
+                queueSize, MAX_BATCH_SIZE, overflowPolicy, overflowLevel, sampleRate) {
+
+            @Override
+            protected boolean needsSource(LogRecord record) {
+                return AsyncLogRecord.needsSource(getFormatter(), record);
+            }
+
+            @Override
+            protected void process(List<LogRecord> batch) {
+                write(batch);
+            }
+
+            @Override
+            protected void failed(Exception ex) {
+                reportError(null, ex, ErrorManager.WRITE_FAILURE);
+            }
+        };
+        asyncWriter.start();
+        dispatcher = asyncWriter;
+        addShutdownHook();
+    }
+
+    /**
+     * Our LogManager does not reset handlers on shutdown, so write the
+     * pending records when the JVM stops.
+     */
+    private void addShutdownHook() {
+        shutdownHook = new Thread("ConsoleHandler-shutdown") {
+            @Override
+            public void run() {
+                BaseColorConsoleHandler.this.close();
+            }
+        };
+        try {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } catch (IllegalStateException ise) {
+            // JVM is already shutting down
+            shutdownHook = null;
+        }
+    }
+
+    private void removeShutdownHook() {
+        Thread hook = shutdownHook;
+        shutdownHook = null;
+        if (hook != null && hook != Thread.currentThread()) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException ise) {
+                // JVM is already shutting down
+            }
+        }
+    }
+
     String logRecordToString(LogRecord record) {
         Formatter f = getFormatter();
         String msg = f.format(record);
@@ -0,0 +1,11 @@
+package net.openesb.standalone.logging;
+
+/**
+ * Number of bytes written to the current log file.
+ *
+ * @author OpenESB Community
+ */
+interface ByteCounter {
+
+    long getCount();
+}
@@ -0,0 +1,42 @@
+package net.openesb.standalone.logging;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream keeping track of the number of bytes written to the
+ * underlying stream.
+ *
+ * @author OpenESB Community
+ */
+final class CountingOutputStream extends FilterOutputStream implements ByteCounter {
+
+    /**
+     * Writes are serialized by the writer stacked on top of this stream, the
+     * count is only read concurrently.
+     */
+    private volatile long count;
+
+    CountingOutputStream(OutputStream out, long initialCount) {
+        super(out);
+        this.count = initialCount;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+}
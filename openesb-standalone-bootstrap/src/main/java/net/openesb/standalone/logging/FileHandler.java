@@ -8,7 +8,14 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
-import java.sql.Timestamp;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.ErrorManager;
@@ -19,6 +26,9 @@ import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
 import java.util.logging.SimpleFormatter;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 /**
  * Implementation of <b>Handler</b> that appends log messages to a file
@@ -36,8 +46,33 @@ import java.util.logging.SimpleFormatter;
  *   <li><code>rotatable</code> - If <code>true</code>, the log file will be
  *    rotated on the first write past midnight and the filename will be
  *    <code>{prefix}{date}{suffix}</code>, where date is yyyy-MM-dd. If <code>false</code>,
- *    the file will not be rotated and the filename will be <code>{prefix}{suffix}</code>.
+ *    the file will not be rotated on date change and the filename will be
+ *    <code>{prefix}{suffix}</code>.
  *    Default value: <code>true</code></li>
+ *   <li><code>maxFileSize</code> - Rotate the log file once it reaches this
+ *    size, in bytes. The <code>K</code>, <code>M</code> and <code>G</code>
+ *    suffixes are accepted. The closed file is renamed to
+ *    <code>{prefix}{date}.{n}{suffix}</code>. A value of <code>0</code>
+ *    disables size based rotation. Default value: <code>0</code></li>
+ *   <li><code>rotationInterval</code> - Rotate the log file every given
+ *    number of minutes, counted from the opening of the file. A value of
+ *    <code>0</code> disables interval based rotation. Default value:
+ *    <code>0</code></li>
+ *   <li><code>maxHistory</code> - Number of closed log files to keep, the
+ *    oldest ones are deleted. A value of <code>0</code> keeps all of them.
+ *    Default value: <code>0</code></li>
+ *   <li><code>compress</code> - If <code>true</code>, closed log files are
+ *    gzip-compressed on a background thread. Default value:
+ *    <code>false</code></li>
+ *   <li><code>mapped</code> - If <code>true</code>, records are encoded
+ *    straight into a memory-mapped segment of the log file instead of going
+ *    through a stream, and <code>bufferSize</code> is ignored. The file is
+ *    truncated to its actual content on close. Default value:
+ *    <code>false</code></li>
+ *   <li><code>segmentSize</code> - Size of the segments mapped in
+ *    <code>mapped</code> mode. When a segment is full, the next one is
+ *    mapped. The <code>K</code>, <code>M</code> and <code>G</code> suffixes
+ *    are accepted. Default value: <code>16M</code></li>
  *   <li><code>prefix</code> - The leading part of the log file name.
  *    Default value: <code>juli.</code></li>
  *   <li><code>suffix</code> - The trailing part of the log file name. Default value: <code>.log</code></li>
@@ -57,12 +92,53 @@ import java.util.logging.SimpleFormatter;
  *   <li><code>formatter</code> - The <code>java.util.logging.Formatter</code>
  *    implementation class name for this Handler. Default value:
  *    <code>java.util.logging.SimpleFormatter</code></li>
+ *   <li><code>async</code> - If <code>true</code>, records are queued in a
+ *    bounded lock-free ring buffer and formatted and written by a single
+ *    background thread, in batches. Pending records are written on
+ *    <code>close()</code> and on JVM shutdown. Default value:
+ *    <code>false</code></li>
+ *   <li><code>queueSize</code> - Capacity of the ring buffer used in
+ *    asynchronous mode, rounded up to a power of two. Default value:
+ *    <code>8192</code></li>
+ *   <li><code>overflowPolicy</code> - What to do when the ring buffer is
+ *    full: <code>block</code> waits for free space, <code>drop</code> discards
+ *    records below <code>overflowLevel</code>, <code>sample</code> keeps one
+ *    record out of <code>sampleRate</code> below <code>overflowLevel</code>.
+ *    Records at or above <code>overflowLevel</code> are never discarded.
+ *    <code>degrade</code> discards records below <code>INFO</code> once the
+ *    buffer is half full, below <code>WARNING</code> at three quarters and
+ *    below <code>SEVERE</code> when it is full.
+ *    Default value: <code>block</code></li>
+ *   <li><code>overflowLevel</code> - See <code>overflowPolicy</code>.
+ *    Default value: <code>WARNING</code></li>
+ *   <li><code>sampleRate</code> - See <code>overflowPolicy</code>.
+ *    Default value: <code>10</code></li>
+ *   <li><code>durability</code> - When written records are forced to the
+ *    storage device: <code>none</code> relies on the operating system,
+ *    <code>interval</code> syncs every <code>syncInterval</code> ms,
+ *    <code>level</code> syncs before <code>publish</code> returns for
+ *    records at or above <code>syncLevel</code>. Threads waiting at the
+ *    same time share a single sync. The sync counts and latencies are
+ *    exposed by the <code>net.open-esb.standalone:type=LogFileHandler</code>
+ *    MBean of the file. Default value: <code>none</code></li>
+ *   <li><code>syncInterval</code> - See <code>durability</code>.
+ *    Default value: <code>1000</code></li>
+ *   <li><code>syncLevel</code> - See <code>durability</code>.
+ *    Default value: <code>WARNING</code></li>
+ *   <li><code>index</code> - If <code>true</code>, a sparse index of the
+ *    log file is maintained in <code>{file}.idx</code>: for each block of
+ *    about <code>indexBlockSize</code> bytes, its offset, time range and
+ *    levels. It lets readers seek by time and level without scanning the
+ *    whole file. Default value: <code>false</code></li>
+ *   <li><code>indexBlockSize</code> - See <code>index</code>. The
+ *    <code>K</code> and <code>M</code> suffixes are accepted. Default value:
+ *    <code>64K</code></li>
  * </ul>
  *
  */
 
 public class FileHandler
-    extends Handler {
+    extends Handler implements FileHandlerMBean {
 
 
     // ------------------------------------------------------------ Constructor
@@ -117,9 +193,96 @@ public class FileHandler
 
 
     /**
-     * The PrintWriter to which we are currently logging, if any.
+     * Rotate the file once it reaches this size, in bytes (0 to disable).
      */
-    private volatile PrintWriter writer = null;
+    private long maxFileSize = 0;
+
+
+    /**
+     * Rotate the file after this duration, in milliseconds (0 to disable).
+     */
+    private long rotationInterval = 0;
+
+
+    /**
+     * Time at which the current file has to be rotated, precomputed when the
+     * file is opened so that writes only compare two longs.
+     */
+    private volatile long rotationDeadline = Long.MAX_VALUE;
+
+
+    /**
+     * Compression and retention of the closed files.
+     */
+    private LogArchiver archiver = null;
+
+
+    /**
+     * The file to which we are currently logging, if any.
+     */
+    private File currentFile = null;
+
+
+    /**
+     * Byte count of the file to which we are currently logging.
+     */
+    private ByteCounter counter = null;
+
+
+    /**
+     * Determines whether records are written into a memory-mapped file.
+     */
+    private boolean mapped = false;
+
+
+    /**
+     * Size of a memory-mapped segment, in bytes.
+     */
+    private long segmentSize = 16L * 1024L * 1024L;
+
+
+    /**
+     * Channel of the file to which we are currently logging, used to sync it
+     * when not in <code>mapped</code> mode.
+     */
+    private FileChannel channel = null;
+
+
+    /**
+     * Determines whether the log files are indexed.
+     */
+    private boolean indexed = false;
+
+
+    /**
+     * Size of an index block, in bytes.
+     */
+    private long indexBlockSize = 64L * 1024L;
+
+
+    /**
+     * Index of the file to which we are currently logging, if any.
+     */
+    private LogIndexWriter index = null;
+
+
+    /**
+     * Syncs the written records according to the durability policy, if any.
+     */
+    private GroupCommitter committer = null;
+
+
+    /**
+     * Name of the MBean exposing the statistics of the durability policy,
+     * <code>null</code> if it is not registered.
+     */
+    private volatile ObjectName mbeanName;
+
+
+    /**
+     * The Writer to which we are currently logging, if any.
+     */
+    private volatile Writer writer = null;
 
 
     /**
@@ -134,6 +297,41 @@ public class FileHandler
     private int bufferSize = -1;
 
 
+    /**
+     * Background writer, when running in asynchronous mode.
+     */
+    private AsyncLogDispatcher dispatcher = null;
+
+
+    /**
+     * Hook closing the handler when the JVM stops, so that queued records
+     * are written and mapped files are truncated.
+     */
+    private Thread shutdownHook = null;
+
+
+    /**
+     * Maximum number of records written by the background writer before
+     * flushing.
+     */
+    private static final int MAX_BATCH_SIZE = 512;
+
+
+    /**
+     * Maximum time to wait for the background writer on close, in ms.
+     */
+    private static final long SHUTDOWN_TIMEOUT = 10000;
+
+
+    private static final String MBEAN_NAME = "net.open-esb.standalone:type=LogFileHandler,file=";
+
+
+    /**
+     * Delay before opening a file again after a failure, in ms.
+     */
+    private static final long OPEN_RETRY_INTERVAL = 60000;
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -149,25 +347,46 @@ public class FileHandler
             return;
         }
 
-        // Construct the timestamp we will use, if requested
-        Timestamp ts = new Timestamp(System.currentTimeMillis());
-        String tsString = ts.toString().substring(0, 19);
-        String tsDate = tsString.substring(0, 10);
+        GroupCommitter commit = committer;
+        AsyncLogDispatcher asyncWriter = dispatcher;
+        if (asyncWriter != null && asyncWriter.dispatch(record)) {
+            if (commit != null && commit.mustAwait(record)) {
+                asyncWriter.awaitDrained(SHUTDOWN_TIMEOUT);
+                commit.await(commit.lastWritten());
+            }
+            return;
+        }
+
+        long ticket = write(record, bufferSize < 0);
+        if (ticket > 0 && commit.mustAwait(record)) {
+            commit.await(ticket);
+        }
+    }
+
+
+    /**
+     * Write a record in the current log file, switching files if needed.
+     *
+     * @param record the record to write
+     * @param flush  <code>true</code> to flush the writer once the record
+     *               has been written
+     * @return the group commit ticket of the record, or <code>0</code>
+     */
+    private long write(LogRecord record, boolean flush) {
 
         try {
             writerLock.readLock().lock();
-            // If the date has changed, switch log files
-            if (rotatable && !date.equals(tsDate)) {
+            // If the deadline or the size limit is reached, switch log files
+            if (mustRotate(System.currentTimeMillis())) {
                 try {
                     // Update to writeLock before we switch
                     writerLock.readLock().unlock();
                     writerLock.writeLock().lock();
     
                     // Make sure another thread hasn't already done this
-                    if (!date.equals(tsDate)) {
-                        closeWriter();
-                        date = tsDate;
-                        openWriter();
+                    long now = System.currentTimeMillis();
+                    if (mustRotate(now)) {
+                        rotate(now);
                     }
                 } finally {
                     writerLock.writeLock().unlock();
@@ -177,42 +396,288 @@ public class FileHandler
                 }
             }
 
-            String result = null;
+            LogIndexWriter currentIndex = index;
+            if (currentIndex == null) {
+                return writeRecord(record, flush);
+            }
+            // Index blocks must start on a record boundary
+            synchronized (currentIndex) {
+                startIndexBlock(currentIndex);
+                long ticket = writeRecord(record, flush);
+                currentIndex.recorded(record.getMillis(), record.getLevel());
+                return ticket;
+            }
+        } finally {
+            writerLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Start a new index block if the current one is complete. Must be called
+     * with the index lock held, so that no record is being written.
+     */
+    private void startIndexBlock(LogIndexWriter currentIndex) {
+        ByteCounter count = counter;
+        if (count == null || writer == null
+                || !currentIndex.isBlockComplete(count.getCount())) {
+            return;
+        }
+        try {
+            // Push the buffered bytes so that the count is exact
+            writer.flush();
+            currentIndex.startBlock(count.getCount());
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+
+    /**
+     * Format and write a record. Must be called with the read lock held.
+     *
+     * @return the group commit ticket of the record, or <code>0</code>
+     */
+    private long writeRecord(LogRecord record, boolean flush) {
+
+        Formatter formatter = getFormatter();
+        if (formatter instanceof LogFormatter && writer != null) {
+            // Encode straight into the writer, no intermediate String
             try {
-                result = getFormatter().format(record);
+                ((LogFormatter) formatter).format(record, writer);
+                if (flush) {
+                    writer.flush();
+                }
+                return written();
+            } catch (IOException e) {
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
             } catch (Exception e) {
                 reportError(null, e, ErrorManager.FORMAT_FAILURE);
-                return;
             }
+            return 0;
+        }
 
-            try {
-                if (writer!=null) {
-                    writer.write(result);
-                    if (bufferSize < 0) {
-                        writer.flush();
-                    }
-                } else {
-                    reportError("FileHandler is closed or not yet initialized, unable to log ["+result+"]", null, ErrorManager.WRITE_FAILURE);
+        String result = null;
+        try {
+            result = formatter.format(record);
+        } catch (Exception e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+            return 0;
+        }
+
+        try {
+            if (writer!=null) {
+                writer.write(result);
+                if (flush) {
+                    writer.flush();
                 }
-            } catch (Exception e) {
-                reportError(null, e, ErrorManager.WRITE_FAILURE);
-                return;
+                return written();
+            } else {
+                reportError("FileHandler is closed or not yet initialized, unable to log ["+result+"]", null, ErrorManager.WRITE_FAILURE);
             }
+        } catch (Exception e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+        return 0;
+    }
+
+
+    /**
+     * @return the group commit ticket of the record just written, or
+     * <code>0</code> if there is no durability policy.
+     */
+    private long written() {
+        GroupCommitter commit = committer;
+        return commit == null ? 0 : commit.written();
+    }
+
+
+    /**
+     * Flush the writer and force the current file to the storage device.
+     */
+    private void sync() throws IOException {
+        writerLock.readLock().lock();
+        try {
+            force();
         } finally {
             writerLock.readLock().unlock();
         }
     }
+
+
+    /**
+     * Flush and force the current file. Must be called with a lock held.
+     */
+    private void force() throws IOException {
+        Writer current = writer;
+        if (current == null) {
+            return;
+        }
+        current.flush();
+        if (current instanceof MappedSegmentWriter) {
+            ((MappedSegmentWriter) current).force();
+        } else if (channel != null) {
+            channel.force(false);
+        }
+    }
     
     
     // -------------------------------------------------------- Private Methods
 
 
+    private boolean mustRotate(long now) {
+        if (now >= rotationDeadline) {
+            return true;
+        }
+        ByteCounter count = counter;
+        return maxFileSize > 0 && count != null
+                && count.getCount() >= maxFileSize;
+    }
+
+
+    /**
+     * Close the current file and open the next one. Must be called with the
+     * write lock held.
+     */
+    private void rotate(long now) {
+        File closedFile = currentFile;
+        String closedDate = date;
+        String newDate = formatDate(now);
+
+        closeWriter();
+
+        if (closedFile != null && (!rotatable || closedDate.equals(newDate))) {
+            // Same file name would be reopened: move the closed file aside
+            File rolledFile = rolledFile(closedFile.getParentFile(), closedDate);
+            if (closedFile.renameTo(rolledFile)) {
+                File closedIndex = LogIndexWriter.indexFile(closedFile);
+                if (closedIndex.exists()) {
+                    closedIndex.renameTo(LogIndexWriter.indexFile(rolledFile));
+                }
+                closedFile = rolledFile;
+            } else {
+                reportError("Unable to rename [" + closedFile + "] to ["
+                        + rolledFile + "]", null, ErrorManager.GENERIC_FAILURE);
+                closedFile = null;
+            }
+        }
+
+        date = newDate;
+        openWriter();
+
+        if (archiver != null) {
+            archiver.archive(closedFile, currentFile);
+        }
+    }
+
+
+    /**
+     * @return the first free <code>{prefix}{date}.{n}{suffix}</code> file.
+     */
+    private File rolledFile(File dir, String fileDate) {
+        String base = prefix + (rotatable ? fileDate : "") + ".";
+        for (int index = 1; ; index++) {
+            File candidate = new File(dir, base + index + suffix);
+            if (!candidate.exists() && !new File(candidate.getPath()
+                    + LogArchiver.COMPRESSED_SUFFIX).exists()) {
+                return candidate;
+            }
+        }
+    }
+
+
+    /**
+     * @return the time at which a file opened at <code>now</code> has to be
+     * rotated.
+     */
+    private long nextRotationDeadline(long now) {
+        long deadline = Long.MAX_VALUE;
+        if (rotatable) {
+            Calendar midnight = Calendar.getInstance();
+            midnight.setTimeInMillis(now);
+            midnight.set(Calendar.HOUR_OF_DAY, 0);
+            midnight.set(Calendar.MINUTE, 0);
+            midnight.set(Calendar.SECOND, 0);
+            midnight.set(Calendar.MILLISECOND, 0);
+            midnight.add(Calendar.DAY_OF_MONTH, 1);
+            deadline = midnight.getTimeInMillis();
+        }
+        if (rotationInterval > 0) {
+            deadline = Math.min(deadline, now + rotationInterval);
+        }
+        return deadline;
+    }
+
+
+    /**
+     * Try to open a file again at the next rotation deadline, or after
+     * {@link #OPEN_RETRY_INTERVAL} if it comes first, when the current one
+     * could not be opened.
+     */
+    private void retryOpenLater() {
+        long now = System.currentTimeMillis();
+        rotationDeadline = Math.min(nextRotationDeadline(now), now + OPEN_RETRY_INTERVAL);
+    }
+
+
+    private static String formatDate(long millis) {
+        return new SimpleDateFormat("yyyy-MM-dd").format(new Date(millis));
+    }
+
+
+    /**
+     * Write a batch of records drained by the background writer, then flush
+     * once if buffering is disabled.
+     */
+    private void write(List<LogRecord> batch) {
+        for (LogRecord record : batch) {
+            write(record, false);
+        }
+        if (bufferSize < 0) {
+            flushWriter();
+        }
+    }
+
+
     /**
      * Close the currently open log file (if any).
      */
     @Override
     public void close() {
+        stopDispatcher();
+        stopCommitter();
         closeWriter();
+        removeShutdownHook();
+    }
+
+    private void stopDispatcher() {
+        AsyncLogDispatcher asyncWriter = dispatcher;
+        if (asyncWriter == null) {
+            return;
+        }
+        asyncWriter.shutdown(SHUTDOWN_TIMEOUT);
+        dispatcher = null;
+    }
+
+    private void stopCommitter() {
+        GroupCommitter commit = committer;
+        if (commit == null) {
+            return;
+        }
+        unregisterMBean();
+        commit.shutdown();
+    }
+
+    private void removeShutdownHook() {
+        Thread hook = shutdownHook;
+        shutdownHook = null;
+        if (hook != null && hook != Thread.currentThread()) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException ise) {
+                // JVM is already shutting down
+            }
+        }
     }
 
     protected void closeWriter() {
@@ -223,8 +688,19 @@ public class FileHandler
                 return;
             writer.write(getFormatter().getTail(this));
             writer.flush();
+            if (committer != null) {
+                force();
+            }
+            closeIndex();
             writer.close();
+            if (committer != null) {
+                committer.markDurable();
+            }
             writer = null;
+            channel = null;
+            counter = null;
+            currentFile = null;
+            rotationDeadline = Long.MAX_VALUE;
             date = "";
         } catch (Exception e) {
             reportError(null, e, ErrorManager.CLOSE_FAILURE);
@@ -235,11 +711,39 @@ public class FileHandler
 
 
     /**
-     * Flush the writer.
+     * Index the last block of the current file. Must be called with the
+     * write lock held, once the writer has been flushed.
+     */
+    private void closeIndex() {
+        LogIndexWriter currentIndex = index;
+        if (currentIndex == null) {
+            return;
+        }
+        index = null;
+        try {
+            currentIndex.close(counter.getCount());
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+
+
+    /**
+     * Flush the writer. In asynchronous mode, the records queued so far are
+     * written first.
      */
     @Override
     public void flush() {
 
+        AsyncLogDispatcher asyncWriter = dispatcher;
+        if (asyncWriter != null) {
+            asyncWriter.awaitDrained(SHUTDOWN_TIMEOUT);
+        }
+        flushWriter();
+    }
+
+    private void flushWriter() {
+
         writerLock.readLock().lock();
         try {
             if (writer == null)
@@ -259,30 +763,40 @@ public class FileHandler
      */
     private void configure() {
 
-        Timestamp ts = new Timestamp(System.currentTimeMillis());
-        String tsString = ts.toString().substring(0, 19);
-        date = tsString.substring(0, 10);
+        date = formatDate(System.currentTimeMillis());
 
         String className = this.getClass().getName(); //allow classes to override
         
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         
         // Retrieve configuration of logging file name
-        rotatable = Boolean.parseBoolean(getProperty(className + ".rotatable", "false"));
+        rotatable = Boolean.parseBoolean(LogProperties.getProperty(className + ".rotatable", "false"));
         if (directory == null)
-            directory = getProperty(className + ".directory", "logs");
+            directory = LogProperties.getProperty(className + ".directory", "logs");
         if (prefix == null)
-            prefix = getProperty(className + ".prefix", "server");
+            prefix = LogProperties.getProperty(className + ".prefix", "server");
         if (suffix == null)
-            suffix = getProperty(className + ".suffix", ".log");
-        String sBufferSize = getProperty(className + ".bufferSize", String.valueOf(bufferSize));
+            suffix = LogProperties.getProperty(className + ".suffix", ".log");
+        String sBufferSize = LogProperties.getProperty(className + ".bufferSize", String.valueOf(bufferSize));
         try {
             bufferSize = Integer.parseInt(sBufferSize);
         } catch (NumberFormatException ignore) {
             //no op
         }
+        maxFileSize = parseSize(LogProperties.getProperty(className + ".maxFileSize", "0"));
+        rotationInterval = LogProperties.getIntProperty(className + ".rotationInterval", 0) * 60000L;
+        mapped = Boolean.parseBoolean(LogProperties.getProperty(className + ".mapped", "false"));
+        long sSegmentSize = parseSize(LogProperties.getProperty(className + ".segmentSize", null));
+        if (sSegmentSize > 0) {
+            segmentSize = sSegmentSize;
+        }
+        indexed = Boolean.parseBoolean(LogProperties.getProperty(className + ".index", "false"));
+        long sIndexBlockSize = parseSize(LogProperties.getProperty(className + ".indexBlockSize", null));
+        if (sIndexBlockSize > 0) {
+            indexBlockSize = sIndexBlockSize;
+        }
         // Get encoding for the logging file
-        String encoding = getProperty(className + ".encoding", null);
+        String encoding = LogProperties.getProperty(className + ".encoding", null);
         if (encoding != null && encoding.length() > 0) {
             try {
                 setEncoding(encoding);
@@ -292,10 +806,10 @@ public class FileHandler
         }
 
         // Get logging level for the handler
-        setLevel(Level.parse(getProperty(className + ".level", "" + Level.ALL)));
+        setLevel(Level.parse(LogProperties.getProperty(className + ".level", "" + Level.ALL)));
 
         // Get filter configuration
-        String filterName = getProperty(className + ".filter", null);
+        String filterName = LogProperties.getProperty(className + ".filter", null);
         if (filterName != null) {
             try {
                 setFilter((Filter) cl.loadClass(filterName).newInstance());
@@ -305,7 +819,7 @@ public class FileHandler
         }
 
         // Set formatter
-        String formatterName = getProperty(className + ".formatter", null);
+        String formatterName = LogProperties.getProperty(className + ".formatter", null);
         if (formatterName != null) {
             try {
                 setFormatter((Formatter) cl.loadClass(formatterName).newInstance());
@@ -319,21 +833,253 @@ public class FileHandler
         
         // Set error manager
         setErrorManager(new ErrorManager());
-        
+
+        // Compression and retention of the closed files
+        boolean compress = Boolean.parseBoolean(LogProperties.getProperty(className + ".compress", "false"));
+        int maxHistory = LogProperties.getIntProperty(className + ".maxHistory", 0);
+        archiver = new LogArchiver(new File(directory).getAbsoluteFile(),
+                prefix, suffix, compress, maxHistory, getErrorManager());
+
+        // Asynchronous mode
+        if (Boolean.parseBoolean(LogProperties.getProperty(className + ".async", "false"))) {
+            int queueSize = LogProperties.getIntProperty(className + ".queueSize", 8192);
+            AsyncLogDispatcher.OverflowPolicy overflowPolicy =
+                    AsyncLogDispatcher.OverflowPolicy.parse(
+                            LogProperties.getProperty(className + ".overflowPolicy", null),
+                            AsyncLogDispatcher.OverflowPolicy.BLOCK);
+            Level overflowLevel = Level.WARNING;
+            try {
+                overflowLevel = Level.parse(LogProperties.getProperty(className + ".overflowLevel", "" + Level.WARNING));
+            } catch (IllegalArgumentException ignore) {
+                //no op
+            }
+            int sampleRate = LogProperties.getIntProperty(className + ".sampleRate", 10);
+
+            startDispatcher(queueSize, overflowPolicy, overflowLevel, sampleRate);
+        }
+
+        // Durability policy
+        GroupCommitter.Policy durability = GroupCommitter.Policy.parse(
+                LogProperties.getProperty(className + ".durability", null), GroupCommitter.Policy.NONE);
+        if (durability != GroupCommitter.Policy.NONE) {
+            Level syncLevel = Level.WARNING;
+            try {
+                syncLevel = Level.parse(LogProperties.getProperty(className + ".syncLevel", "" + Level.WARNING));
+            } catch (IllegalArgumentException ignore) {
+                //no op
+            }
+            startCommitter(durability, LogProperties.getIntProperty(className + ".syncInterval", 1000), syncLevel);
+        }
+
+        if (dispatcher != null || mapped) {
+            addShutdownHook();
+        }
+    }
+
+
+    private void startCommitter(GroupCommitter.Policy durability,
+            long syncInterval, Level syncLevel) {
+        committer = new GroupCommitter("FileHandler-sync [" + prefix + suffix + "]",
+                durability, syncInterval, syncLevel) {
+
+            @Override
+            protected void sync() throws Exception {
+                FileHandler.this.sync();
+            }
+
+            @Override
+            protected void failed(Exception ex) {
+                reportError(null, ex, ErrorManager.FLUSH_FAILURE);
+            }
+        };
+        committer.start();
+        registerMBean();
+    }
+
+
+    /**
+     * Expose the statistics of the durability policy, under a name unique
+     * to the file written.
+     */
+    private void registerMBean() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME
+                    + ObjectName.quote(new File(directory, prefix + suffix).getAbsolutePath()));
+            if (mbs.isRegistered(name)) {
+                mbs.unregisterMBean(name);
+            }
+            mbs.registerMBean(new StandardMBean(this, FileHandlerMBean.class), name);
+            mbeanName = name;
+        } catch (Exception e) {
+            reportError("Unable to register the MBean", e, ErrorManager.GENERIC_FAILURE);
+        }
+    }
+
+
+    private void unregisterMBean() {
+        ObjectName name = mbeanName;
+        mbeanName = null;
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (Exception e) {
+            // Already unregistered
+        }
+    }
+
+
+    private void startDispatcher(int queueSize,
+            AsyncLogDispatcher.OverflowPolicy overflowPolicy,
+            Level overflowLevel, int sampleRate) {
+        dispatcher = new AsyncLogDispatcher("FileHandler-writer [" + prefix + suffix + "]",
+                queueSize, MAX_BATCH_SIZE, overflowPolicy, overflowLevel, sampleRate) {
+
+            @Override
+            protected boolean needsSource(LogRecord record) {
+                return AsyncLogRecord.needsSource(getFormatter(), record);
+            }
+
+            @Override
+            protected void process(List<LogRecord> batch) {
+                write(batch);
+            }
+
+            @Override
+            protected void failed(Exception ex) {
+                reportError(null, ex, ErrorManager.WRITE_FAILURE);
+            }
+        };
+        dispatcher.start();
+    }
+
+
+    /**
+     * Our LogManager does not reset handlers on shutdown, so close this one
+     * when the JVM stops if it holds state which would be lost otherwise.
+     */
+    private void addShutdownHook() {
+        shutdownHook = new Thread("FileHandler-shutdown [" + prefix + suffix + "]") {
+            @Override
+            public void run() {
+                FileHandler.this.close();
+            }
+        };
+        try {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } catch (IllegalStateException ise) {
+            // JVM is already shutting down
+            shutdownHook = null;
+        }
+    }
+
+
+    /**
+     * @return the number of records waiting to be written by the background
+     * writer, or <code>0</code> in synchronous mode.
+     */
+    public int getQueueDepth() {
+        AsyncLogDispatcher asyncWriter = dispatcher;
+        return asyncWriter == null ? 0 : asyncWriter.getQueueDepth();
+    }
+
+
+    /**
+     * @return the number of records discarded by the overflow policy since
+     * this handler has been created.
+     */
+    public long getDroppedCount() {
+        AsyncLogDispatcher asyncWriter = dispatcher;
+        return asyncWriter == null ? 0 : asyncWriter.getDroppedCount();
+    }
+
+
+    /**
+     * @return the number of syncs done by the durability policy.
+     */
+    @Override
+    public long getSyncCount() {
+        GroupCommitter commit = committer;
+        return commit == null ? 0 : commit.getSyncCount();
+    }
+
+
+    /**
+     * @return the average duration of a sync, in microseconds.
+     */
+    @Override
+    public long getAverageSyncTime() {
+        GroupCommitter commit = committer;
+        return commit == null ? 0 : commit.getAverageSyncTime();
+    }
+
+
+    /**
+     * @return the average time <code>publish</code> waited for a record to
+     * be durable, in microseconds.
+     */
+    @Override
+    public long getAverageCommitLatency() {
+        GroupCommitter commit = committer;
+        return commit == null ? 0 : commit.getAverageCommitLatency();
+    }
+
+
+    /**
+     * @return the longest time <code>publish</code> waited for a record to
+     * be durable, in microseconds.
+     */
+    @Override
+    public long getMaxCommitLatency() {
+        GroupCommitter commit = committer;
+        return commit == null ? 0 : commit.getMaxCommitLatency();
     }
 
     
-    private String getProperty(String name, String defaultValue) {
-        String value = LogManager.getLogManager().getProperty(name);
-        if (value == null) {
-            value = defaultValue;
-        } else {
-            value = value.trim();
+    /**
+     * Parse a size in bytes, with an optional K, M or G unit.
+     */
+    private static long parseSize(String value) {
+        if (value == null || value.length() == 0) {
+            return 0;
+        }
+        long unit = 1;
+        char last = Character.toUpperCase(value.charAt(value.length() - 1));
+        if (last == 'K') {
+            unit = 1024L;
+        } else if (last == 'M') {
+            unit = 1024L * 1024L;
+        } else if (last == 'G') {
+            unit = 1024L * 1024L * 1024L;
+        }
+        try {
+            String number = unit == 1 ? value : value.substring(0, value.length() - 1);
+            return Long.parseLong(number.trim()) * unit;
+        } catch (NumberFormatException ignore) {
+            return 0;
         }
-        return value;
     }
     
     
+    /**
+     * Start indexing the file just opened, after its head.
+     */
+    private void openIndex(File pathname) throws IOException {
+        if (!indexed) {
+            return;
+        }
+        writer.flush();
+        try {
+            index = new LogIndexWriter(pathname, indexBlockSize, counter.getCount());
+        } catch (IOException e) {
+            // Logging goes on without the index
+            reportError(null, e, ErrorManager.OPEN_FAILURE);
+        }
+    }
+
+
     /**
      * Open the new log file for the date specified by <code>date</code>.
      */
@@ -349,6 +1095,7 @@ public class FileHandler
             reportError("Unable to create [" + dir + "]", null,
                     ErrorManager.OPEN_FAILURE);
             writer = null;
+            retryOpenLater();
             return;
         }
 
@@ -364,18 +1111,38 @@ public class FileHandler
                 reportError("Unable to create [" + parent + "]", null,
                         ErrorManager.OPEN_FAILURE);
                 writer = null;
+                retryOpenLater();
                 return;
             }
             String encoding = getEncoding();
+            if (mapped) {
+                MappedSegmentWriter mappedWriter = new MappedSegmentWriter(pathname, segmentSize,
+                        (encoding != null) ? Charset.forName(encoding) : Charset.defaultCharset(),
+                        committer != null);
+                writer = mappedWriter;
+                writer.write(getFormatter().getHead(this));
+                counter = mappedWriter;
+                openIndex(pathname);
+                currentFile = pathname;
+                rotationDeadline = nextRotationDeadline(System.currentTimeMillis());
+                return;
+            }
             fos = new FileOutputStream(pathname, true);
-            os = bufferSize>0?new BufferedOutputStream(fos,bufferSize):fos;
+            CountingOutputStream cos = new CountingOutputStream(fos, pathname.length());
+            os = bufferSize>0?new BufferedOutputStream(cos,bufferSize):cos;
             writer = new PrintWriter(
                     (encoding != null) ? new OutputStreamWriter(os, encoding)
                                        : new OutputStreamWriter(os), false);
             writer.write(getFormatter().getHead(this));
+            channel = fos.getChannel();
+            counter = cos;
+            openIndex(pathname);
+            currentFile = pathname;
+            rotationDeadline = nextRotationDeadline(System.currentTimeMillis());
         } catch (Exception e) {
             reportError(null, e, ErrorManager.OPEN_FAILURE);
             writer = null;
+            retryOpenLater();
             if (fos != null) {
                 try {
                     fos.close();
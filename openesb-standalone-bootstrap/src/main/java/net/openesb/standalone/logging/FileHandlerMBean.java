@@ -0,0 +1,31 @@
+package net.openesb.standalone.logging;
+
+/**
+ * Statistics of the durability policy of a {@link FileHandler}.
+ *
+ * @author OpenESB Community
+ */
+public interface FileHandlerMBean {
+
+    /**
+     * @return the number of syncs done by the durability policy.
+     */
+    long getSyncCount();
+
+    /**
+     * @return the average duration of a sync, in microseconds.
+     */
+    long getAverageSyncTime();
+
+    /**
+     * @return the average time <code>publish</code> waited for a record to
+     * be durable, in microseconds.
+     */
+    long getAverageCommitLatency();
+
+    /**
+     * @return the longest time <code>publish</code> waited for a record to
+     * be durable, in microseconds.
+     */
+    long getMaxCommitLatency();
+}
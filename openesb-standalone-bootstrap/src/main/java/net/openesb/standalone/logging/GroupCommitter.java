@@ -0,0 +1,276 @@
+package net.openesb.standalone.logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Makes written records durable by forcing the log file to the storage
+ * device, sharing each sync between all the threads waiting for it.
+ *
+ * <p>Every written record gets a ticket. A thread which needs its record
+ * to be durable waits until the durable ticket reaches its own: the first
+ * waiting thread becomes the leader and syncs everything written so far,
+ * the others wait for that sync and are acknowledged together (group
+ * commit).</p>
+ *
+ * @author OpenESB Community
+ */
+abstract class GroupCommitter implements Runnable {
+
+    /**
+     * When records are made durable.
+     */
+    enum Policy {
+        /**
+         * Never sync explicitly, rely on the operating system.
+         */
+        NONE,
+        /**
+         * Sync every <code>syncInterval</code> milliseconds if something has
+         * been written.
+         */
+        INTERVAL,
+        /**
+         * Sync before returning from <code>publish</code> for records at or
+         * above <code>syncLevel</code>.
+         */
+        LEVEL;
+
+        static Policy parse(String value, Policy defaultValue) {
+            if (value == null || value.length() == 0) {
+                return defaultValue;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException iae) {
+                return defaultValue;
+            }
+        }
+    }
+
+    private final Policy policy;
+    private final long syncInterval;
+    private final int syncLevel;
+    private final String threadName;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+
+    /**
+     * Ticket of the last written record.
+     */
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * Ticket of the last record known to be durable.
+     */
+    private volatile long durable = 0;
+
+    /**
+     * Whether a leader is currently syncing. Guarded by <code>lock</code>.
+     */
+    private boolean syncing = false;
+
+    private volatile Thread thread;
+
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong syncNanos = new AtomicLong();
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong commitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    GroupCommitter(String threadName, Policy policy, long syncInterval, Level syncLevel) {
+        this.threadName = threadName;
+        this.policy = policy;
+        this.syncInterval = syncInterval < 1 ? 1 : syncInterval;
+        this.syncLevel = syncLevel.intValue();
+    }
+
+    /**
+     * Flush and force everything written so far to the storage device.
+     */
+    protected abstract void sync() throws Exception;
+
+    /**
+     * Called when {@link #sync()} throws an exception.
+     */
+    protected abstract void failed(Exception ex);
+
+    synchronized void start() {
+        if (policy != Policy.INTERVAL || thread != null) {
+            return;
+        }
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the periodic sync and make everything written durable.
+     */
+    void shutdown() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+        commit(written.get());
+    }
+
+    /**
+     * Record that one more record has been written.
+     *
+     * @return the ticket of the record
+     */
+    long written() {
+        return written.incrementAndGet();
+    }
+
+    /**
+     * @return the ticket of the last written record.
+     */
+    long lastWritten() {
+        return written.get();
+    }
+
+    /**
+     * Mark every record written so far as durable, when the file has been
+     * forced and closed outside of this committer.
+     */
+    void markDurable() {
+        lock.lock();
+        try {
+            long target = written.get();
+            if (target > durable) {
+                durable = target;
+            }
+            synced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the publishing thread has to wait until
+     * the record is durable.
+     */
+    boolean mustAwait(LogRecord record) {
+        return policy == Policy.LEVEL && record.getLevel().intValue() >= syncLevel;
+    }
+
+    /**
+     * Wait until the record with the given ticket is durable, and account
+     * for the commit latency.
+     */
+    void await(long ticket) {
+        long start = System.nanoTime();
+        commit(ticket);
+        long elapsed = System.nanoTime() - start;
+        commitCount.incrementAndGet();
+        commitNanos.addAndGet(elapsed);
+        long max;
+        while ((max = maxCommitNanos.get()) < elapsed
+                && !maxCommitNanos.compareAndSet(max, elapsed)) {
+            // retry
+        }
+    }
+
+    private void commit(long ticket) {
+        if (durable >= ticket) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durable < ticket) {
+                if (syncing) {
+                    // A leader is syncing, it may or may not cover this ticket
+                    try {
+                        synced.await();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    continue;
+                }
+
+                syncing = true;
+                long target = written.get();
+                boolean success = false;
+                lock.unlock();
+                try {
+                    long start = System.nanoTime();
+                    sync();
+                    syncNanos.addAndGet(System.nanoTime() - start);
+                    syncCount.incrementAndGet();
+                    success = true;
+                } catch (Exception ex) {
+                    failed(ex);
+                } finally {
+                    lock.lock();
+                    syncing = false;
+                    if (success && target > durable) {
+                        durable = target;
+                    }
+                    synced.signalAll();
+                }
+                if (!success) {
+                    // Do not spin on a failing device
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (thread == Thread.currentThread()) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(syncInterval);
+            } catch (InterruptedException ie) {
+                return;
+            }
+            long target = written.get();
+            if (target > durable) {
+                commit(target);
+            }
+        }
+    }
+
+    long getSyncCount() {
+        return syncCount.get();
+    }
+
+    /**
+     * @return the average duration of a sync, in microseconds.
+     */
+    long getAverageSyncTime() {
+        long count = syncCount.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(syncNanos.get() / count);
+    }
+
+    /**
+     * @return the average time a publishing thread waited for its record to
+     * be durable, in microseconds.
+     */
+    long getAverageCommitLatency() {
+        long count = commitCount.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(commitNanos.get() / count);
+    }
+
+    /**
+     * @return the longest time a publishing thread waited for its record to
+     * be durable, in microseconds.
+     */
+    long getMaxCommitLatency() {
+        return TimeUnit.NANOSECONDS.toMicros(maxCommitNanos.get());
+    }
+}
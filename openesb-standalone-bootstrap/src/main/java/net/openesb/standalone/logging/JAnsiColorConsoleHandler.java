@@ -1,6 +1,5 @@
 package net.openesb.standalone.logging;
 
-import java.util.logging.LogRecord;
 import org.fusesource.jansi.AnsiConsole;
 
 /**
@@ -12,8 +11,8 @@ import org.fusesource.jansi.AnsiConsole;
 public class JAnsiColorConsoleHandler extends BaseColorConsoleHandler {
     
     @Override
-    public void publish(LogRecord record) {
-        AnsiConsole.err.print(logRecordToString(record));
+    protected void write(String text) {
+        AnsiConsole.err.print(text);
         AnsiConsole.err.flush();
     }
 }
@@ -0,0 +1,115 @@
+package net.openesb.standalone.logging;
+
+import java.util.logging.LogRecord;
+
+/**
+ * Formats records as JSON lines, one object per record:
+ *
+ * <pre>
+ * {"timestamp":"2015-03-10T12:22:16.123+01:00","level":"INFO","logger":"...",
+ *  "thread":"...","class":"...","method":"...","message":"...",
+ *  "exception":{"class":"...","message":"...","stackTrace":"..."}}
+ * </pre>
+ *
+ * <p>The JSON text is streamed into the per-thread buffer of
+ * {@link LogFormatter}, without intermediate maps or strings, and fields
+ * without a value are omitted. Use it with the <code>formatter</code>
+ * property of a handler. Stack traces are deduplicated as described in
+ * {@link LogFormatter}, with the properties prefixed by this class name.</p>
+ *
+ * @author OpenESB Community
+ */
+public class JsonFormatter extends LogFormatter {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    @Override
+    boolean needsSource(LogRecord record) {
+        return true;
+    }
+
+    @Override
+    void format(LogRecord record, StringBuilder sb, FormatBuffer buffer) {
+        sb.append("{\"timestamp\":\"");
+        buffer.appendRfc3339Timestamp(sb, record.getMillis());
+        sb.append("\",\"level\":\"").append(record.getLevel().getName()).append('"');
+
+        appendField(sb, "logger", record.getLoggerName());
+        appendField(sb, "thread", AsyncLogRecord.threadName(record));
+        appendField(sb, "class", record.getSourceClassName());
+        appendField(sb, "method", record.getSourceMethodName());
+        appendField(sb, "message", formatMessage(record));
+
+        Throwable thrown = record.getThrown();
+        if (thrown != null) {
+            sb.append(",\"exception\":{\"class\":");
+            appendString(sb, thrown.getClass().getName());
+            appendField(sb, "message", thrown.getMessage());
+            StringBuilder stackTrace = buffer.scratch();
+            appendThrown(stackTrace, thrown);
+            sb.append(",\"stackTrace\":");
+            appendString(sb, stackTrace);
+            sb.append('}');
+        }
+
+        sb.append('}').append(LINE_SEPARATOR);
+    }
+
+    private static void appendField(StringBuilder sb, String name, CharSequence value) {
+        if (value == null) {
+            return;
+        }
+        sb.append(",\"").append(name).append("\":");
+        appendString(sb, value);
+    }
+
+    /**
+     * Append a quoted and escaped JSON string.
+     */
+    static void appendString(StringBuilder sb, CharSequence value) {
+        sb.append('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            sb.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    sb.append("\\u")
+                            .append(HEX_DIGITS[(c >> 12) & 0xF])
+                            .append(HEX_DIGITS[(c >> 8) & 0xF])
+                            .append(HEX_DIGITS[(c >> 4) & 0xF])
+                            .append(HEX_DIGITS[c & 0xF]);
+            }
+        }
+        sb.append(value, start, length);
+        sb.append('"');
+    }
+}
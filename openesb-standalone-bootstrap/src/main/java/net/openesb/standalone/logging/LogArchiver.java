@@ -0,0 +1,223 @@
+package net.openesb.standalone.logging;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.ErrorManager;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses closed log segments and applies the retention count, on a
+ * background thread shared by all the file handlers.
+ *
+ * @author OpenESB Community
+ */
+final class LogArchiver {
+
+    static final String COMPRESSED_SUFFIX = ".gz";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final ExecutorService EXECUTOR =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "FileHandler-archiver");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+
+    private final File directory;
+    private final String prefix;
+    private final String suffix;
+    private final boolean compress;
+    private final int maxHistory;
+    private final ErrorManager errorManager;
+
+    LogArchiver(File directory, String prefix, String suffix,
+            boolean compress, int maxHistory, ErrorManager errorManager) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.compress = compress;
+        this.maxHistory = maxHistory;
+        this.errorManager = errorManager;
+    }
+
+    boolean isEnabled() {
+        return compress || maxHistory > 0;
+    }
+
+    /**
+     * Schedule the archiving of a segment which is not written anymore.
+     *
+     * @param segment the closed segment
+     * @param active the file currently written, never deleted
+     */
+    void archive(final File segment, final File active) {
+        if (!isEnabled()) {
+            return;
+        }
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (compress && segment != null) {
+                    compress(segment);
+                }
+                if (maxHistory > 0) {
+                    purge(active);
+                }
+            }
+        });
+    }
+
+    private void compress(File segment) {
+        if (!segment.isFile()) {
+            return;
+        }
+        File target = new File(segment.getPath() + COMPRESSED_SUFFIX);
+        File temp = new File(target.getPath() + TEMP_SUFFIX);
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = new FileInputStream(segment);
+            out = new GZIPOutputStream(new FileOutputStream(temp), 64 * 1024);
+            byte[] buffer = new byte[64 * 1024];
+            int rd;
+            while ((rd = in.read(buffer)) > 0) {
+                out.write(buffer, 0, rd);
+            }
+            out.close();
+            out = null;
+            in.close();
+            in = null;
+            if (temp.renameTo(target)) {
+                segment.delete();
+                // Offsets are meaningless in the compressed file
+                LogIndexWriter.indexFile(segment).delete();
+            } else {
+                temp.delete();
+            }
+        } catch (IOException ioe) {
+            errorManager.error("Unable to compress [" + segment + "]", ioe,
+                    ErrorManager.GENERIC_FAILURE);
+            temp.delete();
+        } finally {
+            close(in);
+            close(out);
+        }
+    }
+
+    /**
+     * Delete the oldest rolled segments, keeping the <code>maxHistory</code> most
+     * recent ones.
+     */
+    void purge(File active) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<File> segments = new ArrayList<File>();
+        for (File file : files) {
+            if (!file.equals(active) && isSegment(file.getName())) {
+                segments.add(file);
+            }
+        }
+
+        if (segments.size() <= maxHistory) {
+            return;
+        }
+
+        File[] sorted = segments.toArray(new File[segments.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? 1 : (m1 == m2 ? 0 : -1);
+            }
+        });
+        for (int i = maxHistory; i < sorted.length; i++) {
+            if (!sorted[i].delete()) {
+                errorManager.error("Unable to delete [" + sorted[i] + "]", null,
+                        ErrorManager.GENERIC_FAILURE);
+            } else if (sorted[i].getName().endsWith(suffix)) {
+                LogIndexWriter.indexFile(sorted[i]).delete();
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the name is one of the files closed by
+     * the handler, <code>{prefix}{date}{suffix}[.gz]</code> for the daily
+     * files and <code>{prefix}[{date}].{n}{suffix}[.gz]</code> for the
+     * rolled ones, so that unrelated files sharing the prefix are never
+     * purged.
+     */
+    boolean isSegment(String name) {
+        if (name.endsWith(COMPRESSED_SUFFIX)) {
+            name = name.substring(0, name.length() - COMPRESSED_SUFFIX.length());
+        }
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)
+                || name.length() < prefix.length() + suffix.length()) {
+            return false;
+        }
+        String rolled = name.substring(prefix.length(), name.length() - suffix.length());
+        int dot = rolled.lastIndexOf('.');
+        if (dot < 0) {
+            return isDate(rolled);
+        }
+        if (!isDigits(rolled, dot + 1, rolled.length())) {
+            return false;
+        }
+        String date = rolled.substring(0, dot);
+        return date.length() == 0 || isDate(date);
+    }
+
+    /**
+     * @return <code>true</code> for a <code>yyyy-MM-dd</code> date.
+     */
+    private static boolean isDate(String date) {
+        return date.length() == 10
+                && date.charAt(4) == '-' && date.charAt(7) == '-'
+                && isDigits(date, 0, 4) && isDigits(date, 5, 7)
+                && isDigits(date, 8, 10);
+    }
+
+    private static boolean isDigits(String s, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -1,26 +1,53 @@
 package net.openesb.standalone.logging;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
+import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
 
 /**
+ * Formats records as
+ * <code>{RFC-3339 date} {level} [{logger}] ({thread}) {message}</code>.
+ *
+ * <p>The formatter is thread-safe and does not lock: every thread reuses its
+ * own builder and char buffer, and caches the date prefix of the current
+ * second so that only the milliseconds are rendered for each record. Stack
+ * traces are rendered straight into the builder. Handlers which know this
+ * class can use {@link #format(LogRecord, Writer)} to skip the intermediate
+ * <code>String</code>.</p>
+ *
+ * <p>The following configuration properties are available, prefixed by the
+ * class name:</p>
+ *
+ * <ul>
+ *   <li><code>dedupStackTraces</code> - Render the stack trace of a
+ *    throwable in full, tagged with a reference like <code>#a1b2c3d4</code>,
+ *    the first time it is seen only. Later occurrences of the same class and
+ *    top frames are rendered on one line, as
+ *    <code>... (stack trace same as #a1b2c3d4, repeated 512x)</code>.
+ *    Default value: <code>false</code></li>
+ *   <li><code>dedupFrames</code> - Number of top frames identifying a stack
+ *    trace, for each throwable of the cause chain. Default value:
+ *    <code>8</code></li>
+ *   <li><code>dedupCacheSize</code> - Number of recent stack traces
+ *    remembered. A stack trace forgotten is rendered in full again.
+ *    Default value: <code>1024</code></li>
+ * </ul>
  *
  * @author David BRASSELY (brasseld at gmail.com)
  * @author OpenESB Community
  */
 public class LogFormatter extends Formatter {
 
-    private static final String RFC_3339_DATE_FORMAT
-	    = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
-
-    private static final SimpleDateFormat dateFormatter
-	    = new SimpleDateFormat(RFC_3339_DATE_FORMAT);
-
     private static final String LINE_SEPARATOR= System.lineSeparator();
     
     private static final char FIELD_SEPARATOR = ' ';
@@ -32,22 +59,95 @@ public class LogFormatter extends Formatter {
 
     private static final char SEPARATOR2_BEGIN_MARKER = '(';
     private static final char SEPARATOR2_END_MARKER = ')';
-    
-    // A Dummy Container Date Object is used to format the date
-    private Date date = new Date();
+
+    /**
+     * Buffers growing above this size (huge stack traces or messages) are
+     * not kept by the thread once the record has been formatted.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<FormatBuffer> buffers
+	    = new ThreadLocal<FormatBuffer>() {
+		@Override
+		protected FormatBuffer initialValue() {
+		    return new FormatBuffer();
+		}
+	    };
+
+    /**
+     * <code>null</code> unless stack traces are deduplicated.
+     */
+    private final StackTraceDeduplicator deduplicator;
+
+    public LogFormatter() {
+	String className = getClass().getName();
+	if (Boolean.parseBoolean(LogProperties.getProperty(className + ".dedupStackTraces", "false"))) {
+	    deduplicator = new StackTraceDeduplicator(
+		    LogProperties.getIntProperty(className + ".dedupCacheSize", 1024),
+		    LogProperties.getIntProperty(className + ".dedupFrames", 8));
+	} else {
+	    deduplicator = null;
+	}
+    }
 
     @Override
     public String format(LogRecord record) {
-	StringBuilder recordBuffer = new StringBuilder();
-	// The following operations are to format the date and time in a
-	// human readable  format.
-	// _REVISIT_: Use HiResolution timer to analyze the number of
-	// Microseconds spent on formatting date object
-	date.setTime(record.getMillis());
-	recordBuffer.append(dateFormatter.format(date));
+	FormatBuffer buffer = buffers.get();
+	StringBuilder recordBuffer = buffer.builder();
+	format(record, recordBuffer, buffer);
+	String result = recordBuffer.toString();
+	buffer.release();
+	return result;
+    }
+
+    /**
+     * Format the record and write it to the given writer without creating an
+     * intermediate <code>String</code>.
+     *
+     * @param record the record to format
+     * @param out    the handler writer
+     * @throws IOException if the record can not be written
+     */
+    public void format(LogRecord record, Writer out) throws IOException {
+	FormatBuffer buffer = buffers.get();
+	StringBuilder recordBuffer = buffer.builder();
+	format(record, recordBuffer, buffer);
+	int length = recordBuffer.length();
+	char[] chars = buffer.chars(length);
+	recordBuffer.getChars(0, length, chars, 0);
+	try {
+	    out.write(chars, 0, length);
+	} finally {
+	    buffer.release();
+	}
+    }
+
+    /**
+     * Whether the record is formatted with its caller source. The
+     * asynchronous handlers only infer the source, which walks the stack,
+     * of the records for which it is printed.
+     *
+     * @param record the record to format
+     * @return <code>true</code> for the records at <code>FINE</code> and
+     * below
+     */
+    boolean needsSource(LogRecord record) {
+	return record.getLevel().intValue() <= Level.FINE.intValue();
+    }
+
+    /**
+     * Append the formatted record to the given builder.
+     *
+     * @param record       the record to format
+     * @param recordBuffer the per-thread builder, empty
+     * @param buffer       the per-thread formatting state
+     */
+    void format(LogRecord record, StringBuilder recordBuffer,
+	    FormatBuffer buffer) {
+	buffer.appendTimestamp(recordBuffer, record.getMillis());
 	recordBuffer.append(FIELD_SEPARATOR);
 
-	recordBuffer.append(record.getLevel()).append(FIELD_SEPARATOR);
+	recordBuffer.append(record.getLevel().getName()).append(FIELD_SEPARATOR);
 	
 	recordBuffer
 		.append(SEPARATOR_BEGIN_MARKER)
@@ -57,11 +157,10 @@ public class LogFormatter extends Formatter {
 
 	recordBuffer
 		.append(SEPARATOR2_BEGIN_MARKER)
-		.append(Thread.currentThread().getName())
+		.append(AsyncLogRecord.threadName(record))
 		.append(SEPARATOR2_END_MARKER);
 
-	Level level = record.getLevel();
-	if (level.intValue() <= Level.FINE.intValue()) {
+	if (needsSource(record)) {
 	    recordBuffer.append("ClassName").append(NV_SEPARATOR);
 	    recordBuffer.append(record.getSourceClassName());
 	    recordBuffer.append(NVPAIR_SEPARATOR);
@@ -76,16 +175,295 @@ public class LogFormatter extends Formatter {
 
 	if (record.getThrown() != null) {
 	    recordBuffer.append(LINE_SEPARATOR);
-	    StringWriter sw = new StringWriter();
-	    PrintWriter pw = new PrintWriter(sw);
-	    record.getThrown().printStackTrace(pw);
-	    pw.close();
-	    recordBuffer.append(sw.toString());
+	    appendThrown(recordBuffer, record.getThrown());
 	}
 
 	recordBuffer.append(LINE_SEPARATOR);
-	
-	return recordBuffer.toString();
     }
 
+    /**
+     * Same contract as <code>Formatter.formatMessage</code>, which is
+     * synchronized and would serialize all the logging threads.
+     */
+    @Override
+    public String formatMessage(LogRecord record) {
+	String format = record.getMessage();
+	ResourceBundle catalog = record.getResourceBundle();
+	if (catalog != null && format != null) {
+	    try {
+		format = catalog.getString(format);
+	    } catch (MissingResourceException ex) {
+		// Use the raw message
+	    }
+	}
+
+	Object[] parameters = record.getParameters();
+	if (format == null || parameters == null || parameters.length == 0) {
+	    return format;
+	}
+
+	try {
+	    if (format.indexOf("{0") >= 0 || format.indexOf("{1") >= 0
+		    || format.indexOf("{2") >= 0 || format.indexOf("{3") >= 0) {
+		return MessageFormat.format(format, parameters);
+	    }
+	    return format;
+	} catch (Exception ex) {
+	    return format;
+	}
+    }
+
+    /**
+     * Render the throwable of a record, in full or as a reference to the
+     * same stack trace rendered earlier.
+     */
+    void appendThrown(StringBuilder sb, Throwable thrown) {
+	if (deduplicator == null) {
+	    appendThrowable(sb, thrown);
+	    return;
+	}
+
+	long fingerprint = deduplicator.fingerprint(thrown);
+	long repeated = deduplicator.occurrence(fingerprint);
+	if (repeated == 0) {
+	    StackTraceDeduplicator.appendReference(sb, fingerprint);
+	    sb.append(FIELD_SEPARATOR);
+	    appendThrowable(sb, thrown);
+	} else {
+	    sb.append(thrown).append(" (stack trace same as ");
+	    StackTraceDeduplicator.appendReference(sb, fingerprint);
+	    sb.append(", repeated ").append(repeated).append("x)");
+	    sb.append(LINE_SEPARATOR);
+	}
+    }
+
+    /**
+     * Render a throwable the same way as <code>printStackTrace()</code>,
+     * without going through a <code>PrintWriter</code>.
+     */
+    static void appendThrowable(StringBuilder sb, Throwable throwable) {
+	sb.append(throwable);
+	sb.append(LINE_SEPARATOR);
+
+	StackTraceElement[] trace = throwable.getStackTrace();
+	for (StackTraceElement element : trace) {
+	    sb.append("\tat ");
+	    appendStackTraceElement(sb, element);
+	    sb.append(LINE_SEPARATOR);
+	}
+
+	Throwable[] suppressed = throwable.getSuppressed();
+	Throwable cause = throwable.getCause();
+	if (suppressed.length == 0 && cause == null) {
+	    return;
+	}
+
+	Set<Throwable> dejaVu = Collections.newSetFromMap(
+		new IdentityHashMap<Throwable, Boolean>());
+	dejaVu.add(throwable);
+	for (Throwable se : suppressed) {
+	    appendEnclosedThrowable(sb, se, trace, "Suppressed: ", "\t", dejaVu);
+	}
+	if (cause != null) {
+	    appendEnclosedThrowable(sb, cause, trace, "Caused by: ", "", dejaVu);
+	}
+    }
+
+    private static void appendEnclosedThrowable(StringBuilder sb,
+	    Throwable throwable, StackTraceElement[] enclosingTrace,
+	    String caption, String prefix, Set<Throwable> dejaVu) {
+	if (!dejaVu.add(throwable)) {
+	    sb.append(prefix).append(caption)
+		    .append("[CIRCULAR REFERENCE:").append(throwable).append(']')
+		    .append(LINE_SEPARATOR);
+	    return;
+	}
+
+	// Compute number of frames in common between this and enclosing trace
+	StackTraceElement[] trace = throwable.getStackTrace();
+	int m = trace.length - 1;
+	int n = enclosingTrace.length - 1;
+	while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+	    m--;
+	    n--;
+	}
+	int framesInCommon = trace.length - 1 - m;
+
+	sb.append(prefix).append(caption).append(throwable).append(LINE_SEPARATOR);
+	for (int i = 0; i <= m; i++) {
+	    sb.append(prefix).append("\tat ");
+	    appendStackTraceElement(sb, trace[i]);
+	    sb.append(LINE_SEPARATOR);
+	}
+	if (framesInCommon != 0) {
+	    sb.append(prefix).append("\t... ").append(framesInCommon)
+		    .append(" more").append(LINE_SEPARATOR);
+	}
+
+	for (Throwable se : throwable.getSuppressed()) {
+	    appendEnclosedThrowable(sb, se, trace, "Suppressed: ", prefix + "\t", dejaVu);
+	}
+	Throwable cause = throwable.getCause();
+	if (cause != null) {
+	    appendEnclosedThrowable(sb, cause, trace, "Caused by: ", prefix, dejaVu);
+	}
+    }
+
+    private static void appendStackTraceElement(StringBuilder sb,
+	    StackTraceElement element) {
+	sb.append(element.getClassName()).append('.')
+		.append(element.getMethodName()).append('(');
+	String fileName = element.getFileName();
+	int lineNumber = element.getLineNumber();
+	if (element.isNativeMethod()) {
+	    sb.append("Native Method");
+	} else if (fileName == null) {
+	    sb.append("Unknown Source");
+	} else {
+	    sb.append(fileName);
+	    if (lineNumber >= 0) {
+		sb.append(':').append(lineNumber);
+	    }
+	}
+	sb.append(')');
+    }
+
+    /**
+     * Per-thread formatting state.
+     */
+    static final class FormatBuffer {
+
+	private StringBuilder builder = new StringBuilder(256);
+	private StringBuilder scratch = new StringBuilder(256);
+	private char[] chars = new char[256];
+
+	private final Calendar calendar = Calendar.getInstance();
+
+	/**
+	 * <code>yyyy-MM-dd'T'HH:mm:ss</code> of {@link #cachedSecond}.
+	 */
+	private final char[] secondPrefix = new char[19];
+
+	/**
+	 * <code>Z</code> (RFC-822 zone) of {@link #cachedSecond}.
+	 */
+	private final char[] zone = new char[5];
+
+	/**
+	 * <code>XXX</code> (RFC 3339 offset, <code>Z</code> for UTC) of
+	 * {@link #cachedSecond}.
+	 */
+	private String rfc3339Zone;
+
+	private long cachedSecond = Long.MIN_VALUE;
+
+	StringBuilder builder() {
+	    builder.setLength(0);
+	    return builder;
+	}
+
+	/**
+	 * @return a second empty builder, for values which need to be
+	 * escaped once rendered.
+	 */
+	StringBuilder scratch() {
+	    scratch.setLength(0);
+	    return scratch;
+	}
+
+	char[] chars(int length) {
+	    if (chars.length < length) {
+		chars = new char[Math.max(length, chars.length * 2)];
+	    }
+	    return chars;
+	}
+
+	void release() {
+	    if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+		builder = new StringBuilder(256);
+	    }
+	    if (scratch.capacity() > MAX_RETAINED_CAPACITY) {
+		scratch = new StringBuilder(256);
+	    }
+	    if (chars.length > MAX_RETAINED_CAPACITY) {
+		chars = new char[256];
+	    }
+	}
+
+	/**
+	 * Append <code>yyyy-MM-dd'T'HH:mm:ss.SSSZ</code>.
+	 */
+	void appendTimestamp(StringBuilder sb, long millis) {
+	    appendLocalTime(sb, millis);
+	    sb.append(zone);
+	}
+
+	/**
+	 * Append <code>yyyy-MM-dd'T'HH:mm:ss.SSSXXX</code>, as defined by
+	 * RFC 3339.
+	 */
+	void appendRfc3339Timestamp(StringBuilder sb, long millis) {
+	    appendLocalTime(sb, millis);
+	    sb.append(rfc3339Zone);
+	}
+
+	private void appendLocalTime(StringBuilder sb, long millis) {
+	    long second = millis / 1000;
+	    int millisOfSecond = (int) (millis % 1000);
+	    if (millisOfSecond < 0) {
+		second--;
+		millisOfSecond += 1000;
+	    }
+	    if (second != cachedSecond) {
+		cacheSecond(second * 1000);
+		cachedSecond = second;
+	    }
+
+	    sb.append(secondPrefix).append('.');
+	    sb.append((char) ('0' + millisOfSecond / 100));
+	    sb.append((char) ('0' + (millisOfSecond / 10) % 10));
+	    sb.append((char) ('0' + millisOfSecond % 10));
+	}
+
+	private void cacheSecond(long millis) {
+	    calendar.setTimeInMillis(millis);
+	    int year = calendar.get(Calendar.YEAR);
+	    put4(secondPrefix, 0, year);
+	    secondPrefix[4] = '-';
+	    put2(secondPrefix, 5, calendar.get(Calendar.MONTH) + 1);
+	    secondPrefix[7] = '-';
+	    put2(secondPrefix, 8, calendar.get(Calendar.DAY_OF_MONTH));
+	    secondPrefix[10] = 'T';
+	    put2(secondPrefix, 11, calendar.get(Calendar.HOUR_OF_DAY));
+	    secondPrefix[13] = ':';
+	    put2(secondPrefix, 14, calendar.get(Calendar.MINUTE));
+	    secondPrefix[16] = ':';
+	    put2(secondPrefix, 17, calendar.get(Calendar.SECOND));
+
+	    int offset = (calendar.get(Calendar.ZONE_OFFSET)
+		    + calendar.get(Calendar.DST_OFFSET)) / 60000;
+	    if (offset < 0) {
+		zone[0] = '-';
+		offset = -offset;
+	    } else {
+		zone[0] = '+';
+	    }
+	    put2(zone, 1, offset / 60);
+	    put2(zone, 3, offset % 60);
+	    rfc3339Zone = offset == 0 ? "Z" : new StringBuilder(6).append(zone, 0, 3)
+		    .append(':').append(zone, 3, 2).toString();
+	}
+
+	private static void put2(char[] buf, int pos, int value) {
+	    buf[pos] = (char) ('0' + value / 10);
+	    buf[pos + 1] = (char) ('0' + value % 10);
+	}
+
+	private static void put4(char[] buf, int pos, int value) {
+	    buf[pos] = (char) ('0' + (value / 1000) % 10);
+	    buf[pos + 1] = (char) ('0' + (value / 100) % 10);
+	    buf[pos + 2] = (char) ('0' + (value / 10) % 10);
+	    buf[pos + 3] = (char) ('0' + value % 10);
+	}
+    }
 }
@@ -0,0 +1,148 @@
+package net.openesb.standalone.logging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+
+/**
+ * Maintains the sparse time index of a log file.
+ *
+ * <p>The log file is split into blocks of about <code>blockSize</code>
+ * bytes, each one starting on a record boundary. When a block is complete,
+ * an entry is appended to <code>{logfile}.idx</code>. Entries are
+ * <code>ENTRY_SIZE</code> bytes, big endian:</p>
+ *
+ * <pre>
+ * long offset     first byte of the block in the log file
+ * long length     length of the block, in bytes
+ * long minMillis  earliest record time in the block
+ * long maxMillis  latest record time in the block
+ * int  levelMask  one bit per standard level present in the block
+ * int  records    number of records in the block
+ * </pre>
+ *
+ * <p>Level bits go from <code>FINEST</code> (bit 0) to <code>SEVERE</code>
+ * (bit 6); other levels use the bit of the closest standard level below.
+ * The last block is indexed when the file is closed, readers scan whatever
+ * follows the last entry.</p>
+ *
+ * @author OpenESB Community
+ */
+final class LogIndexWriter {
+
+    static final String INDEX_SUFFIX = ".idx";
+
+    static final int ENTRY_SIZE = 40;
+
+    private final FileChannel channel;
+    private final long blockSize;
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+    private long blockStart;
+    private long minMillis;
+    private long maxMillis;
+    private int levelMask;
+    private int records;
+
+    LogIndexWriter(File logFile, long blockSize, long start) throws IOException {
+        this.channel = new FileOutputStream(indexFile(logFile), true).getChannel();
+        this.blockSize = blockSize;
+        reset(start);
+    }
+
+    static File indexFile(File logFile) {
+        return new File(logFile.getPath() + INDEX_SUFFIX);
+    }
+
+    /**
+     * @param count number of bytes written to the log file so far, possibly
+     * lagging behind because of buffering.
+     * @return <code>true</code> if the current block is complete.
+     */
+    boolean isBlockComplete(long count) {
+        return records > 0 && count - blockStart >= blockSize;
+    }
+
+    /**
+     * Index the current block and start a new one.
+     *
+     * @param offset exact offset of the next record.
+     */
+    void startBlock(long offset) throws IOException {
+        if (records > 0) {
+            writeEntry(offset);
+        }
+        reset(offset);
+    }
+
+    /**
+     * Account for a record written in the current block.
+     */
+    void recorded(long millis, Level level) {
+        if (records == 0 || millis < minMillis) {
+            minMillis = millis;
+        }
+        if (records == 0 || millis > maxMillis) {
+            maxMillis = millis;
+        }
+        levelMask |= 1 << levelBit(level.intValue());
+        records++;
+    }
+
+    /**
+     * Index the last block and close the index file.
+     *
+     * @param end exact length of the log file.
+     */
+    void close(long end) throws IOException {
+        try {
+            if (records > 0) {
+                writeEntry(end);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    static int levelBit(int value) {
+        if (value >= Level.SEVERE.intValue()) {
+            return 6;
+        } else if (value >= Level.WARNING.intValue()) {
+            return 5;
+        } else if (value >= Level.INFO.intValue()) {
+            return 4;
+        } else if (value >= Level.CONFIG.intValue()) {
+            return 3;
+        } else if (value >= Level.FINE.intValue()) {
+            return 2;
+        } else if (value >= Level.FINER.intValue()) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private void writeEntry(long end) throws IOException {
+        entry.clear();
+        entry.putLong(blockStart)
+                .putLong(end - blockStart)
+                .putLong(minMillis)
+                .putLong(maxMillis)
+                .putInt(levelMask)
+                .putInt(records);
+        entry.flip();
+        while (entry.hasRemaining()) {
+            channel.write(entry);
+        }
+    }
+
+    private void reset(long start) {
+        blockStart = start;
+        minMillis = 0;
+        maxMillis = 0;
+        levelMask = 0;
+        records = 0;
+    }
+}
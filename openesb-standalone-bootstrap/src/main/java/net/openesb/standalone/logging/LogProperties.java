@@ -0,0 +1,39 @@
+package net.openesb.standalone.logging;
+
+/**
+ * Reads the configuration of the handlers, formatters and filters from the
+ * <code>LogManager</code> properties.
+ *
+ * @author OpenESB Community
+ */
+final class LogProperties {
+
+    private LogProperties() {
+    }
+
+    /**
+     * @return the trimmed value of the property, or the default value if it
+     * is not set.
+     */
+    static String getProperty(String name, String defaultValue) {
+        String value = LogManager.getLogManager().getProperty(name);
+        if (value == null) {
+            value = defaultValue;
+        } else {
+            value = value.trim();
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of the property, or the default value if it is not
+     * set or not a number.
+     */
+    static int getIntProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException ignore) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.openesb.standalone.logging;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable character trie mapping logger name prefixes to values.
+ *
+ * <p>A prefix matches a logger name equal to it or starting with it followed
+ * by a dot, and the longest matching prefix wins: with the prefixes
+ * <code>com.sun.jbi</code> and <code>com.sun.jbi.httpsoapbc</code>, the
+ * logger <code>com.sun.jbi.httpsoapbc.Outbound</code> gets the value of the
+ * second one, and <code>com.sun.jbi.httpsoapbcx</code> the value of the
+ * first one. The empty prefix matches every logger.</p>
+ *
+ * <p>A lookup walks the name once, without allocating, whatever the number
+ * of prefixes.</p>
+ *
+ * @author OpenESB Community
+ */
+final class LoggerNameTrie<V> {
+
+    private final Node<V> root;
+
+    private LoggerNameTrie(Node<V> root) {
+        this.root = root;
+    }
+
+    /**
+     * @param prefixes values by logger name prefix.
+     */
+    static <V> LoggerNameTrie<V> compile(Map<String, V> prefixes) {
+        Builder<V> root = new Builder<V>();
+        for (Map.Entry<String, V> entry : prefixes.entrySet()) {
+            Builder<V> node = root;
+            String prefix = entry.getKey();
+            for (int i = 0; i < prefix.length(); i++) {
+                Character c = prefix.charAt(i);
+                Builder<V> child = node.children.get(c);
+                if (child == null) {
+                    child = new Builder<V>();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.value = entry.getValue();
+        }
+        return new LoggerNameTrie<V>(root.build());
+    }
+
+    /**
+     * @return the value of the longest prefix matching the logger name, or
+     * <code>null</code> if none matches.
+     */
+    V lookup(String name) {
+        if (name == null) {
+            name = "";
+        }
+        Node<V> node = root;
+        V match = root.value;
+        int length = name.length();
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c == '.' && node.value != null) {
+                match = node.value;
+            }
+            node = node.child(c);
+            if (node == null) {
+                return match;
+            }
+        }
+        return node.value != null ? node.value : match;
+    }
+
+    private static final class Node<V> {
+
+        private final char[] labels;
+        private final Node<V>[] children;
+        private final V value;
+
+        Node(char[] labels, Node<V>[] children, V value) {
+            this.labels = labels;
+            this.children = children;
+            this.value = value;
+        }
+
+        Node<V> child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i < 0 ? null : children[i];
+        }
+    }
+
+    private static final class Builder<V> {
+
+        private final TreeMap<Character, Builder<V>> children =
+                new TreeMap<Character, Builder<V>>();
+        private V value;
+
+        @SuppressWarnings("unchecked")
+        Node<V> build() {
+            char[] labels = new char[children.size()];
+            Node<V>[] nodes = (Node<V>[]) new Node<?>[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder<V>> child : children.entrySet()) {
+                labels[i] = child.getKey();
+                nodes[i] = child.getValue().build();
+                i++;
+            }
+            return new Node<V>(labels, nodes, value);
+        }
+    }
+}
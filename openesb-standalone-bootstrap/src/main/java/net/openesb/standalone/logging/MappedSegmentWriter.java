@@ -0,0 +1,231 @@
+package net.openesb.standalone.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Writer encoding characters straight into a memory-mapped segment of the
+ * log file.
+ *
+ * <p>A segment of <code>segmentSize</code> bytes is mapped at the end of the
+ * file. When it is full, the next segment is mapped right after it. Nothing
+ * goes through a system call on the write path: the pages are written back
+ * by the operating system. On close, the file is truncated to the bytes
+ * actually written.</p>
+ *
+ * <p>If the JVM dies abruptly, the file may end with the zero bytes of the
+ * unused part of the last segment. They are trimmed when the file is opened
+ * again.</p>
+ *
+ * @author OpenESB Community
+ */
+final class MappedSegmentWriter extends Writer implements ByteCounter {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long segmentSize;
+    private final CharsetEncoder encoder;
+
+    /**
+     * Whether a full segment is forced to the storage device before being
+     * unmapped, so that {@link #force()} covers everything written.
+     */
+    private final boolean durable;
+
+    /**
+     * File offset of the current segment.
+     */
+    private long segmentStart;
+
+    private MappedByteBuffer segment;
+
+    /**
+     * File length up to the last written byte, read without the lock.
+     */
+    private volatile long count;
+
+    MappedSegmentWriter(File pathname, long segmentSize, Charset charset,
+            boolean durable) throws IOException {
+        this.segmentSize = segmentSize;
+        this.durable = durable;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.file = new RandomAccessFile(pathname, "rw");
+        this.channel = file.getChannel();
+        try {
+            map(trimmedLength());
+        } catch (IOException ioe) {
+            file.close();
+            throw ioe;
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        encode(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        encode(CharBuffer.wrap(str, off, off + len));
+    }
+
+    private void encode(CharBuffer in) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            // Records are written as a whole, so a surrogate pair is never
+            // split between two calls.
+            encoder.reset();
+            for (;;) {
+                CoderResult result = encoder.encode(in, segment, true);
+                if (result.isOverflow()) {
+                    map(segmentStart + segment.position());
+                    continue;
+                }
+                result = encoder.flush(segment);
+                if (result.isOverflow()) {
+                    map(segmentStart + segment.position());
+                    continue;
+                }
+                count = segmentStart + segment.position();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Mapped pages are visible to readers as soon as they are written, there
+     * is nothing to flush.
+     */
+    @Override
+    public void flush() throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+        }
+    }
+
+    /**
+     * Force the written pages of the current segment to the storage device.
+     */
+    void force() throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (segment == null) {
+                return;
+            }
+            long length = segmentStart + segment.position();
+            MappedByteBuffer last = segment;
+            segment = null;
+            try {
+                last.force();
+                unmap(last);
+                channel.truncate(length);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes of the file, up to the last written one.
+     */
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (segment == null) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Map a new segment starting at the given file offset.
+     */
+    private void map(long position) throws IOException {
+        MappedByteBuffer previous = segment;
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, position, segmentSize);
+        segmentStart = position;
+        count = position;
+        if (previous != null) {
+            if (durable) {
+                previous.force();
+            }
+            unmap(previous);
+        }
+    }
+
+    /**
+     * @return the length of the file without the trailing zero bytes left
+     * by a segment which has not been truncated.
+     */
+    private long trimmedLength() throws IOException {
+        long length = channel.size();
+        long limit = Math.max(0, length - segmentSize);
+        ByteBuffer block = ByteBuffer.allocate(8192);
+        long end = length;
+        while (end > limit) {
+            long start = Math.max(limit, end - block.capacity());
+            block.clear();
+            block.limit((int) (end - start));
+            channel.read(block, start);
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) != 0) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return end;
+    }
+
+    /**
+     * Release the mapping without waiting for the garbage collector, when
+     * the JVM allows it. Mappings are never accessed once unmapped since all
+     * accesses are done with the writer lock held.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (Exception ignore) {
+            // Not available, try the Java 7/8 way
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception ignore) {
+            // Left to the garbage collector
+        }
+    }
+}
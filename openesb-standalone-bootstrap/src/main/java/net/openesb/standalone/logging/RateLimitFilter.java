@@ -0,0 +1,312 @@
+package net.openesb.standalone.logging;
+
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Filter;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * <code>Filter</code> which limits the rate of records sharing the same
+ * logger and message template, to protect the handlers against log storms.
+ *
+ * <p>Each (logger, template) pair owns a token bucket, checked with a single
+ * compare-and-set. The template is the raw message of the record, before
+ * parameter substitution, so <code>log(Level.WARNING, "Lost {0}", x)</code>
+ * is limited as a whole whatever <code>x</code> is. Records rejected by a
+ * bucket are counted, and a background thread periodically logs a
+ * <i>"N similar records suppressed"</i> summary to the same logger.</p>
+ *
+ * <p>The buckets are shared by every handler using this filter, so a record
+ * published to several handlers only consumes one token and gets the same
+ * decision everywhere. The following configuration properties are
+ * available, prefixed by the class name:</p>
+ *
+ * <ul>
+ *   <li><code>rate</code> - Number of records per second allowed for each
+ *    logger and template. Default value: <code>10</code></li>
+ *   <li><code>burst</code> - Number of records allowed in a burst before the
+ *    rate applies. Default value: <code>100</code></li>
+ *   <li><code>exemptLevel</code> - Records at or above this level are never
+ *    limited. Default value: <code>SEVERE</code></li>
+ *   <li><code>summaryInterval</code> - Delay between two summaries of the
+ *    suppressed records, in seconds. Default value: <code>60</code></li>
+ *   <li><code>maxKeys</code> - Maximum number of buckets. Idle buckets are
+ *    evicted at each summary; records with a new template are not limited
+ *    while the limit is reached. Default value: <code>10000</code></li>
+ * </ul>
+ *
+ * @author OpenESB Community
+ */
+public class RateLimitFilter implements Filter {
+
+    private static final String SUMMARY_MESSAGE =
+            "{0} similar records suppressed during the last {1} seconds: {2}";
+
+    private static volatile Limiter limiter;
+
+    /**
+     * Decision taken for the last record seen by the current thread, so that
+     * the other handlers of the same logger do not consume another token.
+     */
+    private static final ThreadLocal<long[]> LAST_DECISION = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[]{-1L, 0L};
+        }
+    };
+
+    private final Limiter shared;
+
+    public RateLimitFilter() {
+        this.shared = getLimiter();
+    }
+
+    private static Limiter getLimiter() {
+        Limiter result = limiter;
+        if (result == null) {
+            synchronized (RateLimitFilter.class) {
+                result = limiter;
+                if (result == null) {
+                    result = new Limiter(RateLimitFilter.class.getName());
+                    result.start();
+                    limiter = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isLoggable(LogRecord record) {
+        if (record instanceof SummaryRecord
+                || record.getLevel().intValue() >= shared.exemptLevel) {
+            return true;
+        }
+
+        long[] last = LAST_DECISION.get();
+        long sequence = record.getSequenceNumber();
+        if (last[0] == sequence) {
+            return last[1] != 0L;
+        }
+
+        boolean loggable = shared.acquire(record);
+        last[0] = sequence;
+        last[1] = loggable ? 1L : 0L;
+        return loggable;
+    }
+
+    /**
+     * @return the number of records suppressed since the start, for all the
+     * loggers.
+     */
+    public long getSuppressedCount() {
+        return shared.suppressed.get();
+    }
+
+    /**
+     * Token bucket implemented as a generic cell rate algorithm: the whole
+     * state is the theoretical arrival time of the next record.
+     */
+    private static final class Bucket {
+
+        private final String loggerName;
+        private final String template;
+        private final AtomicLong arrival;
+        private final AtomicLong suppressed = new AtomicLong();
+        private final AtomicInteger suppressedLevel = new AtomicInteger(Integer.MIN_VALUE);
+
+        Bucket(String loggerName, String template, long now) {
+            this.loggerName = loggerName;
+            this.template = template;
+            this.arrival = new AtomicLong(now);
+        }
+
+        boolean tryAcquire(long now, long interval, long tolerance) {
+            for (;;) {
+                long current = arrival.get();
+                long next = (current > now ? current : now) + interval;
+                if (next - now > tolerance) {
+                    return false;
+                }
+                if (arrival.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        void suppressed(Level level) {
+            suppressed.incrementAndGet();
+            int value = level.intValue();
+            int current;
+            while ((current = suppressedLevel.get()) < value) {
+                if (suppressedLevel.compareAndSet(current, value)) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * @return <code>true</code> if the bucket is full again and nothing
+         * is left to report.
+         */
+        boolean isIdle(long now) {
+            return arrival.get() <= now && suppressed.get() == 0;
+        }
+    }
+
+    private static final class Limiter implements Runnable {
+
+        private final ConcurrentMap<String, ConcurrentMap<String, Bucket>> buckets =
+                new ConcurrentHashMap<String, ConcurrentMap<String, Bucket>>();
+        private final AtomicInteger keys = new AtomicInteger();
+        private final AtomicLong suppressed = new AtomicLong();
+
+        private final long interval;
+        private final long tolerance;
+        private final int exemptLevel;
+        private final int summaryInterval;
+        private final int maxKeys;
+
+        Limiter(String className) {
+            int rate = LogProperties.getIntProperty(className + ".rate", 10);
+            int burst = LogProperties.getIntProperty(className + ".burst", 100);
+            this.interval = TimeUnit.SECONDS.toNanos(1) / (rate < 1 ? 1 : rate);
+            this.tolerance = interval * (burst < 1 ? 1 : burst);
+
+            Level level;
+            try {
+                level = Level.parse(LogProperties.getProperty(className + ".exemptLevel", "" + Level.SEVERE));
+            } catch (IllegalArgumentException iae) {
+                level = Level.SEVERE;
+            }
+            this.exemptLevel = level.intValue();
+
+            int summary = LogProperties.getIntProperty(className + ".summaryInterval", 60);
+            this.summaryInterval = summary < 1 ? 1 : summary;
+            this.maxKeys = LogProperties.getIntProperty(className + ".maxKeys", 10000);
+        }
+
+        void start() {
+            ScheduledExecutorService executor =
+                    Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "RateLimitFilter-summary");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.scheduleWithFixedDelay(this, summaryInterval, summaryInterval,
+                    TimeUnit.SECONDS);
+        }
+
+        boolean acquire(LogRecord record) {
+            String loggerName = record.getLoggerName();
+            String template = record.getMessage();
+            if (loggerName == null) {
+                loggerName = "";
+            }
+            if (template == null) {
+                template = "";
+            }
+
+            long now = System.nanoTime();
+            Bucket bucket = getBucket(loggerName, template, now);
+            if (bucket == null || bucket.tryAcquire(now, interval, tolerance)) {
+                return true;
+            }
+            bucket.suppressed(record.getLevel());
+            suppressed.incrementAndGet();
+            return false;
+        }
+
+        private Bucket getBucket(String loggerName, String template, long now) {
+            ConcurrentMap<String, Bucket> templates = buckets.get(loggerName);
+            if (templates == null) {
+                templates = new ConcurrentHashMap<String, Bucket>();
+                ConcurrentMap<String, Bucket> existing = buckets.putIfAbsent(loggerName, templates);
+                if (existing != null) {
+                    templates = existing;
+                }
+            }
+
+            Bucket bucket = templates.get(template);
+            if (bucket == null) {
+                if (keys.incrementAndGet() > maxKeys) {
+                    keys.decrementAndGet();
+                    return null;
+                }
+                bucket = new Bucket(loggerName, template, now);
+                Bucket existing = templates.putIfAbsent(template, bucket);
+                if (existing != null) {
+                    keys.decrementAndGet();
+                    bucket = existing;
+                }
+            }
+            return bucket;
+        }
+
+        /**
+         * Log the summaries and evict the idle buckets.
+         */
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            for (ConcurrentMap<String, Bucket> templates : buckets.values()) {
+                Iterator<Map.Entry<String, Bucket>> it = templates.entrySet().iterator();
+                while (it.hasNext()) {
+                    Bucket bucket = it.next().getValue();
+                    long count = bucket.suppressed.getAndSet(0);
+                    int level = bucket.suppressedLevel.getAndSet(Integer.MIN_VALUE);
+                    if (count > 0) {
+                        summarize(bucket, count, level);
+                    } else if (bucket.isIdle(now)) {
+                        it.remove();
+                        keys.decrementAndGet();
+                    }
+                }
+            }
+        }
+
+        private void summarize(Bucket bucket, long count, int level) {
+            try {
+                Level summaryLevel = level == Integer.MIN_VALUE
+                        ? Level.INFO : Level.parse(String.valueOf(level));
+                SummaryRecord record = new SummaryRecord(summaryLevel,
+                        MessageFormat.format(SUMMARY_MESSAGE, String.valueOf(count),
+                        String.valueOf(summaryInterval), bucket.template));
+                record.setLoggerName(bucket.loggerName);
+                Logger.getLogger(bucket.loggerName).log(record);
+            } catch (RuntimeException ignore) {
+                // A summary must never break the logging
+            }
+        }
+    }
+
+    /**
+     * Summary of the suppressed records, always let through.
+     */
+    private static final class SummaryRecord extends LogRecord {
+
+        private static final long serialVersionUID = 1L;
+
+        SummaryRecord(Level level, String message) {
+            super(level, message);
+            // Avoid an inference pointing at the summary thread
+            setSourceClassName(null);
+            setSourceMethodName(null);
+        }
+    }
+}
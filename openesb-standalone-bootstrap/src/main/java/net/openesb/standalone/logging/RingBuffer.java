@@ -0,0 +1,139 @@
+package net.openesb.standalone.logging;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free, multi-producer / single-consumer ring buffer.
+ *
+ * <p>Each slot carries a sequence number which tells producers and the
+ * consumer whether the slot is free or published, so neither side ever takes
+ * a lock. Only one thread may call {@link #poll()} or {@link #drainTo}.</p>
+ *
+ * @author OpenESB Community
+ */
+final class RingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+
+    /**
+     * Next position to be claimed by a producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Next position to be consumed. Only written by the consumer thread.
+     */
+    private volatile long head = 0;
+
+    RingBuffer(int requestedCapacity) {
+        int cap = 1;
+        while (cap < requestedCapacity) {
+            cap <<= 1;
+        }
+        this.capacity = cap;
+        this.mask = cap - 1;
+        this.elements = new Object[cap];
+        this.sequences = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Try to publish an element.
+     *
+     * @return <code>false</code> if the buffer is full
+     */
+    boolean offer(E element) {
+        long pos = tail.get();
+        for (;;) {
+            int index = (int) pos & mask;
+            long dif = sequences.get(index) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements[index] = element;
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Retrieve the next published element, or <code>null</code> if there
+     * is none. Must only be called from the consumer thread.
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long pos = head;
+        int index = (int) pos & mask;
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        E element = (E) elements[index];
+        elements[index] = null;
+        sequences.lazySet(index, pos + capacity);
+        head = pos + 1;
+        return element;
+    }
+
+    /**
+     * Move up to <code>max</code> published elements into the given
+     * collection. Must only be called from the consumer thread.
+     *
+     * @return the number of elements transferred
+     */
+    int drainTo(Collection<? super E> target, int max) {
+        int count = 0;
+        E element;
+        while (count < max && (element = poll()) != null) {
+            target.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of claimed slots, including the ones still being
+     * published.
+     */
+    int size() {
+        long size = tail.get() - head;
+        if (size < 0) {
+            return 0;
+        }
+        return size > capacity ? capacity : (int) size;
+    }
+
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the total number of elements ever claimed by producers.
+     */
+    long published() {
+        return tail.get();
+    }
+
+    /**
+     * @return the total number of elements ever consumed.
+     */
+    long consumed() {
+        return head;
+    }
+}
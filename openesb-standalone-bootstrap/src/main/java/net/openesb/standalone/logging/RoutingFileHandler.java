@@ -0,0 +1,419 @@
+package net.openesb.standalone.logging;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.ErrorManager;
+import java.util.logging.Filter;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * <code>Handler</code> which writes records to one file per logger name
+ * prefix, typically one file per JBI component or service assembly.
+ *
+ * <p>Routes are compiled into a {@link LoggerNameTrie} when the handler is
+ * configured, so finding the file of a record does not depend on the number
+ * of routes. Records of loggers matching no route are ignored by this
+ * handler. Files are written by a small pool of background threads: each
+ * route is always written by the same thread, which owns its file, so that
+ * neither a lock nor a thread is needed per route. Each thread keeps a
+ * bounded number of files open and closes the least recently used one when
+ * it needs another.</p>
+ *
+ * <p>The following configuration properties are available, prefixed by the
+ * class name:</p>
+ *
+ * <ul>
+ *   <li><code>routes</code> - Comma separated list of
+ *    <code>{logger prefix}={file name}</code>, for example
+ *    <code>com.sun.jbi.httpsoapbc=sun-http-binding, sun-bpel-engine=sun-bpel-engine</code>.
+ *    Several prefixes can share the same file name.</li>
+ *   <li><code>directory</code> - The directory where to create the log
+ *    files. Default value: <code>logs</code></li>
+ *   <li><code>prefix</code> - The leading part of the log file names.
+ *    Default value: empty</li>
+ *   <li><code>suffix</code> - The trailing part of the log file names.
+ *    Default value: <code>.log</code></li>
+ *   <li><code>writerThreads</code> - Number of threads writing the files.
+ *    Default value: <code>2</code></li>
+ *   <li><code>maxOpenFiles</code> - Maximum number of files kept open,
+ *    shared among the writer threads. Default value: <code>64</code></li>
+ *   <li><code>queueSize</code>, <code>overflowPolicy</code>,
+ *    <code>overflowLevel</code>, <code>sampleRate</code> - Queue of each
+ *    writer thread, see the asynchronous mode of {@link FileHandler}.</li>
+ *   <li><code>encoding</code>, <code>level</code>, <code>filter</code>,
+ *    <code>formatter</code> - Same as {@link FileHandler}.</li>
+ * </ul>
+ *
+ * @author OpenESB Community
+ */
+public class RoutingFileHandler extends Handler {
+
+    private static final int MAX_BATCH_SIZE = 512;
+
+    /**
+     * Maximum time to wait for the writers to drain their queues when the
+     * handler is flushed or closed, in milliseconds.
+     */
+    private static final long SHUTDOWN_TIMEOUT = 10000;
+
+    private String directory;
+    private String prefix;
+    private String suffix;
+
+    private LoggerNameTrie<Route> routes;
+    private RouteWriter[] writers = new RouteWriter[0];
+
+    private Thread shutdownHook = null;
+
+    public RoutingFileHandler() {
+        configure();
+        addShutdownHook();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+
+        Route route = routes.lookup(record.getLoggerName());
+        if (route != null) {
+            // A closed writer does not accept the record anymore
+            route.writer.dispatch(record);
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Writers flush their files at the end of each batch
+        for (RouteWriter writer : writers) {
+            writer.awaitDrained(SHUTDOWN_TIMEOUT);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (RouteWriter writer : writers) {
+            writer.shutdown(SHUTDOWN_TIMEOUT);
+            writer.closeAll();
+        }
+        removeShutdownHook();
+    }
+
+    /**
+     * @return the number of records waiting to be written.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (RouteWriter writer : writers) {
+            depth += writer.getQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * @return the number of records discarded because a queue was full.
+     */
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (RouteWriter writer : writers) {
+            dropped += writer.getDroppedCount();
+        }
+        return dropped;
+    }
+
+    private void configure() {
+        String className = this.getClass().getName(); //allow classes to override
+
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+
+        directory = LogProperties.getProperty(className + ".directory", "logs");
+        prefix = LogProperties.getProperty(className + ".prefix", "");
+        suffix = LogProperties.getProperty(className + ".suffix", ".log");
+
+        // Get encoding for the logging files
+        String encoding = LogProperties.getProperty(className + ".encoding", null);
+        if (encoding != null && encoding.length() > 0) {
+            try {
+                setEncoding(encoding);
+            } catch (UnsupportedEncodingException ex) {
+                // Ignore
+            }
+        }
+
+        // Get logging level for the handler
+        setLevel(Level.parse(LogProperties.getProperty(className + ".level", "" + Level.ALL)));
+
+        // Get filter configuration
+        String filterName = LogProperties.getProperty(className + ".filter", null);
+        if (filterName != null) {
+            try {
+                setFilter((Filter) cl.loadClass(filterName).newInstance());
+            } catch (Exception e) {
+                // Ignore
+            }
+        }
+
+        // Set formatter
+        String formatterName = LogProperties.getProperty(className + ".formatter", null);
+        if (formatterName != null) {
+            try {
+                setFormatter((Formatter) cl.loadClass(formatterName).newInstance());
+            } catch (Exception e) {
+                // Ignore and fallback to defaults
+                setFormatter(new SimpleFormatter());
+            }
+        } else {
+            setFormatter(new SimpleFormatter());
+        }
+
+        // Set error manager
+        setErrorManager(new ErrorManager());
+
+        // Writer threads
+        int writerThreads = Math.max(1, LogProperties.getIntProperty(className + ".writerThreads", 2));
+        int maxOpenFiles = Math.max(1, LogProperties.getIntProperty(className + ".maxOpenFiles", 64));
+        int queueSize = LogProperties.getIntProperty(className + ".queueSize", 8192);
+        AsyncLogDispatcher.OverflowPolicy overflowPolicy =
+                AsyncLogDispatcher.OverflowPolicy.parse(
+                        LogProperties.getProperty(className + ".overflowPolicy", null),
+                        AsyncLogDispatcher.OverflowPolicy.BLOCK);
+        Level overflowLevel = Level.WARNING;
+        try {
+            overflowLevel = Level.parse(LogProperties.getProperty(className + ".overflowLevel", "" + Level.WARNING));
+        } catch (IllegalArgumentException ignore) {
+            //no op
+        }
+        int sampleRate = LogProperties.getIntProperty(className + ".sampleRate", 10);
+
+        // Routes, spread over the writers
+        Map<String, Route> routesByFile = new LinkedHashMap<String, Route>();
+        Map<String, Route> routesByPrefix = new LinkedHashMap<String, Route>();
+        for (String entry : LogProperties.getProperty(className + ".routes", "").split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq < 0) {
+                continue;
+            }
+            String loggerPrefix = entry.substring(0, eq).trim();
+            String fileName = fileName(entry.substring(eq + 1).trim());
+            if (fileName.length() == 0) {
+                continue;
+            }
+            Route route = routesByFile.get(fileName);
+            if (route == null) {
+                route = new Route(new File(directory, prefix + fileName + suffix));
+                routesByFile.put(fileName, route);
+            }
+            routesByPrefix.put(loggerPrefix, route);
+        }
+
+        writerThreads = Math.min(writerThreads, Math.max(1, routesByFile.size()));
+        writers = new RouteWriter[writerThreads];
+        for (int i = 0; i < writerThreads; i++) {
+            writers[i] = new RouteWriter("RoutingFileHandler-writer-" + i,
+                    queueSize, overflowPolicy, overflowLevel, sampleRate,
+                    Math.max(1, maxOpenFiles / writerThreads));
+        }
+        int i = 0;
+        for (Route route : routesByFile.values()) {
+            route.writer = writers[i++ % writerThreads];
+        }
+        routes = LoggerNameTrie.compile(routesByPrefix);
+
+        for (RouteWriter writer : writers) {
+            writer.start();
+        }
+    }
+
+    /**
+     * Keep the characters which are safe in a file name.
+     */
+    private static String fileName(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_') {
+                sb.append(c);
+            } else {
+                sb.append('_');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Our LogManager does not reset handlers on shutdown, so write the
+     * pending records when the JVM stops.
+     */
+    private void addShutdownHook() {
+        shutdownHook = new Thread("RoutingFileHandler-shutdown") {
+            @Override
+            public void run() {
+                RoutingFileHandler.this.close();
+            }
+        };
+        try {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } catch (IllegalStateException ise) {
+            // JVM is already shutting down
+            shutdownHook = null;
+        }
+    }
+
+    private void removeShutdownHook() {
+        Thread hook = shutdownHook;
+        shutdownHook = null;
+        if (hook != null && hook != Thread.currentThread()) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException ise) {
+                // JVM is already shutting down
+            }
+        }
+    }
+
+    /**
+     * A log file, only accessed by its writer thread.
+     */
+    private static final class Route {
+
+        private final File file;
+        private RouteWriter writer;
+        private Writer out;
+
+        Route(File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Writer thread of a subset of the routes, keeping at most
+     * <code>maxOpenFiles</code> of them open.
+     */
+    private final class RouteWriter extends AsyncLogDispatcher {
+
+        private final int maxOpenFiles;
+
+        /**
+         * Routes with an open file, least recently used first.
+         */
+        private final LinkedHashMap<Route, Route> open =
+                new LinkedHashMap<Route, Route>(16, 0.75f, true);
+
+        private final Set<Route> dirty = new LinkedHashSet<Route>();
+
+        RouteWriter(String threadName, int queueSize, OverflowPolicy overflowPolicy,
+                Level overflowLevel, int sampleRate, int maxOpenFiles) {
+            super(threadName, queueSize, MAX_BATCH_SIZE, overflowPolicy,
+                    overflowLevel, sampleRate);
+            this.maxOpenFiles = maxOpenFiles;
+        }
+
+        @Override
+        protected synchronized void process(List<LogRecord> batch) {
+            Formatter formatter = getFormatter();
+            try {
+                for (LogRecord record : batch) {
+                    Route route = routes.lookup(record.getLoggerName());
+                    if (route == null) {
+                        continue;
+                    }
+                    try {
+                        Writer out = open(route);
+                        if (formatter instanceof LogFormatter) {
+                            ((LogFormatter) formatter).format(record, out);
+                        } else {
+                            out.write(formatter.format(record));
+                        }
+                        dirty.add(route);
+                    } catch (IOException e) {
+                        reportError(null, e, ErrorManager.WRITE_FAILURE);
+                    } catch (Exception e) {
+                        reportError(null, e, ErrorManager.FORMAT_FAILURE);
+                    }
+                }
+            } finally {
+                for (Route route : dirty) {
+                    try {
+                        route.out.flush();
+                    } catch (IOException e) {
+                        reportError(null, e, ErrorManager.FLUSH_FAILURE);
+                    }
+                }
+                dirty.clear();
+            }
+        }
+
+        @Override
+        protected void failed(Exception ex) {
+            reportError(null, ex, ErrorManager.WRITE_FAILURE);
+        }
+
+        private Writer open(Route route) throws IOException {
+            if (route.out != null) {
+                open.get(route);
+                return route.out;
+            }
+
+            if (open.size() >= maxOpenFiles) {
+                Iterator<Route> lru = open.keySet().iterator();
+                Route eldest = lru.next();
+                lru.remove();
+                close(eldest);
+            }
+
+            File parent = route.file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create [" + parent + "]");
+            }
+            FileOutputStream fos = new FileOutputStream(route.file, true);
+            String encoding = getEncoding();
+            route.out = new BufferedWriter(encoding != null
+                    ? new OutputStreamWriter(fos, encoding)
+                    : new OutputStreamWriter(fos));
+            open.put(route, route);
+            return route.out;
+        }
+
+        private void close(Route route) {
+            Writer out = route.out;
+            route.out = null;
+            dirty.remove(route);
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    reportError(null, e, ErrorManager.CLOSE_FAILURE);
+                }
+            }
+        }
+
+        /**
+         * Close every open file, once the writer thread has stopped.
+         */
+        synchronized void closeAll() {
+            List<Route> opened = new ArrayList<Route>(open.keySet());
+            open.clear();
+            for (Route route : opened) {
+                close(route);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package net.openesb.standalone.logging;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the stack traces recently rendered by a formatter, so that a
+ * throwable logged again and again is rendered in full only once.
+ *
+ * <p>A throwable is identified by a 64 bits fingerprint of the class of
+ * every throwable in its cause chain and of their top <code>frames</code>
+ * frames. The fingerprints are kept in a bounded LRU map: a fingerprint
+ * evicted from the map is rendered in full again the next time, so that
+ * the reference always points at a reasonably recent trace.</p>
+ *
+ * @author OpenESB Community
+ */
+final class StackTraceDeduplicator {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int frames;
+    private final Map<Long, Occurrences> recent;
+
+    StackTraceDeduplicator(final int cacheSize, int frames) {
+        this.frames = frames < 1 ? 1 : frames;
+        this.recent = new LinkedHashMap<Long, Occurrences>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Occurrences> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Account for one more occurrence of the throwable.
+     *
+     * @return the number of times the same stack trace has been seen before,
+     * <code>0</code> if it has to be rendered in full.
+     */
+    long occurrence(long fingerprint) {
+        synchronized (recent) {
+            Occurrences occurrences = recent.get(fingerprint);
+            if (occurrences == null) {
+                recent.put(fingerprint, new Occurrences());
+                return 0;
+            }
+            return ++occurrences.repeated;
+        }
+    }
+
+    /**
+     * @return the fingerprint of the class and top frames of the throwable
+     * and of its causes.
+     */
+    long fingerprint(Throwable throwable) {
+        long hash = FNV_OFFSET;
+        int depth = 0;
+        for (Throwable t = throwable; t != null && depth < 16; t = t.getCause(), depth++) {
+            hash = mix(hash, t.getClass().getName().hashCode());
+            StackTraceElement[] trace = t.getStackTrace();
+            int top = Math.min(frames, trace.length);
+            for (int i = 0; i < top; i++) {
+                StackTraceElement element = trace[i];
+                hash = mix(hash, element.getClassName().hashCode());
+                hash = mix(hash, element.getMethodName().hashCode());
+                hash = mix(hash, element.getLineNumber());
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Append the short reference of a fingerprint, like <code>#a1b2c3d4</code>.
+     */
+    static void appendReference(StringBuilder sb, long fingerprint) {
+        sb.append('#');
+        String hex = Integer.toHexString((int) (fingerprint ^ (fingerprint >>> 32)));
+        for (int i = hex.length(); i < 8; i++) {
+            sb.append('0');
+        }
+        sb.append(hex);
+    }
+
+    private static long mix(long hash, int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static final class Occurrences {
+
+        private long repeated;
+    }
+}
@@ -0,0 +1,42 @@
+package net.openesb.standalone.logging;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author OpenESB Community
+ */
+public class JsonFormatterTest {
+
+    private static final Pattern TIMESTAMP = Pattern.compile(
+            "\\{\"timestamp\":\"(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d{3})(Z|[+-]\\d{2}:\\d{2})\"");
+
+    @Test
+    public void rfc3339Timestamp() {
+        LogRecord record = new LogRecord(Level.INFO, "message");
+        record.setMillis(1792148400123L);
+        String json = new JsonFormatter().format(record);
+
+        Matcher matcher = TIMESTAMP.matcher(json);
+        assertTrue(json, matcher.lookingAt());
+        assertTrue(matcher.group(1).endsWith(".123"));
+        if (matcher.group(2).equals("Z")) {
+            assertEquals("2026-10-16T11:00:00.123", matcher.group(1));
+        }
+    }
+
+    @Test
+    public void plainTimestampKeepsItsFormat() {
+        LogRecord record = new LogRecord(Level.INFO, "message");
+        record.setMillis(1792148400123L);
+        String line = new LogFormatter().format(record);
+        assertTrue(line, line.matches(
+                "(?s)\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.123[+-]\\d{4} INFO .*"));
+    }
+}
@@ -0,0 +1,104 @@
+package net.openesb.standalone.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.ErrorManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author OpenESB Community
+ */
+public class LogArchiverTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("logs", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void segmentNames() {
+        LogArchiver archiver = archiver(2);
+        assertTrue(archiver.isSegment("server2026-10-16.log"));
+        assertTrue(archiver.isSegment("server2026-10-16.log.gz"));
+        assertTrue(archiver.isSegment("server2026-10-16.3.log"));
+        assertTrue(archiver.isSegment("server2026-10-16.12.log.gz"));
+        assertTrue(archiver.isSegment("server.1.log"));
+        assertTrue(archiver.isSegment("server.1.log.gz"));
+
+        assertFalse(archiver.isSegment("server.log"));
+        assertFalse(archiver.isSegment("server-gc.log"));
+        assertFalse(archiver.isSegment("server-gc.log.gz"));
+        assertFalse(archiver.isSegment("server2026-10-16.log.gz.tmp"));
+        assertFalse(archiver.isSegment("serverX.1.log"));
+        assertFalse(archiver.isSegment("server2026-10-16.x.log"));
+        assertFalse(archiver.isSegment("access2026-10-16.log"));
+    }
+
+    @Test
+    public void purgeDailyFiles() throws IOException {
+        File oldest = create("server2026-10-11.log.gz", 1);
+        File older = create("server2026-10-12.log.gz", 2);
+        File old = create("server2026-10-13.log", 3);
+        File recent = create("server2026-10-14.log.gz", 4);
+        File latest = create("server2026-10-15.log", 5);
+        File active = create("server2026-10-16.log", 6);
+        File unrelated = create("server-gc.log", 0);
+
+        archiver(2).purge(active);
+
+        assertFalse(oldest.exists());
+        assertFalse(older.exists());
+        assertFalse(old.exists());
+        assertTrue(recent.exists());
+        assertTrue(latest.exists());
+        assertTrue(active.exists());
+        assertTrue(unrelated.exists());
+    }
+
+    @Test
+    public void purgeRolledFiles() throws IOException {
+        File oldest = create("server2026-10-16.1.log.gz", 1);
+        File old = create("server2026-10-16.2.log.gz", 2);
+        File latest = create("server2026-10-16.3.log", 3);
+        File active = create("server2026-10-16.log", 4);
+
+        archiver(1).purge(active);
+
+        assertFalse(oldest.exists());
+        assertFalse(old.exists());
+        assertTrue(latest.exists());
+        assertTrue(active.exists());
+    }
+
+    private LogArchiver archiver(int maxHistory) {
+        return new LogArchiver(directory, "server", ".log", true, maxHistory,
+                new ErrorManager());
+    }
+
+    private File create(String name, int age) throws IOException {
+        File file = new File(directory, name);
+        file.createNewFile();
+        file.setLastModified(1000000000000L + age * 60000L);
+        return file;
+    }
+}
@@ -67,6 +67,8 @@ public interface LocalStringKeys {
             "SECURITY_CREATE_PROPERTIES_REALM";
     static final String SECURITY_CREATE_PROPERTIES_REALM_INVALID_PATH =
             "SECURITY_CREATE_PROPERTIES_REALM_INVALID_PATH";
+    static final String SECURITY_CREDENTIAL_CACHE =
+            "SECURITY_CREDENTIAL_CACHE";
     /**
      * Naming Messages.
      */
@@ -106,6 +108,43 @@ public interface LocalStringKeys {
             "HTTP_SERVER_ENABLED";
     static final String HTTP_REST_REGISTER_APPLICATION =
             "HTTP_REST_REGISTER_APPLICATION";
+    static final String HTTP_WORKERS_CONFIGURATION =
+            "HTTP_WORKERS_CONFIGURATION";
+    static final String HTTP_WORKERS_RESIZED =
+            "HTTP_WORKERS_RESIZED";
+    static final String HTTP_WORKERS_MBEAN_FAILED =
+            "HTTP_WORKERS_MBEAN_FAILED";
+    static final String HTTP_REST_VIRTUAL_THREADS =
+            "HTTP_REST_VIRTUAL_THREADS";
+    static final String HTTP_REST_VIRTUAL_THREADS_UNAVAILABLE =
+            "HTTP_REST_VIRTUAL_THREADS_UNAVAILABLE";
+    static final String HTTP_SITE_CACHE_WATCH_FAILED =
+            "HTTP_SITE_CACHE_WATCH_FAILED";
+    static final String HTTP_SITE_CACHE_MBEAN_FAILED =
+            "HTTP_SITE_CACHE_MBEAN_FAILED";
+    static final String HTTP_COMPRESSION_CONFIGURATION =
+            "HTTP_COMPRESSION_CONFIGURATION";
+    static final String HTTP_METRICS_MBEAN_FAILED =
+            "HTTP_METRICS_MBEAN_FAILED";
+    static final String HTTP_ACCESS_LOG_CONFIGURATION =
+            "HTTP_ACCESS_LOG_CONFIGURATION";
+    static final String HTTP_ACCESS_LOG_SAMPLING_INVALID =
+            "HTTP_ACCESS_LOG_SAMPLING_INVALID";
+    static final String HTTP_ADMISSION_CONFIGURATION =
+            "HTTP_ADMISSION_CONFIGURATION";
+    static final String HTTP_ADMISSION_MBEAN_FAILED =
+            "HTTP_ADMISSION_MBEAN_FAILED";
+    static final String JOB_FAILED =
+            "JOB_FAILED";
+    /**
+     * Loggers Messages.
+     */
+    static final String LOGGERS_LEVEL_CHANGED =
+            "LOGGERS_LEVEL_CHANGED";
+    static final String LOGGERS_LEVEL_RESET =
+            "LOGGERS_LEVEL_RESET";
+    static final String LOGGERS_MBEAN_REGISTRATION_FAILED =
+            "LOGGERS_MBEAN_REGISTRATION_FAILED";
 
     /**
      * Datasource Messages.
@@ -4,6 +4,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
 import net.openesb.security.SecurityProvider;
 import net.openesb.standalone.jmx.auth.login.JMXAuthenticator;
+import net.openesb.standalone.loggers.LoggersService;
 import net.openesb.standalone.security.SecurityProviderImpl;
 
 /**
@@ -17,5 +18,6 @@ public class CoreModule extends AbstractModule {
     protected void configure() {
         bind(SecurityProvider.class).to(SecurityProviderImpl.class).in(Scopes.SINGLETON);
         bind(javax.management.remote.JMXAuthenticator.class).to(JMXAuthenticator.class).in(Scopes.SINGLETON);
+        bind(LoggersService.class).in(Scopes.SINGLETON);
     }
 }
@@ -0,0 +1,198 @@
+package net.openesb.standalone.http.accesslog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import net.openesb.standalone.LocalStringKeys;
+import net.openesb.standalone.http.HttpServer;
+import net.openesb.standalone.http.grizzly.WorkerPool;
+import net.openesb.standalone.security.SessionTokens;
+import net.openesb.standalone.utils.I18NBundle;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.attributes.Attribute;
+import org.glassfish.grizzly.http.server.HttpServerFilter;
+import org.glassfish.grizzly.http.server.HttpServerProbe;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+
+/**
+ * Access log of the HTTP server, written to the
+ * <code>net.openesb.standalone.http.access</code> logger.
+ *
+ * <p>The worker completing a request only captures its values and hands a
+ * record over to the logger: rendering, batching, writing and rotation are
+ * left to its handlers, the asynchronous <code>AccessLogHandler</code> of
+ * the logging configuration.</p>
+ *
+ * <p>Requests whose path starts with a sampled prefix are logged once out of
+ * the rate of the longest matching prefix, <code>0</code> meaning never.
+ * Requests ending with a 4xx or 5xx status are always logged.</p>
+ *
+ * @author OpenESB Community
+ */
+public class AccessLog {
+
+    public static final String LOGGER_NAME = "net.openesb.standalone.http.access";
+
+    private static final Logger LOG
+            = Logger.getLogger(HttpServer.class.getPackage().getName());
+    private static final Logger ACCESS_LOG = Logger.getLogger(LOGGER_NAME);
+
+    private final AccessLogPattern pattern;
+    private final Sampling[] samplings;
+
+    private final Attribute<RequestTiming> requestTiming =
+            Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(
+                    AccessLog.class.getName() + ".timing");
+
+    /**
+     * @param pattern the pattern of the lines, see {@link AccessLogPattern}
+     * @param sampling comma separated <code>prefix=rate</code> entries, may
+     * be <code>null</code>
+     * @param sessionTokens the tokens issued by the REST API, may be
+     * <code>null</code>
+     */
+    public AccessLog(String pattern, String sampling, SessionTokens sessionTokens) {
+        this.pattern = new AccessLogPattern(pattern, sessionTokens);
+        this.samplings = parseSampling(sampling);
+    }
+
+    /**
+     * Install the probe on the server.
+     */
+    public void register(org.glassfish.grizzly.http.server.HttpServer server) {
+        server.getServerConfiguration().getMonitoringConfig().getWebServerConfig()
+                .addProbes(new AccessLogProbe());
+    }
+
+    public AccessLogPattern getPattern() {
+        return pattern;
+    }
+
+    private static Sampling[] parseSampling(String sampling) {
+        List<Sampling> parsed = new ArrayList<Sampling>();
+        if (sampling != null) {
+            for (String entry : sampling.split(",")) {
+                entry = entry.trim();
+                if (entry.length() == 0) {
+                    continue;
+                }
+                int equals = entry.lastIndexOf('=');
+                try {
+                    if (equals <= 0) {
+                        throw new NumberFormatException(entry);
+                    }
+                    int rate = Integer.parseInt(entry.substring(equals + 1).trim());
+                    if (rate < 0) {
+                        throw new NumberFormatException(entry);
+                    }
+                    parsed.add(new Sampling(entry.substring(0, equals).trim(), rate));
+                } catch (NumberFormatException nfe) {
+                    I18NBundle.getBundle().log(LOG, Level.WARNING,
+                            LocalStringKeys.HTTP_ACCESS_LOG_SAMPLING_INVALID, entry);
+                }
+            }
+        }
+        // Longest prefixes first
+        Collections.sort(parsed, new Comparator<Sampling>() {
+            @Override
+            public int compare(Sampling s1, Sampling s2) {
+                return s2.prefix.length() - s1.prefix.length();
+            }
+        });
+        return parsed.toArray(new Sampling[parsed.size()]);
+    }
+
+    private boolean sampled(String uri, int status) {
+        if (status >= 400) {
+            return true;
+        }
+        for (Sampling sampling : samplings) {
+            if (uri.startsWith(sampling.prefix)) {
+                return sampling.sample();
+            }
+        }
+        return true;
+    }
+
+    private static final class Sampling {
+
+        private final String prefix;
+        private final int rate;
+        private final AtomicLong counter = new AtomicLong();
+
+        Sampling(String prefix, int rate) {
+            this.prefix = prefix;
+            this.rate = rate;
+        }
+
+        boolean sample() {
+            return rate != 0 && counter.getAndIncrement() % rate == 0;
+        }
+    }
+
+    /**
+     * Timing of the request in progress on a connection.
+     */
+    private static final class RequestTiming {
+
+        private long startMillis;
+        private long startNanos;
+        private long queueWait;
+    }
+
+    /**
+     * The probe interfaces of Grizzly take raw <code>Connection</code>s.
+     */
+    private final class AccessLogProbe extends HttpServerProbe.Adapter {
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void onRequestReceiveEvent(HttpServerFilter filter, Connection connection,
+                Request request) {
+            RequestTiming timing = requestTiming.get(connection);
+            if (timing == null) {
+                timing = new RequestTiming();
+                requestTiming.set(connection, timing);
+            }
+            timing.startMillis = System.currentTimeMillis();
+            timing.startNanos = System.nanoTime();
+            // Received on the worker thread which took the read task
+            timing.queueWait = WorkerPool.currentQueueWait();
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void onRequestCompleteEvent(HttpServerFilter filter, Connection connection,
+                Response response) {
+            RequestTiming timing = requestTiming.get(connection);
+            if (timing == null || !ACCESS_LOG.isLoggable(Level.INFO)) {
+                return;
+            }
+            Request request = response.getRequest();
+            int status = response.getStatus();
+            if (!sampled(request.getRequestURI(), status)) {
+                return;
+            }
+
+            AccessLogPattern.Entry entry = pattern.capture(request, response,
+                    timing.startMillis, System.nanoTime() - timing.startNanos,
+                    timing.queueWait);
+
+            LogRecord record = new LogRecord(Level.INFO, "{0}");
+            record.setLoggerName(LOGGER_NAME);
+            record.setMillis(timing.startMillis);
+            record.setParameters(new Object[]{entry});
+            // Saves the caller inference, walking the stack of the worker
+            record.setSourceClassName(AccessLog.class.getName());
+            record.setSourceMethodName("log");
+            ACCESS_LOG.log(record);
+        }
+    }
+}
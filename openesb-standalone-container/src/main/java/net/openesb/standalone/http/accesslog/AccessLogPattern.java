@@ -0,0 +1,326 @@
+package net.openesb.standalone.http.accesslog;
+
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import javax.xml.bind.DatatypeConverter;
+import net.openesb.standalone.security.SessionTokens;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+
+/**
+ * Compiled pattern of the access log lines, in the Apache
+ * <code>LogFormat</code> syntax:
+ *
+ * <ul>
+ *   <li><code>%a</code>, <code>%h</code> - remote IP address</li>
+ *   <li><code>%u</code> - remote user, from Basic credentials or a verified
+ *    bearer token</li>
+ *   <li><code>%t</code> - reception time of the request</li>
+ *   <li><code>%r</code> - request line</li>
+ *   <li><code>%m</code>, <code>%U</code>, <code>%q</code>, <code>%H</code> -
+ *    method, path, query string and protocol</li>
+ *   <li><code>%s</code> - response status</li>
+ *   <li><code>%b</code>, <code>%B</code> - response content length,
+ *    <code>-</code> or <code>0</code> when unknown</li>
+ *   <li><code>%D</code>, <code>%T</code> - latency, from the reception of
+ *    the request to the completion of the response, in microseconds and in
+ *    seconds</li>
+ *   <li><code>%W</code> - time the request waited for a worker thread, in
+ *    microseconds</li>
+ *   <li><code>%{Name}i</code>, <code>%{Name}o</code> - request and response
+ *    headers</li>
+ *   <li><code>%%</code> - a percent sign</li>
+ * </ul>
+ *
+ * <p><code>common</code> and <code>combined</code> stand for the patterns of
+ * the same name. Values are captured by the worker serving the request, and
+ * only rendered by the thread writing the log.</p>
+ *
+ * @author OpenESB Community
+ */
+public final class AccessLogPattern {
+
+    public static final String COMMON = "%h - %u %t \"%r\" %s %b";
+    public static final String COMBINED = COMMON + " \"%{Referer}i\" \"%{User-Agent}i\"";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char LITERAL = 0;
+    private static final String BASIC = "Basic ";
+    private static final String BEARER = "Bearer ";
+
+    private final String pattern;
+    private final char[] codes;
+    private final String[] arguments;
+    private final boolean user;
+    private final SessionTokens sessionTokens;
+
+    private final ThreadLocal<TimeFormat> timeFormats = new ThreadLocal<TimeFormat>() {
+        @Override
+        protected TimeFormat initialValue() {
+            return new TimeFormat();
+        }
+    };
+
+    public AccessLogPattern(String pattern) {
+        this(pattern, null);
+    }
+
+    /**
+     * @param sessionTokens the tokens issued by the REST API, to log the user
+     * of bearer tokens, may be <code>null</code>
+     */
+    public AccessLogPattern(String pattern, SessionTokens sessionTokens) {
+        this.sessionTokens = sessionTokens;
+        if ("common".equals(pattern)) {
+            pattern = COMMON;
+        } else if ("combined".equals(pattern)) {
+            pattern = COMBINED;
+        }
+        this.pattern = pattern;
+
+        List<Character> elementCodes = new ArrayList<Character>();
+        List<String> elementArguments = new ArrayList<String>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i++);
+            if (c != '%' || i == pattern.length()) {
+                literal.append(c);
+                continue;
+            }
+            char code = pattern.charAt(i++);
+            String argument = null;
+            if (code == '{') {
+                int end = pattern.indexOf('}', i);
+                if (end < 0 || end + 1 >= pattern.length()
+                        || "io".indexOf(pattern.charAt(end + 1)) < 0) {
+                    literal.append("%{");
+                    continue;
+                }
+                argument = pattern.substring(i, end);
+                code = pattern.charAt(end + 1);
+                i = end + 2;
+            } else if ("ahutrmUqHsbBDTW".indexOf(code) < 0) {
+                // %% and unknown codes are written as is
+                literal.append(code == '%' ? "%" : "%" + code);
+                continue;
+            }
+            if (literal.length() > 0) {
+                elementCodes.add(LITERAL);
+                elementArguments.add(literal.toString());
+                literal.setLength(0);
+            }
+            elementCodes.add(code);
+            elementArguments.add(argument);
+        }
+        if (literal.length() > 0) {
+            elementCodes.add(LITERAL);
+            elementArguments.add(literal.toString());
+        }
+
+        codes = new char[elementCodes.size()];
+        for (int j = 0; j < codes.length; j++) {
+            codes[j] = elementCodes.get(j);
+        }
+        arguments = elementArguments.toArray(new String[elementArguments.size()]);
+        user = elementCodes.contains('u');
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Capture the values of a completed request. Must be called before the
+     * request and the response are recycled.
+     */
+    Entry capture(Request request, Response response, long startMillis,
+            long latencyNanos, long queueWaitNanos) {
+        Entry entry = new Entry(this);
+        entry.millis = startMillis;
+        entry.latencyNanos = latencyNanos;
+        entry.queueWaitNanos = queueWaitNanos;
+        entry.remoteAddr = request.getRemoteAddr();
+        entry.method = request.getMethod().getMethodString();
+        entry.uri = request.getRequestURI();
+        entry.query = request.getQueryString();
+        entry.protocol = request.getProtocol().getProtocolString();
+        entry.status = response.getStatus();
+        entry.contentLength = response.getContentLengthLong();
+        if (user) {
+            entry.user = request.getRemoteUser();
+            if (entry.user == null) {
+                entry.authorization = request.getHeader("Authorization");
+            }
+        }
+
+        String[] headers = null;
+        for (int i = 0; i < codes.length; i++) {
+            if (codes[i] == 'i' || codes[i] == 'o') {
+                if (headers == null) {
+                    headers = new String[codes.length];
+                }
+                headers[i] = codes[i] == 'i'
+                        ? request.getHeader(arguments[i])
+                        : response.getHeader(arguments[i]);
+            }
+        }
+        entry.headers = headers;
+        return entry;
+    }
+
+    void format(Entry entry, StringBuilder sb) {
+        for (int i = 0; i < codes.length; i++) {
+            switch (codes[i]) {
+                case LITERAL:
+                    sb.append(arguments[i]);
+                    break;
+                case 'a':
+                case 'h':
+                    value(sb, entry.remoteAddr);
+                    break;
+                case 'u':
+                    value(sb, entry.user != null ? entry.user : user(entry.authorization));
+                    break;
+                case 't':
+                    sb.append('[').append(timeFormats.get().format(entry.millis)).append(']');
+                    break;
+                case 'r':
+                    sb.append(entry.method).append(' ').append(entry.uri);
+                    if (entry.query != null) {
+                        sb.append('?').append(entry.query);
+                    }
+                    sb.append(' ').append(entry.protocol);
+                    break;
+                case 'm':
+                    sb.append(entry.method);
+                    break;
+                case 'U':
+                    sb.append(entry.uri);
+                    break;
+                case 'q':
+                    if (entry.query != null) {
+                        sb.append('?').append(entry.query);
+                    }
+                    break;
+                case 'H':
+                    sb.append(entry.protocol);
+                    break;
+                case 's':
+                    sb.append(entry.status);
+                    break;
+                case 'b':
+                    if (entry.contentLength > 0) {
+                        sb.append(entry.contentLength);
+                    } else {
+                        sb.append('-');
+                    }
+                    break;
+                case 'B':
+                    sb.append(Math.max(0, entry.contentLength));
+                    break;
+                case 'D':
+                    sb.append(entry.latencyNanos / 1000);
+                    break;
+                case 'T':
+                    sb.append(String.format(Locale.ROOT, "%.3f", entry.latencyNanos / 1e9));
+                    break;
+                case 'W':
+                    sb.append(entry.queueWaitNanos / 1000);
+                    break;
+                case 'i':
+                case 'o':
+                    value(sb, entry.headers[i]);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void value(StringBuilder sb, String value) {
+        if (value == null || value.length() == 0) {
+            sb.append('-');
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private String user(String authorization) {
+        if (authorization == null) {
+            return null;
+        }
+        if (authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return sessionTokens != null
+                    ? sessionTokens.verify(authorization.substring(BEARER.length()).trim())
+                    : null;
+        }
+        if (!authorization.startsWith(BASIC)) {
+            return null;
+        }
+        try {
+            String usernamePassword = new String(DatatypeConverter.parseBase64Binary(
+                    authorization.substring(BASIC.length()).trim()), UTF8);
+            int colon = usernamePassword.indexOf(':');
+            return colon < 0 ? null : usernamePassword.substring(0, colon);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * The captured values of a request, rendered by {@link #toString()}.
+     */
+    static final class Entry {
+
+        private final AccessLogPattern pattern;
+        private long millis;
+        private long latencyNanos;
+        private long queueWaitNanos;
+        private String remoteAddr;
+        private String user;
+        private String authorization;
+        private String method;
+        private String uri;
+        private String query;
+        private String protocol;
+        private int status;
+        private long contentLength;
+        private String[] headers;
+
+        private Entry(AccessLogPattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(256);
+            pattern.format(this, sb);
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Apache time format, formatted once per second.
+     */
+    private static final class TimeFormat {
+
+        private final SimpleDateFormat format =
+                new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.US);
+        private long second = -1;
+        private String formatted;
+
+        String format(long millis) {
+            long current = millis / 1000;
+            if (current != second) {
+                formatted = format.format(new Date(millis));
+                second = current;
+            }
+            return formatted;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package net.openesb.standalone.http.admission;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.glassfish.grizzly.http.server.AfterServiceListener;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+
+/**
+ * Admission control of the REST APIs, so that a misbehaving client can not
+ * take all the HTTP workers.
+ *
+ * <p>Requests are classified as reads (<code>GET</code>,
+ * <code>HEAD</code>, <code>OPTIONS</code>), heavy operations (other methods
+ * on the heavy paths: deployment, installation) and writes. Each class has
+ * its own limit of requests in progress, beyond which requests are answered
+ * with 503 at once. Each client address, and each authenticated user, has a
+ * token bucket: a write takes one token, a heavy operation
+ * <code>heavyCost</code> tokens and a read <code>readCost</code> tokens,
+ * and requests finding the bucket empty are answered with 429. Both come
+ * with a <code>Retry-After</code> header. Requests are admitted by their
+ * concurrency limit first, so that those answered with 503 take no
+ * token.</p>
+ *
+ * <p>A limit, or a rate, of <code>0</code> disables it.</p>
+ *
+ * @author OpenESB Community
+ */
+public final class AdmissionControl implements AdmissionControlMBean {
+
+    /**
+     * Classes of requests, limited separately.
+     */
+    public enum Operation {
+        READ, WRITE, HEAVY
+    }
+
+    private static final int MAX_TRACKED_CLIENTS = 10000;
+
+    private final Limiter[] limiters;
+    private final int readCost;
+    private final int heavyCost;
+    private final String[] heavyPaths;
+    private final TokenBuckets clientBuckets;
+    private final TokenBuckets userBuckets;
+
+    private final AtomicLong concurrencyRejected = new AtomicLong();
+    private final AtomicLong clientRateRejected = new AtomicLong();
+    private final AtomicLong userRateRejected = new AtomicLong();
+
+    /**
+     * @param readConcurrency maximum number of reads in progress
+     * @param writeConcurrency maximum number of writes in progress
+     * @param heavyConcurrency maximum number of heavy operations in progress
+     * @param readCost tokens taken by a read, <code>0</code> for reads not
+     * to be rate limited
+     * @param heavyCost tokens taken by a heavy operation
+     * @param heavyPaths path prefixes of the heavy operations
+     * @param clientRate requests per second of a client address
+     * @param clientBurst requests a client address can send at once
+     * @param userRate requests per second of a user
+     * @param userBurst requests a user can send at once
+     */
+    public AdmissionControl(int readConcurrency, int writeConcurrency, int heavyConcurrency,
+            int readCost, int heavyCost, String[] heavyPaths, int clientRate, int clientBurst,
+            int userRate, int userBurst) {
+        this.limiters = new Limiter[]{
+            new Limiter(readConcurrency),
+            new Limiter(writeConcurrency),
+            new Limiter(heavyConcurrency)
+        };
+        this.readCost = Math.max(0, readCost);
+        this.heavyCost = Math.max(1, heavyCost);
+        this.heavyPaths = heavyPaths != null ? heavyPaths.clone() : new String[0];
+        this.clientBuckets = clientRate > 0
+                ? new TokenBuckets(clientRate, clientBurst, MAX_TRACKED_CLIENTS) : null;
+        this.userBuckets = userRate > 0
+                ? new TokenBuckets(userRate, userBurst, MAX_TRACKED_CLIENTS) : null;
+    }
+
+    /**
+     * @return an admission control admitting every request.
+     */
+    public static AdmissionControl unlimited() {
+        return new AdmissionControl(0, 0, 0, 0, 1, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * @return the handler applying the concurrency limits and the client
+     * address rate before the given one.
+     */
+    public HttpHandler wrap(HttpHandler handler) {
+        return new AdmissionHttpHandler(handler);
+    }
+
+    public Operation classify(String method, String path) {
+        if ("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method)) {
+            return Operation.READ;
+        }
+        for (String heavyPath : heavyPaths) {
+            if (heavyPath.length() > 0 && path.startsWith(heavyPath)) {
+                return Operation.HEAVY;
+            }
+        }
+        return Operation.WRITE;
+    }
+
+    /**
+     * Apply the rate of an authenticated user.
+     *
+     * @return <code>0</code> if the request is admitted, otherwise the
+     * number of seconds after which the user may retry.
+     */
+    public long admitUser(String user, Operation operation) {
+        if (userBuckets == null || user == null || cost(operation) == 0) {
+            return 0;
+        }
+        long wait = userBuckets.acquire(user, cost(operation), System.nanoTime());
+        if (wait == 0) {
+            return 0;
+        }
+        userRateRejected.incrementAndGet();
+        return retryAfter(wait);
+    }
+
+    private int cost(Operation operation) {
+        switch (operation) {
+            case READ:
+                return readCost;
+            case HEAVY:
+                return heavyCost;
+            default:
+                return 1;
+        }
+    }
+
+    private static long retryAfter(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public int getReadsInProgress() {
+        return limiters[Operation.READ.ordinal()].inProgress.get();
+    }
+
+    @Override
+    public int getWritesInProgress() {
+        return limiters[Operation.WRITE.ordinal()].inProgress.get();
+    }
+
+    @Override
+    public int getHeavyOperationsInProgress() {
+        return limiters[Operation.HEAVY.ordinal()].inProgress.get();
+    }
+
+    @Override
+    public long getConcurrencyRejectedCount() {
+        return concurrencyRejected.get();
+    }
+
+    @Override
+    public long getClientRateRejectedCount() {
+        return clientRateRejected.get();
+    }
+
+    @Override
+    public long getUserRateRejectedCount() {
+        return userRateRejected.get();
+    }
+
+    @Override
+    public int getTrackedClients() {
+        return (clientBuckets != null ? clientBuckets.size() : 0)
+                + (userBuckets != null ? userBuckets.size() : 0);
+    }
+
+    /**
+     * Requests in progress of one class, released once their response is
+     * complete, asynchronous ones included.
+     */
+    private static final class Limiter implements AfterServiceListener {
+
+        private final int limit;
+        private final AtomicInteger inProgress = new AtomicInteger();
+
+        Limiter(int limit) {
+            this.limit = limit;
+        }
+
+        boolean tryAcquire() {
+            int current;
+            do {
+                current = inProgress.get();
+                if (limit > 0 && current >= limit) {
+                    return false;
+                }
+            } while (!inProgress.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void release() {
+            inProgress.decrementAndGet();
+        }
+
+        @Override
+        public void onAfterService(Request request) {
+            release();
+        }
+    }
+
+    private final class AdmissionHttpHandler extends HttpHandler {
+
+        private final HttpHandler delegate;
+
+        AdmissionHttpHandler(HttpHandler delegate) {
+            super(delegate.getName());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void service(Request request, Response response) throws Exception {
+            Operation operation = classify(request.getMethod().getMethodString(),
+                    request.getRequestURI());
+
+            Limiter limiter = limiters[operation.ordinal()];
+            if (!limiter.tryAcquire()) {
+                concurrencyRejected.incrementAndGet();
+                reject(response, HttpStatus.SERVICE_UNAVAILABLE_503.getStatusCode(),
+                        HttpStatus.SERVICE_UNAVAILABLE_503.getReasonPhrase(), 1);
+                return;
+            }
+
+            int cost = cost(operation);
+            if (clientBuckets != null && cost > 0) {
+                long wait = clientBuckets.acquire(request.getRemoteAddr(), cost,
+                        System.nanoTime());
+                if (wait > 0) {
+                    limiter.release();
+                    clientRateRejected.incrementAndGet();
+                    reject(response, 429, "Too Many Requests", retryAfter(wait));
+                    return;
+                }
+            }
+            request.addAfterServiceListener(limiter);
+            delegate.service(request, response);
+        }
+
+        private void reject(Response response, int status, String reason,
+                long retryAfter) throws IOException {
+            response.setStatus(status, reason);
+            response.setHeader("Retry-After", String.valueOf(retryAfter));
+            response.setContentType("text/plain");
+            response.getWriter().write(reason + ", retry after " + retryAfter + " s");
+        }
+
+        @Override
+        public void start() {
+            delegate.start();
+        }
+
+        @Override
+        public void destroy() {
+            delegate.destroy();
+        }
+    }
+}
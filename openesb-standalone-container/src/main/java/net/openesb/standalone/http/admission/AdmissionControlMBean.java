@@ -0,0 +1,44 @@
+package net.openesb.standalone.http.admission;
+
+/**
+ * Admission control of the REST APIs: requests in progress by operation
+ * class, and requests turned away.
+ *
+ * @author OpenESB Community
+ */
+public interface AdmissionControlMBean {
+
+    int getReadsInProgress();
+
+    int getWritesInProgress();
+
+    /**
+     * @return the number of expensive operations (deployment, installation)
+     * in progress.
+     */
+    int getHeavyOperationsInProgress();
+
+    /**
+     * @return the number of requests answered with 503 because too many
+     * requests of their class were in progress.
+     */
+    long getConcurrencyRejectedCount();
+
+    /**
+     * @return the number of requests answered with 429 because their client
+     * address exceeded its rate.
+     */
+    long getClientRateRejectedCount();
+
+    /**
+     * @return the number of requests answered with 429 because their user
+     * exceeded its rate.
+     */
+    long getUserRateRejectedCount();
+
+    /**
+     * @return the number of client addresses and users whose rate is
+     * tracked.
+     */
+    int getTrackedClients();
+}
@@ -0,0 +1,109 @@
+package net.openesb.standalone.http.admission;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets by key (client address, user), refilled at a constant rate
+ * up to their burst size.
+ *
+ * <p>Buckets are created on first use. When there are more than
+ * <code>maxKeys</code> of them, the full ones, whose keys have been idle
+ * long enough to be forgotten without changing any decision, are removed,
+ * at most once per second.</p>
+ *
+ * @author OpenESB Community
+ */
+final class TokenBuckets {
+
+    private static final long PRUNE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final double tokensPerNano;
+    private final double burst;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+    private final AtomicLong lastPrune = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param rate tokens added per second, greater than <code>0</code>
+     * @param burst capacity of a bucket
+     * @param maxKeys number of buckets above which idle ones are removed
+     */
+    TokenBuckets(int rate, int burst, int maxKeys) {
+        this.tokensPerNano = rate / 1e9;
+        this.burst = Math.max(1, burst);
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Take <code>cost</code> tokens from the bucket of the key, if it holds
+     * enough of them.
+     *
+     * @return <code>0</code> if the tokens have been taken, otherwise the
+     * time until the bucket holds enough of them, in nanoseconds.
+     */
+    long acquire(String key, int cost, long now) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            prune(now);
+            bucket = new Bucket(burst, now);
+            Bucket existing = buckets.putIfAbsent(key, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket.acquire(Math.min(cost, burst), now);
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private void prune(long now) {
+        long last = lastPrune.get();
+        if (buckets.size() < maxKeys || now - last < PRUNE_INTERVAL
+                || !lastPrune.compareAndSet(last, now)) {
+            return;
+        }
+        Iterator<Bucket> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isFull(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private final class Bucket {
+
+        private double tokens;
+        private long updated;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.updated = now;
+        }
+
+        synchronized long acquire(double cost, long now) {
+            refill(now);
+            if (tokens >= cost) {
+                tokens -= cost;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((cost - tokens) / tokensPerNano));
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= burst;
+        }
+
+        private void refill(long now) {
+            if (now > updated) {
+                tokens = Math.min(burst, tokens + (now - updated) * tokensPerNano);
+                updated = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package net.openesb.standalone.http.grizzly;
+
+import java.util.concurrent.Executor;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.RequestExecutorProvider;
+import org.glassfish.grizzly.http.server.Response;
+
+/**
+ * Runs the requests of an handler on a dedicated executor instead of the
+ * worker threads of the HTTP server.
+ *
+ * <p>Grizzly asks the executor provider of the handler it has mapped the
+ * request to, so this handler must be the outermost one. It suspends the
+ * response before giving the request to the executor, and resumes it once
+ * the handler returns, unless the handler has suspended it itself: the
+ * worker thread is released as soon as the request is dispatched.</p>
+ *
+ * @author OpenESB Community
+ */
+class DispatchingHttpHandler extends HttpHandler {
+
+    private final HttpHandler delegate;
+    private final RequestExecutorProvider executorProvider;
+
+    DispatchingHttpHandler(HttpHandler delegate, final Executor executor) {
+        super(delegate.getName());
+        this.delegate = delegate;
+        this.executorProvider = new RequestExecutorProvider() {
+
+            @Override
+            public Executor getExecutor(Request request) {
+                return executor;
+            }
+        };
+    }
+
+    @Override
+    public void service(Request request, Response response) throws Exception {
+        delegate.service(request, response);
+    }
+
+    @Override
+    public RequestExecutorProvider getRequestExecutorProvider() {
+        return executorProvider;
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void destroy() {
+        delegate.destroy();
+    }
+}
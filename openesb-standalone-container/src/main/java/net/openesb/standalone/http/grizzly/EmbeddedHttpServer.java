@@ -1,9 +1,15 @@
 package net.openesb.standalone.http.grizzly;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
+import java.util.logging.LogManager;
 import java.util.logging.Logger;
 import javax.inject.Inject;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.ws.rs.core.Application;
 import javax.ws.rs.ext.RuntimeDelegate;
 import net.openesb.security.SecurityProvider;
@@ -11,18 +17,29 @@ import net.openesb.standalone.LifecycleException;
 import net.openesb.standalone.LocalStringKeys;
 import net.openesb.standalone.env.Environment;
 import net.openesb.standalone.http.HttpServer;
+import net.openesb.standalone.http.accesslog.AccessLog;
+import net.openesb.standalone.http.accesslog.AccessLogPattern;
+import net.openesb.standalone.http.admission.AdmissionControl;
 import net.openesb.standalone.http.handlers.AdminConsoleHandler;
+import net.openesb.standalone.http.handlers.LogsHandler;
+import net.openesb.standalone.http.handlers.MetricsHandler;
+import net.openesb.standalone.http.handlers.SiteFileCache;
 import net.openesb.standalone.http.handlers.SitePluginHandler;
+import net.openesb.standalone.http.metrics.HttpMetrics;
+import net.openesb.standalone.http.metrics.RouteMetrics;
+import net.openesb.standalone.jobs.JobsService;
+import net.openesb.standalone.loggers.LoggersService;
 import net.openesb.standalone.plugins.PluginsService;
 import net.openesb.standalone.plugins.rest.PluginsApplication;
 import net.openesb.standalone.rest.ExtendedManagementApplication;
+import net.openesb.standalone.security.SessionTokens;
 import net.openesb.standalone.settings.Settings;
 import net.openesb.standalone.utils.I18NBundle;
+import org.glassfish.grizzly.http.CompressionConfig;
 import org.glassfish.grizzly.http.server.HttpHandler;
 import org.glassfish.grizzly.http.server.HttpHandlerRegistration;
 import org.glassfish.grizzly.http.server.NetworkListener;
 import org.glassfish.grizzly.http.server.ServerConfiguration;
-import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.server.ContainerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
@@ -40,9 +57,65 @@ public class EmbeddedHttpServer implements HttpServer {
     private static final String HTTP_PORT_PROPERTY = "http.port";
     private static final String HTTP_ENABLED_PROPERTY = "http.enabled";
     private static final String HTTP_BINDING_PROPERTY = "http.binding";
+    private static final String LOGS_DIRECTORY_PROPERTY =
+            "net.openesb.standalone.logging.FileHandler.directory";
+    private static final String HTTP_WORKERS_CORE_PROPERTY = "http.workers.core";
+    private static final String HTTP_WORKERS_MAX_PROPERTY = "http.workers.max";
+    private static final String HTTP_WORKERS_QUEUE_LIMIT_PROPERTY = "http.workers.queueLimit";
+    private static final String HTTP_WORKERS_KEEP_ALIVE_PROPERTY = "http.workers.keepAlive";
+    private static final String HTTP_WORKERS_ADAPTIVE_PROPERTY = "http.workers.adaptive";
+    private static final String HTTP_WORKERS_TARGET_WAIT_PROPERTY = "http.workers.targetWait";
+    private static final String HTTP_WORKERS_INTERVAL_PROPERTY = "http.workers.interval";
+    private static final String HTTP_STATIC_MAX_AGE_PROPERTY = "http.static.maxAge";
+    private static final String HTTP_STATIC_CACHE_SIZE_PROPERTY = "http.static.cache.size";
+    private static final String HTTP_STATIC_CACHE_MAX_FILE_SIZE_PROPERTY = "http.static.cache.maxFileSize";
+    private static final String HTTP_COMPRESSION_ENABLED_PROPERTY = "http.compression.enabled";
+    private static final String HTTP_COMPRESSION_MIN_SIZE_PROPERTY = "http.compression.minSize";
+    private static final String HTTP_COMPRESSION_MIME_TYPES_PROPERTY = "http.compression.mimeTypes";
+    private static final String DEFAULT_HTTP_COMPRESSION_MIME_TYPES =
+            "application/json,application/xml,text/xml,text/plain";
+    private static final String HTTP_REST_VIRTUAL_THREADS_PROPERTY = "http.rest.virtualThreads";
+    private static final String HTTP_REST_TOKEN_TTL_PROPERTY = "http.rest.token.ttl";
+    private static final String HTTP_REST_TOKEN_ROTATION_PROPERTY = "http.rest.token.rotation";
+    private static final String HTTP_METRICS_ENABLED_PROPERTY = "http.metrics.enabled";
+    private static final String HTTP_ACCESS_LOG_ENABLED_PROPERTY = "http.accessLog.enabled";
+    private static final String HTTP_ACCESS_LOG_PATTERN_PROPERTY = "http.accessLog.pattern";
+    private static final String HTTP_ACCESS_LOG_SAMPLING_PROPERTY = "http.accessLog.sampling";
+    private static final String DEFAULT_HTTP_ACCESS_LOG_PATTERN = AccessLogPattern.COMMON + " %D %W";
+    private static final String HTTP_ADMISSION_ENABLED_PROPERTY = "http.admission.enabled";
+    private static final String HTTP_ADMISSION_READ_CONCURRENCY_PROPERTY = "http.admission.read.concurrency";
+    private static final String HTTP_ADMISSION_WRITE_CONCURRENCY_PROPERTY = "http.admission.write.concurrency";
+    private static final String HTTP_ADMISSION_HEAVY_CONCURRENCY_PROPERTY = "http.admission.heavy.concurrency";
+    private static final String HTTP_ADMISSION_READ_COST_PROPERTY = "http.admission.read.cost";
+    private static final String HTTP_ADMISSION_HEAVY_COST_PROPERTY = "http.admission.heavy.cost";
+    private static final String HTTP_ADMISSION_HEAVY_PATHS_PROPERTY = "http.admission.heavy.paths";
+    private static final String DEFAULT_HTTP_ADMISSION_HEAVY_PATHS =
+            "/openesb/api/assemblies,/openesb/api/components,/openesb/api/libraries";
+    private static final String HTTP_ADMISSION_CLIENT_RATE_PROPERTY = "http.admission.client.rate";
+    private static final String HTTP_ADMISSION_CLIENT_BURST_PROPERTY = "http.admission.client.burst";
+    private static final String HTTP_ADMISSION_USER_RATE_PROPERTY = "http.admission.user.rate";
+    private static final String HTTP_ADMISSION_USER_BURST_PROPERTY = "http.admission.user.burst";
+    private static final String HTTP_WORKERS_MBEAN_NAME = "net.open-esb.standalone:type=HttpWorkerPool";
+    private static final String HTTP_SITE_CACHE_MBEAN_NAME = "net.open-esb.standalone:type=HttpSiteCache";
+    private static final String HTTP_JOBS_HEAVY_PROPERTY = "http.jobs.heavy";
+    private static final String HTTP_JOBS_THREADS_PROPERTY = "http.jobs.threads";
+    private static final String HTTP_JOBS_QUEUE_LIMIT_PROPERTY = "http.jobs.queueLimit";
+    private static final String HTTP_JOBS_RETENTION_PROPERTY = "http.jobs.retention";
+    private static final String HTTP_JOBS_MAX_RETAINED_PROPERTY = "http.jobs.maxRetained";
+    private static final String HTTP_JOBS_SPOOL_THRESHOLD_PROPERTY = "http.jobs.spoolThreshold";
+    private static final String HTTP_ADMISSION_MBEAN_NAME = "net.open-esb.standalone:type=HttpAdmissionControl";
+    private static final String HTTP_METRICS_MBEAN_NAME = "net.open-esb.standalone:type=HttpMetrics,route=";
     private static final int DEFAULT_HTTP_PORT = 4848;
+    private static final int DEFAULT_HTTP_WORKERS = 5;
     private static final boolean DEFAULT_HTTP_ENABLED = true;
     private org.glassfish.grizzly.http.server.HttpServer httpServer = null;
+    private WorkerPool workerPool = null;
+    private ExecutorService restExecutor = null;
+    private SiteFileCache siteFileCache = null;
+    private HttpMetrics httpMetrics = null;
+    private AdmissionControl admissionControl = null;
+    private JobsService jobsService = null;
+    private SessionTokens sessionTokens = null;
 
     private final Settings settings;
     private final Environment environment;
@@ -50,35 +123,57 @@ public class EmbeddedHttpServer implements HttpServer {
 
     private final SecurityProvider securityProvider;
     private final PluginsService pluginsService;
+    private final LoggersService loggersService;
 
     @Inject
-    public EmbeddedHttpServer(Settings settings, Environment environment, SecurityProvider securityProvider, PluginsService pluginsService) {
+    public EmbeddedHttpServer(Settings settings, Environment environment, SecurityProvider securityProvider,
+            PluginsService pluginsService, LoggersService loggersService) {
         this.settings = settings;
         this.environment = environment;
         this.securityProvider = securityProvider;
         this.pluginsService = pluginsService;
+        this.loggersService = loggersService;
         this.init();
     }
 
     private void init() {
         enabled = settings.getAsBoolean(HTTP_ENABLED_PROPERTY, DEFAULT_HTTP_ENABLED);
 
-        if (LOG.isLoggable(Level.FINE)) {
-            LOG.log(Level.FINE, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.HTTP_SERVER_ENABLED, enabled));
-        }
+        I18NBundle.getBundle().log(LOG, Level.FINE,
+                LocalStringKeys.HTTP_SERVER_ENABLED, enabled);
 
         if (enabled) {
+            // Shared by the REST API, the log files and the access log
+            sessionTokens = new SessionTokens(
+                    settings.getAsInt(HTTP_REST_TOKEN_TTL_PROPERTY, 900),
+                    settings.getAsInt(HTTP_REST_TOKEN_ROTATION_PROPERTY, 3600));
             httpServer = createHttpServer();
 
             // Map the path to the processor.
             final ServerConfiguration config = httpServer.getServerConfiguration();
 
             AdminConsoleHandler consoleHandler = new AdminConsoleHandler();
-            config.addHttpHandler(consoleHandler.getHandler(), "/", consoleHandler.path());
-            
-            SitePluginHandler pluginHandler = new SitePluginHandler(environment);
-            config.addHttpHandler(pluginHandler.getHandler(), pluginHandler.path());
+            config.addHttpHandler(route(consoleHandler.getHandler(), consoleHandler.path()),
+                    "/", consoleHandler.path());
+
+            siteFileCache = createSiteFileCache();
+            SitePluginHandler pluginHandler = new SitePluginHandler(environment,
+                    settings.getAsInt(HTTP_STATIC_MAX_AGE_PROPERTY, 0), siteFileCache,
+                    httpServer.getListener(HTTP_LISTENER_NAME).isSendFileEnabled());
+            config.addHttpHandler(route(pluginHandler.getHandler(), pluginHandler.path()),
+                    pluginHandler.path());
+
+            LogsHandler logsHandler = new LogsHandler(logsDirectory(), securityProvider,
+                    sessionTokens);
+            config.addHttpHandler(route(logsHandler.getHandler(), logsHandler.path()),
+                    logsHandler.path());
+
+            if (httpMetrics != null) {
+                MetricsHandler metricsHandler = new MetricsHandler(httpMetrics,
+                        workerPool, siteFileCache);
+                config.addHttpHandler(route(metricsHandler.getHandler(), metricsHandler.path()),
+                        metricsHandler.path());
+            }
 
             /*
              * OESE-46
@@ -93,6 +188,8 @@ public class EmbeddedHttpServer implements HttpServer {
              */
             RuntimeDelegate.setInstance(null);
 
+            restExecutor = createRestExecutor();
+            admissionControl = createAdmissionControl();
             addManagementHandler();
             addPluginsHandler();
         }
@@ -101,12 +198,27 @@ public class EmbeddedHttpServer implements HttpServer {
     private void addManagementHandler() {
         Application app = new ExtendedManagementApplication();
         ResourceConfig rc = ResourceConfig.forApplication(app);
+        // Deployments and installations run one at a time, like their
+        // admission control limit
+        jobsService = new JobsService(
+                settings.getAsBoolean(HTTP_JOBS_HEAVY_PROPERTY, false),
+                settings.getAsInt(HTTP_JOBS_THREADS_PROPERTY, 1),
+                settings.getAsInt(HTTP_JOBS_QUEUE_LIMIT_PROPERTY, 16),
+                settings.getAsInt(HTTP_JOBS_RETENTION_PROPERTY, 3600),
+                settings.getAsInt(HTTP_JOBS_MAX_RETAINED_PROPERTY, 100),
+                settings.getAsInt(HTTP_JOBS_SPOOL_THRESHOLD_PROPERTY, 1024) * 1024);
+        // Gets the application handler, to replay the jobs
+        rc.register(jobsService);
         
         rc.register(new AbstractBinder() {
 
             @Override
             protected void configure() {
                 bind(securityProvider).to(SecurityProvider.class);
+                bind(loggersService).to(LoggersService.class);
+                bind(sessionTokens).to(SessionTokens.class);
+                bind(admissionControl).to(AdmissionControl.class);
+                bind(jobsService).to(JobsService.class);
             }
         });
 
@@ -129,27 +241,49 @@ public class EmbeddedHttpServer implements HttpServer {
 
     private void addJerseyHandler(ResourceConfig resourceConfig, String mapping) {
         HttpHandler handler = ContainerFactory.createContainer(HttpHandler.class, resourceConfig);
+        // Requests turned away are not parsed by Jersey
+        handler = route(admissionControl.wrap(handler), mapping);
+        if (restExecutor != null) {
+            // Outermost, Grizzly only asks the registered handler for its executor
+            handler = new DispatchingHttpHandler(handler, restExecutor);
+        }
         
         httpServer.getServerConfiguration().addHttpHandler(handler, 
                 HttpHandlerRegistration.bulder().contextPath(mapping).build());
         
-        LOG.log(Level.INFO, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.HTTP_REST_REGISTER_APPLICATION, resourceConfig.getApplication().getClass().getName(), mapping));
+        I18NBundle.getBundle().log(LOG, Level.INFO,
+                LocalStringKeys.HTTP_REST_REGISTER_APPLICATION, resourceConfig.getApplication().getClass().getName(), mapping);
     }
 
     @Override
     public void start() throws LifecycleException {
         if (enabled) {
             try {
-                if (LOG.isLoggable(Level.INFO)) {
-                    LOG.log(Level.INFO, I18NBundle.getBundle().getMessage(
-                            LocalStringKeys.HTTP_START_SERVER));
-                }
+                I18NBundle.getBundle().log(LOG, Level.INFO,
+                        LocalStringKeys.HTTP_START_SERVER);
 
+                workerPool.start();
+                if (siteFileCache != null) {
+                    siteFileCache.start();
+                }
                 httpServer.start();
+                registerMBean(workerPool, HTTP_WORKERS_MBEAN_NAME,
+                        LocalStringKeys.HTTP_WORKERS_MBEAN_FAILED);
+                if (siteFileCache != null) {
+                    registerMBean(siteFileCache, HTTP_SITE_CACHE_MBEAN_NAME,
+                            LocalStringKeys.HTTP_SITE_CACHE_MBEAN_FAILED);
+                }
+                registerMBean(admissionControl, HTTP_ADMISSION_MBEAN_NAME,
+                        LocalStringKeys.HTTP_ADMISSION_MBEAN_FAILED);
+                if (httpMetrics != null) {
+                    for (RouteMetrics route : httpMetrics.getRoutes()) {
+                        registerMBean(route, routeMBeanName(route.getRoute()),
+                                LocalStringKeys.HTTP_METRICS_MBEAN_FAILED);
+                    }
+                }
             } catch (IOException ex) {
-                LOG.log(Level.SEVERE, I18NBundle.getBundle().getMessage(
-                        LocalStringKeys.HTTP_START_SERVER_FAILED), ex);
+                I18NBundle.getBundle().log(LOG, Level.SEVERE, ex,
+                        LocalStringKeys.HTTP_START_SERVER_FAILED);
             }
         }
     }
@@ -158,34 +292,73 @@ public class EmbeddedHttpServer implements HttpServer {
     public void stop() throws LifecycleException {
         if (enabled && httpServer != null) {
             httpServer.shutdownNow();
-            if (LOG.isLoggable(Level.INFO)) {
-                LOG.log(Level.INFO, I18NBundle.getBundle().getMessage(
-                        LocalStringKeys.HTTP_STOP_SERVER));
+            unregisterMBean(HTTP_WORKERS_MBEAN_NAME);
+            unregisterMBean(HTTP_SITE_CACHE_MBEAN_NAME);
+            unregisterMBean(HTTP_ADMISSION_MBEAN_NAME);
+            if (httpMetrics != null) {
+                for (RouteMetrics route : httpMetrics.getRoutes()) {
+                    unregisterMBean(routeMBeanName(route.getRoute()));
+                }
+            }
+            // The transport does not manage a pool it has been given
+            workerPool.shutdown();
+            if (siteFileCache != null) {
+                siteFileCache.shutdown();
             }
+            if (restExecutor != null) {
+                restExecutor.shutdownNow();
+            }
+            if (jobsService != null) {
+                jobsService.shutdown();
+            }
+            I18NBundle.getBundle().log(LOG, Level.INFO,
+                    LocalStringKeys.HTTP_STOP_SERVER);
         }
     }
 
+    /**
+     * The directory of the <code>FileHandler</code> as configured in the
+     * logging configuration, <code>logs</code> in the home directory otherwise.
+     */
+    private File logsDirectory() {
+        String directory = LogManager.getLogManager().getProperty(LOGS_DIRECTORY_PROPERTY);
+        if (directory != null && directory.trim().length() > 0) {
+            return new File(directory.trim());
+        }
+        return new File(environment.hHomeFile(), "logs");
+    }
+
     private org.glassfish.grizzly.http.server.HttpServer createHttpServer() {
         int port = settings.getAsInt(HTTP_PORT_PROPERTY, DEFAULT_HTTP_PORT);
         String binding = settings.get(HTTP_BINDING_PROPERTY,
                 NetworkListener.DEFAULT_NETWORK_HOST);
 
-        if (LOG.isLoggable(Level.INFO)) {
-            LOG.log(Level.INFO, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.HTTP_SERVER_PORT, port));
-        }
+        I18NBundle.getBundle().log(LOG, Level.INFO,
+                LocalStringKeys.HTTP_SERVER_PORT, port);
 
         final org.glassfish.grizzly.http.server.HttpServer server
                 = new org.glassfish.grizzly.http.server.HttpServer();
         final NetworkListener listener = new NetworkListener(HTTP_LISTENER_NAME,
                 binding, port);
 
-        ThreadPoolConfig threadPoolConfig = ThreadPoolConfig
-                .defaultConfig()
-                .setCorePoolSize(5)
-                .setMaxPoolSize(5);
-
-        listener.getTransport().setWorkerThreadPoolConfig(threadPoolConfig);
+        workerPool = createWorkerPool();
+        listener.getTransport().setWorkerThreadPool(workerPool.getExecutor());
+        // Static files of the plugin sites are transferred by the kernel
+        listener.setSendFileEnabled(true);
+        configureCompression(listener.getCompressionConfig());
+        if (settings.getAsBoolean(HTTP_METRICS_ENABLED_PROPERTY, true)) {
+            httpMetrics = new HttpMetrics();
+            httpMetrics.register(listener, server);
+        }
+        if (settings.getAsBoolean(HTTP_ACCESS_LOG_ENABLED_PROPERTY, true)) {
+            AccessLog accessLog = new AccessLog(
+                    settings.get(HTTP_ACCESS_LOG_PATTERN_PROPERTY, DEFAULT_HTTP_ACCESS_LOG_PATTERN),
+                    settings.get(HTTP_ACCESS_LOG_SAMPLING_PROPERTY), sessionTokens);
+            accessLog.register(server);
+            I18NBundle.getBundle().log(LOG, Level.FINE,
+                    LocalStringKeys.HTTP_ACCESS_LOG_CONFIGURATION,
+                    accessLog.getPattern().getPattern());
+        }
         /*
          listener.setSecure(secure);
          if (sslEngineConfigurator != null) {
@@ -197,13 +370,183 @@ public class EmbeddedHttpServer implements HttpServer {
         return server;
     }
 
+    /**
+     * Responses of the allowed MIME types, and larger than the minimum size
+     * when their length is known, are gzip encoded on the fly for the
+     * clients accepting it. Plugin site files are not in the default types:
+     * they come with their own pre-compressed variants and use sendfile.
+     */
+    private void configureCompression(CompressionConfig compression) {
+        if (!settings.getAsBoolean(HTTP_COMPRESSION_ENABLED_PROPERTY, true)) {
+            compression.setCompressionMode(CompressionConfig.CompressionMode.OFF);
+            return;
+        }
+
+        int minSize = settings.getAsInt(HTTP_COMPRESSION_MIN_SIZE_PROPERTY, 1024);
+        String mimeTypes = settings.get(HTTP_COMPRESSION_MIME_TYPES_PROPERTY,
+                DEFAULT_HTTP_COMPRESSION_MIME_TYPES);
+
+        compression.setCompressionMode(CompressionConfig.CompressionMode.ON);
+        compression.setCompressionMinSize(minSize);
+        compression.setCompressableMimeTypes(mimeTypes.trim().split("\\s*,\\s*"));
+
+        I18NBundle.getBundle().log(LOG, Level.FINE,
+                LocalStringKeys.HTTP_COMPRESSION_CONFIGURATION, minSize, mimeTypes);
+    }
+
+    private WorkerPool createWorkerPool() {
+        int core = settings.getAsInt(HTTP_WORKERS_CORE_PROPERTY, DEFAULT_HTTP_WORKERS);
+        int max = settings.getAsInt(HTTP_WORKERS_MAX_PROPERTY, core);
+        int queueLimit = settings.getAsInt(HTTP_WORKERS_QUEUE_LIMIT_PROPERTY, -1);
+        int keepAlive = settings.getAsInt(HTTP_WORKERS_KEEP_ALIVE_PROPERTY, 60000);
+        boolean adaptive = settings.getAsBoolean(HTTP_WORKERS_ADAPTIVE_PROPERTY, false);
+        int targetWait = settings.getAsInt(HTTP_WORKERS_TARGET_WAIT_PROPERTY, 50);
+        int interval = settings.getAsInt(HTTP_WORKERS_INTERVAL_PROPERTY, 1000);
+
+        I18NBundle.getBundle().log(LOG, Level.INFO,
+                LocalStringKeys.HTTP_WORKERS_CONFIGURATION, core, max, queueLimit,
+                keepAlive, adaptive);
+
+        return new WorkerPool(HTTP_LISTENER_NAME + "-worker", core, max, queueLimit,
+                keepAlive, adaptive, targetWait, interval);
+    }
+
+    /**
+     * The management and plugins REST APIs mostly wait for JMX and JBI
+     * framework calls: when enabled and supported by the JDK, each of their
+     * requests runs on its own virtual thread. Otherwise, they run on the
+     * worker pool, like any other request.
+     */
+    private ExecutorService createRestExecutor() {
+        if (!settings.getAsBoolean(HTTP_REST_VIRTUAL_THREADS_PROPERTY, false)) {
+            return null;
+        }
+
+        ExecutorService executor = VirtualThreads.newExecutor("openesb-rest");
+        if (executor != null) {
+            I18NBundle.getBundle().log(LOG, Level.INFO,
+                    LocalStringKeys.HTTP_REST_VIRTUAL_THREADS);
+        } else {
+            I18NBundle.getBundle().log(LOG, Level.WARNING,
+                    LocalStringKeys.HTTP_REST_VIRTUAL_THREADS_UNAVAILABLE,
+                    System.getProperty("java.version"));
+        }
+        return executor;
+    }
+
+    /**
+     * The REST APIs are protected by default: a client address, or a user,
+     * can not send more than 20 requests per second, bursts of 40 aside, and
+     * at most one read less than the core workers, 2 writes and 1 deployment
+     * or installation are served at once, so that a worker is left to the
+     * web console. Deployments and installations take 10 tokens.
+     */
+    private AdmissionControl createAdmissionControl() {
+        if (!settings.getAsBoolean(HTTP_ADMISSION_ENABLED_PROPERTY, true)) {
+            return AdmissionControl.unlimited();
+        }
+
+        // Reads and writes, like the parallel requests of the console, wait
+        // for a worker rather than being turned away
+        int readConcurrency = settings.getAsInt(HTTP_ADMISSION_READ_CONCURRENCY_PROPERTY, 0);
+        int writeConcurrency = settings.getAsInt(HTTP_ADMISSION_WRITE_CONCURRENCY_PROPERTY, 0);
+        int heavyConcurrency = settings.getAsInt(HTTP_ADMISSION_HEAVY_CONCURRENCY_PROPERTY, 1);
+        int readCost = settings.getAsInt(HTTP_ADMISSION_READ_COST_PROPERTY, 0);
+        int heavyCost = settings.getAsInt(HTTP_ADMISSION_HEAVY_COST_PROPERTY, 10);
+        String heavyPaths = settings.get(HTTP_ADMISSION_HEAVY_PATHS_PROPERTY,
+                DEFAULT_HTTP_ADMISSION_HEAVY_PATHS);
+        int clientRate = settings.getAsInt(HTTP_ADMISSION_CLIENT_RATE_PROPERTY, 20);
+        int clientBurst = settings.getAsInt(HTTP_ADMISSION_CLIENT_BURST_PROPERTY, 2 * clientRate);
+        int userRate = settings.getAsInt(HTTP_ADMISSION_USER_RATE_PROPERTY, 20);
+        int userBurst = settings.getAsInt(HTTP_ADMISSION_USER_BURST_PROPERTY, 2 * userRate);
+
+        I18NBundle.getBundle().log(LOG, Level.INFO,
+                LocalStringKeys.HTTP_ADMISSION_CONFIGURATION, readConcurrency,
+                writeConcurrency, heavyConcurrency, clientRate, userRate);
+
+        return new AdmissionControl(readConcurrency, writeConcurrency, heavyConcurrency,
+                readCost, heavyCost, heavyPaths.trim().split("\\s*,\\s*"), clientRate, clientBurst,
+                userRate, userBurst);
+    }
+
+    /**
+     * Plugin site files are cached unless <code>http.static.cache.size</code>
+     * is <code>0</code>. Sizes are in kilobytes.
+     */
+    private SiteFileCache createSiteFileCache() {
+        int size = settings.getAsInt(HTTP_STATIC_CACHE_SIZE_PROPERTY, 16384);
+        if (size <= 0) {
+            return null;
+        }
+        int maxFileSize = settings.getAsInt(HTTP_STATIC_CACHE_MAX_FILE_SIZE_PROPERTY, 256);
+        return new SiteFileCache(environment.pluginsFile(), size * 1024L,
+                Math.max(0, maxFileSize) * 1024);
+    }
+
+    /**
+     * @return the handler accounting its requests to the route when metrics
+     * are enabled, the handler itself otherwise.
+     */
+    private HttpHandler route(HttpHandler handler, String route) {
+        return httpMetrics != null ? httpMetrics.wrap(handler, route) : handler;
+    }
+
+    private static String routeMBeanName(String route) {
+        return HTTP_METRICS_MBEAN_NAME + ObjectName.quote(route);
+    }
+
+    private void registerMBean(Object mbean, String objectName, String failureKey) {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (mbs.isRegistered(name)) {
+                mbs.unregisterMBean(name);
+            }
+            mbs.registerMBean(mbean, name);
+        } catch (Exception ex) {
+            I18NBundle.getBundle().log(LOG, Level.WARNING, ex, failureKey);
+        }
+    }
+
+    private void unregisterMBean(String objectName) {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (mbs.isRegistered(name)) {
+                mbs.unregisterMBean(name);
+            }
+        } catch (Exception ex) {
+            LOG.log(Level.FINE, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @return the worker pool of the HTTP server, <code>null</code> if HTTP
+     * is disabled.
+     */
+    public WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * @return the metrics of the HTTP server, <code>null</code> if HTTP or
+     * metrics are disabled.
+     */
+    public HttpMetrics getHttpMetrics() {
+        return httpMetrics;
+    }
+
     @Override
     public void addRestHandler(Application application, String rootURI) {
         if (enabled) {
             final ServerConfiguration config = httpServer.getServerConfiguration();
 
             HttpHandler handler = ContainerFactory.createContainer(HttpHandler.class, application);
-            config.addHttpHandler(handler, rootURI);
+            config.addHttpHandler(route(handler, rootURI), rootURI);
+            if (httpMetrics != null && httpServer.isStarted()) {
+                registerMBean(httpMetrics.route(rootURI), routeMBeanName(rootURI),
+                        LocalStringKeys.HTTP_METRICS_MBEAN_FAILED);
+            }
         }
     }
 }
@@ -0,0 +1,52 @@
+package net.openesb.standalone.http.grizzly;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.openesb.standalone.http.HttpServer;
+
+/**
+ * Access to the virtual threads of the JDK 21 and later.
+ *
+ * <p>The API is looked up by reflection, so that the container still builds
+ * and runs on older JDKs, where virtual threads are simply not available.</p>
+ *
+ * @author OpenESB Community
+ */
+final class VirtualThreads {
+
+    private static final Logger LOG
+            = Logger.getLogger(HttpServer.class.getPackage().getName());
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @param name prefix of the thread names
+     * @return an executor starting a new virtual thread for each task, or
+     * <code>null</code> if the JDK does not support virtual threads.
+     */
+    static ExecutorService newExecutor(String name) {
+        try {
+            // Thread.ofVirtual().name(name, 1).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, name + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory")
+                    .invoke(builder);
+
+            Method newThreadPerTaskExecutor = Executors.class.getMethod(
+                    "newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+        } catch (Exception ex) {
+            // ClassNotFoundException, NoSuchMethodException on JDK < 21, or
+            // UnsupportedOperationException when disabled by the runtime.
+            LOG.log(Level.FINE, "Virtual threads are not available", ex);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package net.openesb.standalone.http.grizzly;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.openesb.standalone.LocalStringKeys;
+import net.openesb.standalone.http.HttpServer;
+import net.openesb.standalone.utils.I18NBundle;
+
+/**
+ * Worker threads of the HTTP server, measuring how long requests wait for a
+ * thread.
+ *
+ * <p>Threads are added up to the maximum size before requests are queued,
+ * as long as no thread is idle: a plain <code>ThreadPoolExecutor</code>
+ * only adds threads above the core size when its queue is full, that is
+ * never with an unbounded queue.</p>
+ *
+ * <p>In adaptive mode, the core size of the pool follows the queue wait:
+ * it grows by half, up to the maximum size, as long as requests wait more
+ * than <code>targetWait</code>, and shrinks one thread at a time, down to
+ * the configured core size, when requests no longer wait and most threads
+ * are idle. Threads above the core size stop after the keep-alive time.</p>
+ *
+ * @author OpenESB Community
+ */
+public class WorkerPool implements WorkerPoolMBean {
+
+    private static final Logger LOG
+            = Logger.getLogger(HttpServer.class.getPackage().getName());
+
+    private final TimedExecutor executor;
+    private final WorkQueue queue;
+    private final int minCorePoolSize;
+    private final int maxPoolSize;
+    private final boolean adaptive;
+    private final long targetWaitNanos;
+    private final long interval;
+
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private long lastWaitCount;
+    private long lastWaitNanos;
+
+    private ScheduledExecutorService adapter;
+
+    /**
+     * @param name prefix of the thread names
+     * @param corePoolSize initial (and minimum, in adaptive mode) number of
+     * threads
+     * @param maxPoolSize maximum number of threads
+     * @param queueLimit maximum number of waiting requests, <code>-1</code>
+     * for no limit
+     * @param keepAlive idle time after which threads above the core size
+     * stop, in milliseconds
+     * @param adaptive whether the core size follows the queue wait
+     * @param targetWait queue wait above which the pool grows, in
+     * milliseconds
+     * @param interval delay between two adjustments, in milliseconds
+     */
+    public WorkerPool(String name, int corePoolSize, int maxPoolSize, int queueLimit,
+            long keepAlive, boolean adaptive, long targetWait, long interval) {
+        this.minCorePoolSize = Math.max(1, corePoolSize);
+        this.maxPoolSize = Math.max(this.minCorePoolSize, maxPoolSize);
+        this.adaptive = adaptive;
+        this.targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, targetWait));
+        this.interval = Math.max(100, interval);
+
+        this.queue = new WorkQueue(queueLimit < 0 ? Integer.MAX_VALUE : Math.max(1, queueLimit));
+        this.executor = new TimedExecutor(this.minCorePoolSize, this.maxPoolSize,
+                keepAlive, queue, new WorkerThreadFactory(name));
+        this.queue.executor = this.executor;
+    }
+
+    /**
+     * @return the executor to give to the transport.
+     */
+    public ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    public synchronized void start() {
+        if (!adaptive || adapter != null) {
+            return;
+        }
+        adapter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "openesb-http-workers-adapter");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        adapter.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                adapt();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (adapter != null) {
+            adapter.shutdownNow();
+            adapter = null;
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Resize the pool according to the queue wait observed since the last
+     * adjustment, including the wait of the oldest request still queued.
+     */
+    void adapt() {
+        long count = waitCount.get();
+        long nanos = waitNanos.get();
+        long intervalCount = count - lastWaitCount;
+        long intervalNanos = nanos - lastWaitNanos;
+        lastWaitCount = count;
+        lastWaitNanos = nanos;
+
+        long wait = intervalCount == 0 ? 0 : intervalNanos / intervalCount;
+        Runnable head = executor.getQueue().peek();
+        if (head instanceof TimedTask) {
+            wait = Math.max(wait, System.nanoTime() - ((TimedTask) head).queued);
+        }
+
+        int core = executor.getCorePoolSize();
+        int newCore = core;
+        if (wait > targetWaitNanos && core < maxPoolSize) {
+            newCore = Math.min(maxPoolSize, core + Math.max(1, core / 2));
+        } else if (wait < targetWaitNanos / 4 && core > minCorePoolSize
+                && executor.getActiveCount() < core / 2) {
+            newCore = core - 1;
+        }
+
+        if (newCore != core) {
+            executor.setCorePoolSize(newCore);
+            if (newCore > core) {
+                // Start the new threads now, the queue is not empty
+                executor.prestartAllCoreThreads();
+            }
+            I18NBundle.getBundle().log(LOG, Level.FINE,
+                    LocalStringKeys.HTTP_WORKERS_RESIZED, core, newCore,
+                    TimeUnit.NANOSECONDS.toMillis(wait));
+        }
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    @Override
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    @Override
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public double getUtilization() {
+        return (double) executor.getActiveCount() / maxPoolSize;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public long getAverageQueueWait() {
+        long count = waitCount.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.get() / count);
+    }
+
+    @Override
+    public long getMaxQueueWait() {
+        return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get());
+    }
+
+    @Override
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * @return how long the task running on the current thread waited in the
+     * queue, in nanoseconds, <code>0</code> if the current thread is not a
+     * worker thread.
+     */
+    public static long currentQueueWait() {
+        Thread current = Thread.currentThread();
+        return current instanceof WorkerThread ? ((WorkerThread) current).queueWait : 0;
+    }
+
+    private void waited(long nanos) {
+        waitCount.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        long max;
+        while ((max = maxWaitNanos.get()) < nanos
+                && !maxWaitNanos.compareAndSet(max, nanos)) {
+            // retry
+        }
+    }
+
+    /**
+     * A task remembering when it has been queued.
+     */
+    private static final class TimedTask implements Runnable {
+
+        private final Runnable task;
+        private final long queued = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                // Not reported again by the idle thread
+                Thread current = Thread.currentThread();
+                if (current instanceof WorkerThread) {
+                    ((WorkerThread) current).queueWait = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue refusing tasks while the pool can grow and no thread is idle, so
+     * that the executor adds a thread instead.
+     */
+    private static final class WorkQueue extends LinkedBlockingQueue<Runnable> {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient volatile TimedExecutor executor;
+
+        WorkQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            TimedExecutor pool = executor;
+            if (pool != null) {
+                int size = pool.getPoolSize();
+                if (size < pool.getMaximumPoolSize() && pool.submitted.get() > size) {
+                    return false;
+                }
+            }
+            return super.offer(task);
+        }
+
+        /**
+         * Queue a task refused by {@link #offer} when the pool could not
+         * grow after all.
+         */
+        boolean force(Runnable task) {
+            return super.offer(task);
+        }
+    }
+
+    private final class TimedExecutor extends ThreadPoolExecutor {
+
+        /**
+         * Tasks submitted and not completed yet, queued or running.
+         */
+        private final AtomicInteger submitted = new AtomicInteger();
+
+        TimedExecutor(int corePoolSize, int maxPoolSize, long keepAlive,
+                final WorkQueue queue, ThreadFactory threadFactory) {
+            super(corePoolSize, maxPoolSize, keepAlive, TimeUnit.MILLISECONDS,
+                    queue, threadFactory, new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                            if (executor.isShutdown() || !queue.force(r)) {
+                                rejected.incrementAndGet();
+                                throw new RejectedExecutionException("HTTP worker queue is full");
+                            }
+                        }
+                    });
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submitted.incrementAndGet();
+            try {
+                super.execute(new TimedTask(command));
+            } catch (RejectedExecutionException ree) {
+                submitted.decrementAndGet();
+                throw ree;
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            submitted.decrementAndGet();
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            if (r instanceof TimedTask) {
+                long wait = System.nanoTime() - ((TimedTask) r).queued;
+                waited(wait);
+                if (t instanceof WorkerThread) {
+                    ((WorkerThread) t).queueWait = wait;
+                }
+            }
+        }
+    }
+
+    private static final class WorkerThread extends Thread {
+
+        /**
+         * Queue wait of the running task, only accessed by this thread.
+         */
+        private long queueWait;
+
+        WorkerThread(Runnable r, String name) {
+            super(r, name);
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        WorkerThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new WorkerThread(r, name + "(" + counter.incrementAndGet() + ")");
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package net.openesb.standalone.http.grizzly;
+
+/**
+ * Utilisation and latency of the worker threads of the HTTP server.
+ *
+ * @author OpenESB Community
+ */
+public interface WorkerPoolMBean {
+
+    int getCorePoolSize();
+
+    int getMaxPoolSize();
+
+    /**
+     * @return the number of threads currently in the pool.
+     */
+    int getPoolSize();
+
+    /**
+     * @return the number of threads processing a request.
+     */
+    int getActiveCount();
+
+    /**
+     * @return active threads divided by the maximum pool size, between
+     * <code>0</code> and <code>1</code>.
+     */
+    double getUtilization();
+
+    /**
+     * @return the number of requests waiting for a thread.
+     */
+    int getQueueSize();
+
+    long getCompletedTaskCount();
+
+    /**
+     * @return the number of requests rejected because the queue was full.
+     */
+    long getRejectedCount();
+
+    /**
+     * @return the average time spent by a request in the queue, in
+     * microseconds.
+     */
+    long getAverageQueueWait();
+
+    /**
+     * @return the longest time spent by a request in the queue, in
+     * microseconds.
+     */
+    long getMaxQueueWait();
+
+    boolean isAdaptive();
+}
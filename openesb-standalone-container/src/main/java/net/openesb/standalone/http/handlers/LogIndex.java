@@ -0,0 +1,152 @@
+package net.openesb.standalone.http.handlers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Reads the sparse index maintained next to a log file by the bootstrap
+ * <code>FileHandler</code> when its <code>index</code> property is set.
+ *
+ * <p>The index is a sequence of fixed size entries, big endian:
+ * <code>long offset, long length, long minMillis, long maxMillis,
+ * int levelMask, int records</code>. Level bits go from <code>FINEST</code>
+ * (bit 0) to <code>SEVERE</code> (bit 6). The parts of the log file which
+ * are not covered by an entry (the block being written, or a file written
+ * without index) are returned as unknown blocks, which have to be
+ * scanned.</p>
+ *
+ * @author OpenESB Community
+ */
+class LogIndex {
+
+    static final String INDEX_SUFFIX = ".idx";
+
+    private static final int ENTRY_SIZE = 40;
+
+    private LogIndex() {
+    }
+
+    /**
+     * A range of the log file.
+     */
+    static class Block {
+
+        final long offset;
+        final long length;
+        final long minMillis;
+        final long maxMillis;
+        final int levelMask;
+        final boolean indexed;
+
+        Block(long offset, long length, long minMillis, long maxMillis,
+                int levelMask, boolean indexed) {
+            this.offset = offset;
+            this.length = length;
+            this.minMillis = minMillis;
+            this.maxMillis = maxMillis;
+            this.levelMask = levelMask;
+            this.indexed = indexed;
+        }
+
+        static Block unknown(long offset, long length) {
+            return new Block(offset, length, Long.MIN_VALUE, Long.MAX_VALUE, -1, false);
+        }
+
+        /**
+         * @return <code>true</code> if the block may hold records matching
+         * the given time range and level mask.
+         */
+        boolean mayMatch(long from, long to, int mask) {
+            return maxMillis >= from && minMillis <= to && (levelMask & mask) != 0;
+        }
+
+        /**
+         * @return <code>true</code> if every record of the block is in the
+         * given time range.
+         */
+        boolean within(long from, long to) {
+            return indexed && minMillis >= from && maxMillis <= to;
+        }
+    }
+
+    static File indexFile(File logFile) {
+        return new File(logFile.getPath() + INDEX_SUFFIX);
+    }
+
+    /**
+     * @return the blocks covering the whole log file, in file order.
+     */
+    static List<Block> blocks(File logFile, long fileLength) throws IOException {
+        List<Block> blocks = new ArrayList<Block>();
+        long covered = 0;
+
+        File indexFile = indexFile(logFile);
+        if (indexFile.isFile()) {
+            RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE * 256);
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    while (buffer.remaining() >= ENTRY_SIZE) {
+                        long offset = buffer.getLong();
+                        long length = buffer.getLong();
+                        long minMillis = buffer.getLong();
+                        long maxMillis = buffer.getLong();
+                        int levelMask = buffer.getInt();
+                        buffer.getInt();
+
+                        if (offset < covered || offset + length > fileLength) {
+                            // Stale index of a previous file with the same name
+                            continue;
+                        }
+                        if (offset > covered) {
+                            blocks.add(Block.unknown(covered, offset - covered));
+                        }
+                        blocks.add(new Block(offset, length, minMillis, maxMillis,
+                                levelMask, true));
+                        covered = offset + length;
+                    }
+                    buffer.compact();
+                }
+            } finally {
+                raf.close();
+            }
+        }
+
+        if (covered < fileLength) {
+            blocks.add(Block.unknown(covered, fileLength - covered));
+        }
+        return blocks;
+    }
+
+    /**
+     * @return the mask of the levels at or above the given one.
+     */
+    static int levelMask(Level minLevel) {
+        return -1 << levelBit(minLevel.intValue());
+    }
+
+    static int levelBit(int value) {
+        if (value >= Level.SEVERE.intValue()) {
+            return 6;
+        } else if (value >= Level.WARNING.intValue()) {
+            return 5;
+        } else if (value >= Level.INFO.intValue()) {
+            return 4;
+        } else if (value >= Level.CONFIG.intValue()) {
+            return 3;
+        } else if (value >= Level.FINE.intValue()) {
+            return 2;
+        } else if (value >= Level.FINER.intValue()) {
+            return 1;
+        }
+        return 0;
+    }
+}
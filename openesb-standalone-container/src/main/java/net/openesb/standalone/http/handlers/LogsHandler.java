@@ -0,0 +1,609 @@
+package net.openesb.standalone.http.handlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import javax.xml.bind.DatatypeConverter;
+import net.openesb.security.AuthenticationException;
+import net.openesb.security.SecurityProvider;
+import net.openesb.security.UsernamePasswordToken;
+import net.openesb.standalone.security.SessionTokens;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+
+/**
+ * Serves the log files written by the bootstrap <code>FileHandler</code>,
+ * without loading them in memory.
+ *
+ * <pre>
+ * GET /openesb/logs                          list the log files
+ * GET /openesb/logs/{file}?tail=100          last lines of a file
+ * GET /openesb/logs/{file}?from=..&amp;to=..&amp;level=WARNING&amp;logger=com.sun.jbi
+ * </pre>
+ *
+ * <p>Searches use the side index of the file, if any, to skip the blocks
+ * which cannot match the time range or the level. <code>from</code> and
+ * <code>to</code> are either milliseconds since the epoch or dates like
+ * <code>2015-03-10T12:22:16</code>. Records are recognized in the text
+ * format of <code>LogFormatter</code> and in the JSON lines of
+ * <code>JsonFormatter</code>.</p>
+ *
+ * <p>Requests are authenticated like those of the REST API, with Basic
+ * credentials or a bearer token from its <code>/login</code> endpoint.
+ * Compressed archives of rolled files are neither listed nor served.</p>
+ *
+ * @author OpenESB Community
+ */
+public class LogsHandler implements Handler<HttpHandler> {
+
+    private final File directory;
+    private final SecurityProvider securityProvider;
+    private final SessionTokens sessionTokens;
+
+    public LogsHandler(File directory, SecurityProvider securityProvider,
+            SessionTokens sessionTokens) {
+        this.directory = directory;
+        this.securityProvider = securityProvider;
+        this.sessionTokens = sessionTokens;
+    }
+
+    @Override
+    public HttpHandler getHandler() {
+        return new LocalLogsHandler(path(), directory, securityProvider, sessionTokens);
+    }
+
+    @Override
+    public String path() {
+        return "/openesb/logs";
+    }
+
+    static class LocalLogsHandler extends HttpHandler {
+
+        private static final ObjectMapper mapper = new ObjectMapper();
+
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private static final String BEARER = "Bearer ";
+
+        /**
+         * Suffix of the archives compressed by the <code>FileHandler</code>.
+         */
+        private static final String COMPRESSED_SUFFIX = ".gz";
+
+        private static final String[] DATE_PATTERNS = {
+            "yyyy-MM-dd'T'HH:mm:ss.SSSXXX",
+            "yyyy-MM-dd'T'HH:mm:ssXXX",
+            "yyyy-MM-dd'T'HH:mm:ss.SSSZ",
+            "yyyy-MM-dd'T'HH:mm:ssZ",
+            "yyyy-MM-dd'T'HH:mm:ss.SSS",
+            "yyyy-MM-dd'T'HH:mm:ss",
+            "yyyy-MM-dd"
+        };
+
+        private final String root;
+        private final File directory;
+        private final SecurityProvider securityProvider;
+        private final SessionTokens sessionTokens;
+
+        public LocalLogsHandler(String root, File directory, SecurityProvider securityProvider,
+                SessionTokens sessionTokens) {
+            this.root = root;
+            this.directory = directory;
+            this.securityProvider = securityProvider;
+            this.sessionTokens = sessionTokens;
+        }
+
+        @Override
+        public void service(Request request, Response response) throws Exception {
+            if (!authenticate(request)) {
+                response.setHeader("WWW-Authenticate", "Basic realm=\"OpenESB\"");
+                response.setStatus(HttpStatus.UNAUTHORIZED_401);
+                return;
+            }
+
+            String uri = request.getRequestURI();
+            String name = uri.length() > root.length() + 1
+                    ? uri.substring(root.length() + 1) : "";
+
+            if (name.length() == 0) {
+                list(response);
+                return;
+            }
+
+            if (name.indexOf('/') >= 0 || name.indexOf('\\') >= 0
+                    || name.startsWith(".") || name.endsWith(LogIndex.INDEX_SUFFIX)) {
+                response.setStatus(HttpStatus.FORBIDDEN_403);
+                return;
+            }
+
+            File file = new File(directory, name);
+            if (!file.isFile() || file.isHidden()) {
+                response.setStatus(HttpStatus.NOT_FOUND_404);
+                return;
+            }
+            if (name.endsWith(COMPRESSED_SUFFIX)) {
+                // Neither searchable nor text
+                response.setStatus(HttpStatus.BAD_REQUEST_400);
+                return;
+            }
+
+            try {
+                String tail = request.getParameter("tail");
+                if (tail != null) {
+                    tail(response, file, Integer.parseInt(tail));
+                } else {
+                    search(response, file,
+                            parseTime(request.getParameter("from"), Long.MIN_VALUE),
+                            parseTime(request.getParameter("to"), Long.MAX_VALUE),
+                            parseLevel(request.getParameter("level")),
+                            request.getParameter("logger"));
+                }
+            } catch (IllegalArgumentException iae) {
+                response.setStatus(HttpStatus.BAD_REQUEST_400);
+            } catch (ParseException pe) {
+                response.setStatus(HttpStatus.BAD_REQUEST_400);
+            }
+        }
+
+        private boolean authenticate(Request request) {
+            String username = "";
+            String password = "";
+
+            String authorization = request.getHeader("Authorization");
+            if (authorization != null
+                    && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+                return sessionTokens != null && sessionTokens.verify(
+                        authorization.substring(BEARER.length()).trim()) != null;
+            }
+            if (authorization != null && authorization.length() > "Basic ".length()) {
+                String usernamePassword = new String(DatatypeConverter.parseBase64Binary(
+                        authorization.substring("Basic ".length())), UTF8);
+                int colon = usernamePassword.indexOf(':');
+                if (colon >= 0) {
+                    username = usernamePassword.substring(0, colon);
+                    password = usernamePassword.substring(colon + 1);
+                }
+            }
+
+            try {
+                securityProvider.login(new UsernamePasswordToken(username, password));
+                return true;
+            } catch (AuthenticationException aex) {
+                return false;
+            }
+        }
+
+        private void list(Response response) throws IOException {
+            List<Map<String, Object>> files = new ArrayList<Map<String, Object>>();
+            File[] children = directory.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    if (!child.isFile() || child.isHidden()
+                            || child.getName().endsWith(LogIndex.INDEX_SUFFIX)
+                            || child.getName().endsWith(COMPRESSED_SUFFIX)) {
+                        continue;
+                    }
+                    Map<String, Object> info = new LinkedHashMap<String, Object>();
+                    info.put("name", child.getName());
+                    info.put("size", child.length());
+                    info.put("lastModified", child.lastModified());
+                    info.put("indexed", LogIndex.indexFile(child).isFile());
+                    files.add(info);
+                }
+            }
+
+            response.setStatus(HttpStatus.OK_200);
+            response.setContentType("application/json");
+            mapper.writeValue(response.getOutputStream(), files);
+        }
+
+        /**
+         * Stream the last <code>lines</code> lines of the file.
+         */
+        private void tail(Response response, File file, int lines) throws IOException {
+            if (lines < 0) {
+                throw new IllegalArgumentException("tail");
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                long length = trimmedLength(channel);
+                long start = tailStart(channel, length, lines);
+
+                response.setStatus(HttpStatus.OK_200);
+                response.setContentType("text/plain;charset=UTF-8");
+                response.setContentLengthLong(length - start);
+                copy(channel, start, length - start, response.getOutputStream());
+            } finally {
+                raf.close();
+            }
+        }
+
+        /**
+         * @return the position of the first of the last <code>lines</code>
+         * lines of the file, <code>0</code> if it has fewer lines.
+         */
+        static long tailStart(FileChannel channel, long length, int lines)
+                throws IOException {
+            if (lines == 0) {
+                return length;
+            }
+            int found = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long position = length;
+            while (position > 0) {
+                int size = (int) Math.min(buffer.capacity(), position);
+                position -= size;
+                buffer.clear();
+                buffer.limit(size);
+                readFully(channel, buffer, position);
+                for (int i = size - 1; i >= 0; i--) {
+                    // The newline ending the last line does not count
+                    if (buffer.get(i) == '\n' && position + i < length - 1
+                            && ++found == lines) {
+                        return position + i + 1;
+                    }
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return the length of the file without the trailing zero bytes of
+         * the segment mapped by a file handler in <code>mapped</code> mode,
+         * which are only truncated when the file is closed.
+         */
+        static long trimmedLength(FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long end = channel.size();
+            while (end > 0) {
+                long start = Math.max(0, end - buffer.capacity());
+                buffer.clear();
+                buffer.limit((int) (end - start));
+                readFully(channel, buffer, start);
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) != 0) {
+                        return start + i + 1;
+                    }
+                }
+                end = start;
+            }
+            return 0;
+        }
+
+        /**
+         * Stream the records matching the criteria, skipping the index
+         * blocks which cannot match.
+         */
+        private void search(Response response, File file, long from, long to,
+                Level minLevel, String logger) throws IOException {
+            RecordFilter filter = new RecordFilter(from, to, minLevel, logger);
+            int mask = LogIndex.levelMask(minLevel);
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                List<LogIndex.Block> blocks = LogIndex.blocks(file, trimmedLength(channel));
+
+                response.setStatus(HttpStatus.OK_200);
+                response.setContentType("text/plain;charset=UTF-8");
+                OutputStream out = response.getOutputStream();
+
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                for (LogIndex.Block block : blocks) {
+                    if (!block.mayMatch(from, to, mask)) {
+                        continue;
+                    }
+                    boolean checkTime = !block.within(from, to);
+                    if (!checkTime && !filter.filtersRecords()) {
+                        copy(channel, block.offset, block.length, out);
+                    } else {
+                        scan(channel, block, filter, checkTime, buffer, out);
+                    }
+                }
+            } finally {
+                raf.close();
+            }
+        }
+
+        /**
+         * Write the lines of the block belonging to matching records. Lines
+         * which do not start a record belong to the previous one.
+         */
+        private void scan(FileChannel channel, LogIndex.Block block, RecordFilter filter,
+                boolean checkTime, ByteBuffer buffer, OutputStream out) throws IOException {
+            long position = block.offset;
+            long end = block.offset + block.length;
+            boolean accepted = false;
+            boolean lineStart = true;
+
+            buffer.clear();
+            for (;;) {
+                int max = (int) Math.min(buffer.remaining(), end - position);
+                if (max > 0) {
+                    int limit = buffer.limit();
+                    buffer.limit(buffer.position() + max);
+                    int rd = channel.read(buffer, position);
+                    buffer.limit(limit);
+                    if (rd > 0) {
+                        position += rd;
+                    } else {
+                        end = position;
+                    }
+                }
+                buffer.flip();
+
+                byte[] array = buffer.array();
+                int from = buffer.position();
+                int limit = buffer.limit();
+                for (int i = from; i < limit; i++) {
+                    if (array[i] == '\n') {
+                        accepted = line(array, from, i + 1, lineStart, accepted,
+                                filter, checkTime, out);
+                        lineStart = true;
+                        from = i + 1;
+                    }
+                }
+
+                if (position >= end) {
+                    if (from < limit) {
+                        line(array, from, limit, lineStart, accepted, filter, checkTime, out);
+                    }
+                    return;
+                }
+
+                if (from == buffer.position() && limit == buffer.capacity()) {
+                    // Line longer than the buffer, write it by chunks
+                    accepted = line(array, from, limit, lineStart, accepted,
+                            filter, checkTime, out);
+                    lineStart = false;
+                    from = limit;
+                }
+                buffer.position(from);
+                buffer.compact();
+            }
+        }
+
+        private boolean line(byte[] array, int from, int to, boolean lineStart,
+                boolean accepted, RecordFilter filter, boolean checkTime,
+                OutputStream out) throws IOException {
+            if (lineStart && filter.isRecordStart(array, from, to)) {
+                accepted = filter.accept(array, from, to, checkTime);
+            }
+            if (accepted) {
+                out.write(array, from, to - from);
+            }
+            return accepted;
+        }
+
+        private static void copy(FileChannel channel, long position, long count,
+                OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long end = position + count;
+            while (position < end) {
+                long written = channel.transferTo(position, end - position, target);
+                if (written <= 0) {
+                    break;
+                }
+                position += written;
+            }
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer buffer,
+                long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int rd = channel.read(buffer, position);
+                if (rd < 0) {
+                    break;
+                }
+                position += rd;
+            }
+        }
+
+        private static long parseTime(String value, long defaultValue) throws ParseException {
+            if (value == null || value.length() == 0) {
+                return defaultValue;
+            }
+            boolean digits = true;
+            for (int i = 0; i < value.length() && digits; i++) {
+                digits = Character.isDigit(value.charAt(i));
+            }
+            if (digits) {
+                return Long.parseLong(value);
+            }
+            for (String pattern : DATE_PATTERNS) {
+                try {
+                    SimpleDateFormat format = new SimpleDateFormat(pattern);
+                    format.setLenient(false);
+                    return format.parse(value).getTime();
+                } catch (ParseException ignore) {
+                    // Try the next pattern
+                }
+            }
+            throw new ParseException(value, 0);
+        }
+
+        private static Level parseLevel(String value) {
+            if (value == null || value.length() == 0) {
+                return Level.ALL;
+            }
+            return Level.parse(value.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Decides whether a record matches the search criteria, from the first
+     * line of the record.
+     */
+    static class RecordFilter {
+
+        private static final byte[] TIMESTAMP_FIELD = "\"timestamp\":\"".getBytes();
+        private static final byte[] LEVEL_FIELD = "\"level\":\"".getBytes();
+        private static final byte[] LOGGER_FIELD = "\"logger\":\"".getBytes();
+
+        private final long from;
+        private final long to;
+        private final Level minLevel;
+        private final String logger;
+        private final SimpleDateFormat timestampFormat =
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+        /**
+         * RFC 3339 timestamp of the records written by <code>JsonFormatter</code>.
+         */
+        private final SimpleDateFormat jsonTimestampFormat =
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+        private final Map<String, Level> levels = new HashMap<String, Level>();
+
+        RecordFilter(long from, long to, Level minLevel, String logger) {
+            this.from = from;
+            this.to = to;
+            this.minLevel = minLevel;
+            this.logger = logger == null || logger.length() == 0 ? null : logger;
+        }
+
+        /**
+         * @return <code>true</code> if records have to be checked even when
+         * the time range of the block matches.
+         */
+        boolean filtersRecords() {
+            return minLevel != Level.ALL || logger != null;
+        }
+
+        /**
+         * @return <code>true</code> if the line starts with a timestamp, as
+         * written by <code>LogFormatter</code>, or is a JSON object.
+         */
+        boolean isRecordStart(byte[] line, int from, int to) {
+            if (to - from > 0 && line[from] == '{') {
+                return true;
+            }
+            return to - from > 19 && isDigit(line[from]) && isDigit(line[from + 3])
+                    && line[from + 4] == '-' && line[from + 10] == 'T';
+        }
+
+        boolean accept(byte[] line, int from, int to, boolean checkTime) {
+            String timestamp;
+            String level;
+            String loggerName;
+            if (line[from] == '{') {
+                timestamp = jsonField(line, from, to, TIMESTAMP_FIELD);
+                level = jsonField(line, from, to, LEVEL_FIELD);
+                loggerName = jsonField(line, from, to, LOGGER_FIELD);
+            } else {
+                // {timestamp} {level} [{logger}] ...
+                int space = indexOf(line, from, to, (byte) ' ');
+                timestamp = string(line, from, space);
+                int levelEnd = indexOf(line, space + 1, to, (byte) ' ');
+                level = string(line, space + 1, levelEnd);
+                loggerName = null;
+                if (levelEnd + 1 < to && line[levelEnd + 1] == '[') {
+                    loggerName = string(line, levelEnd + 2,
+                            indexOf(line, levelEnd + 2, to, (byte) ']'));
+                }
+            }
+
+            if (minLevel != Level.ALL) {
+                Level recordLevel = level(level);
+                if (recordLevel == null || recordLevel.intValue() < minLevel.intValue()) {
+                    return false;
+                }
+            }
+
+            if (logger != null && (loggerName == null || !(loggerName.equals(logger)
+                    || loggerName.startsWith(logger + ".")))) {
+                return false;
+            }
+
+            if (checkTime && timestamp != null) {
+                try {
+                    SimpleDateFormat format = line[from] == '{'
+                            ? jsonTimestampFormat : timestampFormat;
+                    long millis = format.parse(timestamp).getTime();
+                    return millis >= this.from && millis <= this.to;
+                } catch (ParseException pe) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Level level(String name) {
+            if (name == null) {
+                return null;
+            }
+            Level level = levels.get(name);
+            if (level == null && !levels.containsKey(name)) {
+                try {
+                    level = Level.parse(name);
+                } catch (IllegalArgumentException iae) {
+                    level = null;
+                }
+                levels.put(name, level);
+            }
+            return level;
+        }
+
+        private static String jsonField(byte[] line, int from, int to, byte[] field) {
+            int start = indexOf(line, from, to, field);
+            if (start < 0) {
+                return null;
+            }
+            start += field.length;
+            int end = indexOf(line, start, to, (byte) '"');
+            return string(line, start, end);
+        }
+
+        private static int indexOf(byte[] line, int from, int to, byte[] pattern) {
+            outer:
+            for (int i = from; i <= to - pattern.length; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (line[i + j] != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        private static int indexOf(byte[] line, int from, int to, byte b) {
+            for (int i = from; i < to; i++) {
+                if (line[i] == b) {
+                    return i;
+                }
+            }
+            return to;
+        }
+
+        private static String string(byte[] line, int from, int to) {
+            return new String(line, from, Math.max(0, to - from), UTF8_CHARSET);
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+    }
+}
@@ -0,0 +1,108 @@
+package net.openesb.standalone.http.handlers;
+
+import java.nio.charset.Charset;
+import net.openesb.standalone.http.grizzly.WorkerPoolMBean;
+import net.openesb.standalone.http.metrics.HttpMetrics;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+
+/**
+ * Metrics of the HTTP server in the Prometheus text format: per-route
+ * requests, latencies and bytes, worker pool and site cache.
+ *
+ * @author OpenESB Community
+ */
+public class MetricsHandler implements Handler<HttpHandler> {
+
+    private final HttpMetrics metrics;
+    private final WorkerPoolMBean workerPool;
+    private final SiteFileCacheMBean siteFileCache;
+
+    /**
+     * @param workerPool the worker pool, may be <code>null</code>
+     * @param siteFileCache the site cache, may be <code>null</code>
+     */
+    public MetricsHandler(HttpMetrics metrics, WorkerPoolMBean workerPool,
+            SiteFileCacheMBean siteFileCache) {
+        this.metrics = metrics;
+        this.workerPool = workerPool;
+        this.siteFileCache = siteFileCache;
+    }
+
+    @Override
+    public HttpHandler getHandler() {
+        return new LocalMetricsHandler(metrics, workerPool, siteFileCache);
+    }
+
+    @Override
+    public String path() {
+        return "/metrics";
+    }
+
+    static class LocalMetricsHandler extends HttpHandler {
+
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+
+        private final HttpMetrics metrics;
+        private final WorkerPoolMBean workerPool;
+        private final SiteFileCacheMBean siteFileCache;
+
+        LocalMetricsHandler(HttpMetrics metrics, WorkerPoolMBean workerPool,
+                SiteFileCacheMBean siteFileCache) {
+            this.metrics = metrics;
+            this.workerPool = workerPool;
+            this.siteFileCache = siteFileCache;
+        }
+
+        @Override
+        public void service(Request request, Response response) throws Exception {
+            StringBuilder sb = new StringBuilder(8192);
+            metrics.writePrometheus(sb);
+            if (workerPool != null) {
+                writeWorkerPool(sb);
+            }
+            if (siteFileCache != null) {
+                writeSiteFileCache(sb);
+            }
+
+            byte[] body = sb.toString().getBytes(UTF8);
+            response.setStatus(HttpStatus.OK_200);
+            response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+            response.setHeader("Cache-Control", "no-cache");
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+
+        private void writeWorkerPool(StringBuilder sb) {
+            gauge(sb, "openesb_http_workers_pool_size",
+                    "Threads of the HTTP worker pool.", workerPool.getPoolSize());
+            gauge(sb, "openesb_http_workers_active",
+                    "Threads of the HTTP worker pool processing a request.", workerPool.getActiveCount());
+            gauge(sb, "openesb_http_workers_queue_size",
+                    "Requests waiting for a worker thread.", workerPool.getQueueSize());
+            counter(sb, "openesb_http_workers_rejected_total",
+                    "Requests rejected because the worker queue was full.", workerPool.getRejectedCount());
+        }
+
+        private void writeSiteFileCache(StringBuilder sb) {
+            counter(sb, "openesb_http_site_cache_hits_total",
+                    "Plugin site files served from the cache.", siteFileCache.getHitCount());
+            counter(sb, "openesb_http_site_cache_misses_total",
+                    "Plugin site files resolved on the file system.", siteFileCache.getMissCount());
+            gauge(sb, "openesb_http_site_cache_bytes",
+                    "Bytes held by the plugin site cache.", siteFileCache.getWeight());
+        }
+
+        private static void gauge(StringBuilder sb, String name, String help, long value) {
+            HttpMetrics.header(sb, name, "gauge", help);
+            sb.append(name).append(' ').append(value).append('\n');
+        }
+
+        private static void counter(StringBuilder sb, String name, String help, long value) {
+            HttpMetrics.header(sb, name, "counter", help);
+            sb.append(name).append(' ').append(value).append('\n');
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package net.openesb.standalone.http.handlers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import org.glassfish.grizzly.http.util.HttpStatus;
+
+/**
+ * What a plugin site path resolves to: an error status, or the file to send
+ * and its pre-compressed variants, with everything needed to answer a request
+ * without touching the file system again.
+ *
+ * @author OpenESB Community
+ */
+final class SiteFile {
+
+    /**
+     * Approximate heap size of an entry, without its content.
+     */
+    static final int OVERHEAD = 256;
+
+    final HttpStatus status;
+    final File file;
+    final long lastModified;
+    final Variant identity;
+    final Variant br;
+    final Variant gz;
+
+    private SiteFile(HttpStatus status, File file, Variant identity, Variant br, Variant gz) {
+        this.status = status;
+        this.file = file;
+        this.lastModified = file != null ? file.lastModified() : 0;
+        this.identity = identity;
+        this.br = br;
+        this.gz = gz;
+    }
+
+    static SiteFile error(HttpStatus status) {
+        return new SiteFile(status, null, null, null, null);
+    }
+
+    /**
+     * @param maxContentSize files up to this size are read in direct buffers,
+     * <code>0</code> to never read them.
+     */
+    static SiteFile of(File file, int maxContentSize) throws IOException {
+        Variant identity = new Variant(file, null, maxContentSize);
+        return new SiteFile(HttpStatus.OK_200, file, identity,
+                variant(file, ".br", "br", maxContentSize),
+                variant(file, ".gz", "gzip", maxContentSize));
+    }
+
+    boolean hasVariants() {
+        return br != null || gz != null;
+    }
+
+    /**
+     * @return the number of bytes held by the entry.
+     */
+    long weight() {
+        return OVERHEAD + contentSize(identity) + contentSize(br) + contentSize(gz);
+    }
+
+    private static long contentSize(Variant variant) {
+        return variant == null || variant.content == null ? 0 : variant.content.capacity();
+    }
+
+    /**
+     * @return the pre-compressed variant of the file, or <code>null</code>
+     * if there is none or if it is older than the file.
+     */
+    private static Variant variant(File file, String suffix, String encoding,
+            int maxContentSize) throws IOException {
+        File variant = new File(file.getPath() + suffix);
+        if (variant.isFile() && variant.lastModified() >= file.lastModified()) {
+            return new Variant(variant, encoding, maxContentSize);
+        }
+        return null;
+    }
+
+    /**
+     * One representation of the file.
+     */
+    static final class Variant {
+
+        final File file;
+        final String encoding;
+        final long length;
+        final String etag;
+        /**
+         * The content of the file, or <code>null</code> if it is too large
+         * to be held in memory.
+         */
+        final ByteBuffer content;
+
+        Variant(File file, String encoding, int maxContentSize) throws IOException {
+            this.file = file;
+            this.encoding = encoding;
+            this.length = file.length();
+            this.etag = etag(length, file.lastModified(), encoding);
+            this.content = length <= maxContentSize ? read(file, (int) length) : null;
+        }
+
+        /**
+         * @return a view of the content, to be consumed by a single request.
+         */
+        ByteBuffer content(long offset, long count) {
+            ByteBuffer view = content.duplicate();
+            view.position((int) offset);
+            view.limit((int) (offset + count));
+            return view;
+        }
+
+        private static ByteBuffer read(File file, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+            FileChannel channel = new FileInputStream(file).getChannel();
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, buffer.position()) < 0) {
+                        // Truncated while reading: served from the file
+                        // until the watcher invalidates the entry
+                        return null;
+                    }
+                }
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException ignore) {
+                }
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+
+        private static String etag(long length, long lastModified, String encoding) {
+            StringBuilder sb = new StringBuilder(32).append('"')
+                    .append(Long.toHexString(lastModified))
+                    .append('-').append(Long.toHexString(length));
+            if (encoding != null) {
+                sb.append('-').append(encoding);
+            }
+            return sb.append('"').toString();
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package net.openesb.standalone.http.handlers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.openesb.standalone.LocalStringKeys;
+import net.openesb.standalone.http.HttpServer;
+import net.openesb.standalone.utils.I18NBundle;
+
+/**
+ * Bounded LRU cache of the plugin site files, by plugin name and site path.
+ *
+ * <p>Entries hold the outcome of the path resolution (status, file,
+ * pre-compressed variants and their validators) and, for files up to
+ * <code>maxFileSize</code> bytes, their content in direct buffers, out of
+ * the heap. The cache is bounded by the total size of its entries, the least
+ * recently used entries being evicted first.</p>
+ *
+ * <p>Sites are not expected to change once deployed, but a
+ * <code>WatchService</code> on the plugins directory drops all the entries
+ * of a plugin as soon as anything changes under its directory.</p>
+ *
+ * @author OpenESB Community
+ */
+public class SiteFileCache implements SiteFileCacheMBean {
+
+    private static final Logger LOG
+            = Logger.getLogger(HttpServer.class.getPackage().getName());
+
+    private final File pluginsDirectory;
+    private final long maxWeight;
+    private final int maxFileSize;
+
+    private final LinkedHashMap<String, SiteFile> entries =
+            new LinkedHashMap<String, SiteFile>(64, 0.75f, true);
+    private long weight;
+    /**
+     * Incremented on every invalidation, so that an entry resolved before an
+     * invalidation is not cached after it.
+     */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Map<WatchKey, Path> watched = new ConcurrentHashMap<WatchKey, Path>();
+    private volatile WatchService watchService;
+
+    /**
+     * @param pluginsDirectory the directory of the plugins
+     * @param maxWeight maximum number of bytes held by the cache
+     * @param maxFileSize maximum size of a file to hold its content
+     */
+    public SiteFileCache(File pluginsDirectory, long maxWeight, int maxFileSize) {
+        this.pluginsDirectory = pluginsDirectory;
+        this.maxWeight = maxWeight;
+        this.maxFileSize = (int) Math.min(maxFileSize, maxWeight / 4);
+    }
+
+    /**
+     * @return the maximum size of a file to read its content, 0 when entries
+     * are not cached as the content would be read again on every request.
+     */
+    int getMaxFileSize() {
+        return watchService == null ? 0 : maxFileSize;
+    }
+
+    /**
+     * @return the cached entry, or <code>null</code>.
+     */
+    SiteFile get(String key) {
+        SiteFile entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * @return the generation to give to {@link #put(String, SiteFile, long)}
+     * once the entry is resolved.
+     */
+    long generation() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    void put(String key, SiteFile entry, long resolvedGeneration) {
+        if (watchService == null) {
+            // Without invalidation, changes would never be seen
+            return;
+        }
+        synchronized (entries) {
+            if (resolvedGeneration != generation) {
+                return;
+            }
+            SiteFile previous = entries.put(key, entry);
+            if (previous != null) {
+                weight -= previous.weight();
+            }
+            weight += entry.weight();
+
+            Iterator<SiteFile> eldest = entries.values().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().weight();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drop the entries of a plugin.
+     */
+    void invalidate(String pluginName) {
+        String prefix = pluginName + '/';
+        synchronized (entries) {
+            generation++;
+            Iterator<Map.Entry<String, SiteFile>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, SiteFile> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    weight -= entry.getValue().weight();
+                    it.remove();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (entries) {
+            generation++;
+            invalidations.addAndGet(entries.size());
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    /**
+     * Start watching the plugins directory. The cache stays empty if the
+     * directory can not be watched.
+     */
+    public synchronized void start() {
+        if (watchService != null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            register(watchService, pluginsDirectory.toPath());
+        } catch (IOException ex) {
+            I18NBundle.getBundle().log(LOG, Level.WARNING, ex,
+                    LocalStringKeys.HTTP_SITE_CACHE_WATCH_FAILED, pluginsDirectory);
+            stopWatching();
+            return;
+        }
+
+        Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "openesb-site-cache-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    public synchronized void shutdown() {
+        stopWatching();
+        clear();
+    }
+
+    private void stopWatching() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignore) {
+            }
+            watchService = null;
+        }
+        watched.clear();
+    }
+
+    private void watch() {
+        WatchService service = watchService;
+        Path root = pluginsDirectory.toPath();
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path directory = watched.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                        clear();
+                        continue;
+                    }
+                    Path path = directory.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                            && path.toFile().isDirectory()) {
+                        register(service, path);
+                    }
+                    Path relative = root.relativize(path);
+                    if (relative.getNameCount() > 0) {
+                        invalidate(relative.getName(0).toString());
+                    }
+                }
+                if (!key.reset()) {
+                    watched.remove(key);
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException cwse) {
+            // Shutdown
+        } catch (IOException ex) {
+            I18NBundle.getBundle().log(LOG, Level.WARNING, ex,
+                    LocalStringKeys.HTTP_SITE_CACHE_WATCH_FAILED, pluginsDirectory);
+            synchronized (this) {
+                stopWatching();
+            }
+            clear();
+        }
+    }
+
+    /**
+     * Watch the directory and all its sub-directories.
+     */
+    private void register(WatchService service, Path directory) throws IOException {
+        WatchKey key = directory.register(service,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watched.put(key, directory);
+
+        File[] children = directory.toFile().listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    register(service, child.toPath());
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long h = hits.get();
+        long lookups = h + misses.get();
+        return lookups == 0 ? 0 : (double) h / lookups;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public long getWeight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+}
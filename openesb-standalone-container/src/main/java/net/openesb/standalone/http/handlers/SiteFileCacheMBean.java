@@ -0,0 +1,42 @@
+package net.openesb.standalone.http.handlers;
+
+/**
+ * Efficiency of the cache of the plugin site files.
+ *
+ * @author OpenESB Community
+ */
+public interface SiteFileCacheMBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * @return hits divided by lookups, between <code>0</code> and
+     * <code>1</code>.
+     */
+    double getHitRatio();
+
+    long getEvictionCount();
+
+    /**
+     * @return the number of entries dropped because their plugin has changed
+     * on disk.
+     */
+    long getInvalidationCount();
+
+    int getSize();
+
+    /**
+     * @return the number of bytes held by the cache, mostly file contents in
+     * direct buffers.
+     */
+    long getWeight();
+
+    long getMaxWeight();
+
+    /**
+     * Drop every entry.
+     */
+    void clear();
+}
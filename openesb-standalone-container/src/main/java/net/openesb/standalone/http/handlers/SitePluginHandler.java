@@ -3,7 +3,10 @@ package net.openesb.standalone.http.handlers;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import net.openesb.standalone.env.Environment;
+import org.glassfish.grizzly.http.Method;
 import org.glassfish.grizzly.http.io.OutputBuffer;
 import org.glassfish.grizzly.http.server.HttpHandler;
 import org.glassfish.grizzly.http.server.Request;
@@ -12,6 +15,17 @@ import org.glassfish.grizzly.http.util.HttpStatus;
 import org.glassfish.grizzly.http.util.MimeType;
 
 /**
+ * Serves the <code>_site</code> directory of the plugins.
+ *
+ * <p>Files are sent with <code>sendfile</code> when the listener allows
+ * it and the connection is not secure, with validators (<code>ETag</code>,
+ * <code>Last-Modified</code>) for conditional requests and support for single
+ * byte ranges. A pre-compressed <code>.br</code> or <code>.gz</code> file
+ * next to the requested one is sent instead, through a copy, when the client
+ * accepts the encoding and the variant is not older than the file.</p>
+ *
+ * <p>Resolved paths, and the content of small files, can be kept in a
+ * {@link SiteFileCache}.</p>
  *
  * @author David BRASSELY (brasseld at gmail.com)
  * @author OpenESB Community
@@ -19,14 +33,34 @@ import org.glassfish.grizzly.http.util.MimeType;
 public class SitePluginHandler implements Handler<HttpHandler> {
 
     private final Environment environment;
+    private final int maxAge;
+    private final SiteFileCache cache;
+    private final boolean sendFileEnabled;
 
     public SitePluginHandler(Environment environment) {
+        this(environment, 0, null, false);
+    }
+
+    /**
+     * @param maxAge how long, in seconds, clients may use the files without
+     * revalidating them. With <code>0</code>, they revalidate them on every
+     * use, which costs a <code>304</code> at most.
+     * @param cache the cache of the site files, <code>null</code> to resolve
+     * and read them on every request.
+     * @param sendFileEnabled whether the listener serving the files has
+     * <code>sendfile</code> enabled.
+     */
+    public SitePluginHandler(Environment environment, int maxAge, SiteFileCache cache,
+            boolean sendFileEnabled) {
         this.environment = environment;
+        this.maxAge = maxAge;
+        this.cache = cache;
+        this.sendFileEnabled = sendFileEnabled;
     }
 
     @Override
     public HttpHandler getHandler() {
-        return new LocalPluginHandler(path(), environment);
+        return new LocalPluginHandler(path(), environment, maxAge, cache, sendFileEnabled);
     }
 
     @Override
@@ -36,12 +70,21 @@ public class SitePluginHandler implements Handler<HttpHandler> {
 
     static class LocalPluginHandler extends HttpHandler {
 
+        static final long[] UNSATISFIABLE = new long[0];
+
         private final String root;
         private final Environment environment;
+        private final int maxAge;
+        private final SiteFileCache cache;
+        private final boolean sendFileEnabled;
 
-        public LocalPluginHandler(String root, Environment environment) {
+        public LocalPluginHandler(String root, Environment environment, int maxAge,
+                SiteFileCache cache, boolean sendFileEnabled) {
             this.root = root;
             this.environment = environment;
+            this.maxAge = maxAge;
+            this.cache = cache;
+            this.sendFileEnabled = sendFileEnabled;
         }
 
         @Override
@@ -64,6 +107,29 @@ public class SitePluginHandler implements Handler<HttpHandler> {
                 sitePath = "/index.html";
             }
 
+            SiteFile siteFile;
+            if (cache != null) {
+                String key = pluginName + '/' + sitePath;
+                siteFile = cache.get(key);
+                if (siteFile == null) {
+                    long generation = cache.generation();
+                    siteFile = resolve(pluginName, sitePath, cache.getMaxFileSize());
+                    cache.put(key, siteFile, generation);
+                }
+            } else {
+                siteFile = resolve(pluginName, sitePath, 0);
+            }
+
+            if (siteFile.status != HttpStatus.OK_200) {
+                response.setStatus(siteFile.status);
+                return;
+            }
+
+            sendFile(request, response, siteFile);
+        }
+
+        private SiteFile resolve(String pluginName, String sitePath, int maxContentSize)
+                throws IOException {
             // Convert file separators.
             sitePath = sitePath.replace('/', File.separatorChar);
 
@@ -71,71 +137,273 @@ public class SitePluginHandler implements Handler<HttpHandler> {
             File siteFile = new File(new File(environment.pluginsFile(), pluginName), "_site");
             File file = new File(siteFile, sitePath);
             if (!file.exists() || file.isHidden()) {
-                response.setStatus(HttpStatus.NOT_FOUND_404);
-                return;
+                return SiteFile.error(HttpStatus.NOT_FOUND_404);
             }
             if (!file.isFile()) {
                 // If it's not a dir, we send a 403
                 if (!file.isDirectory()) {
-                    response.setStatus(HttpStatus.FORBIDDEN_403);
-                    return;
+                    return SiteFile.error(HttpStatus.FORBIDDEN_403);
                 }
                 // We don't serve dir but if index.html exists in dir we should serve it
                 file = new File(file, "index.html");
                 if (!file.exists() || file.isHidden() || !file.isFile()) {
-                    response.setStatus(HttpStatus.FORBIDDEN_403);
-                    return;
+                    return SiteFile.error(HttpStatus.FORBIDDEN_403);
                 }
             }
             if (!file.getAbsolutePath().startsWith(siteFile.getAbsolutePath())) {
-                response.setStatus(HttpStatus.FORBIDDEN_403);
-                return;
+                return SiteFile.error(HttpStatus.FORBIDDEN_403);
             }
 
-            sendFile(response, file);
+            return SiteFile.of(file, maxContentSize);
         }
 
-        private void sendFile(final Response response, final File file)
-                throws IOException {
-            final String path = file.getPath();
-            final FileInputStream fis = new FileInputStream(file);
+        private void sendFile(final Request request, final Response response,
+                final SiteFile siteFile) throws IOException {
+            SiteFile.Variant content = siteFile.identity;
+            if (siteFile.hasVariants()) {
+                response.setHeader("Vary", "Accept-Encoding");
+                String acceptEncoding = request.getHeader("Accept-Encoding");
+                if (siteFile.br != null && accepts(acceptEncoding, "br")) {
+                    content = siteFile.br;
+                } else if (siteFile.gz != null && accepts(acceptEncoding, "gzip")) {
+                    content = siteFile.gz;
+                }
+            }
 
-            try {
-                response.setStatus(HttpStatus.OK_200);
-                String substr;
-                int dot = path.lastIndexOf('.');
-                if (dot < 0) {
-                    substr = file.toString();
-                    dot = substr.lastIndexOf('.');
-                } else {
-                    substr = path;
+            final long length = content.length;
+            final long lastModified = siteFile.lastModified;
+            final String etag = content.etag;
+
+            response.setHeader("ETag", etag);
+            response.setDateHeader("Last-Modified", lastModified);
+            response.setHeader("Cache-Control", maxAge > 0
+                    ? "public, max-age=" + maxAge
+                    : "no-cache");
+            response.setHeader("Accept-Ranges", "bytes");
+            setContentType(response, siteFile.file);
+
+            if (notModified(request, etag, lastModified)) {
+                response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                return;
+            }
+
+            if (content.encoding != null) {
+                response.setHeader("Content-Encoding", content.encoding);
+            }
+
+            long offset = 0;
+            long count = length;
+            String range = request.getHeader("Range");
+            if (range != null && ifRange(request, etag, lastModified)) {
+                long[] bounds = parseRange(range, length);
+                if (bounds == UNSATISFIABLE) {
+                    response.setStatus(HttpStatus.REQUEST_RANGE_NOT_SATISFIABLE_416);
+                    response.setHeader("Content-Range", "bytes */" + length);
+                    response.setContentLengthLong(0);
+                    return;
                 }
-                if (dot > 0) {
-                    String ext = substr.substring(dot + 1);
-                    String ct = MimeType.get(ext);
-                    if (ct != null) {
-                        response.setContentType(ct);
-                    }
-                } else {
-                    response.setContentType(MimeType.get("html"));
+                if (bounds != null) {
+                    offset = bounds[0];
+                    count = bounds[1] - bounds[0] + 1;
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT_206);
+                    response.setHeader("Content-Range",
+                            "bytes " + bounds[0] + "-" + bounds[1] + "/" + length);
                 }
+            }
+            if (offset == 0 && count == length) {
+                response.setStatus(HttpStatus.OK_200);
+            }
+            response.setContentLengthLong(count);
 
-                final long length = file.length();
-                response.setContentLengthLong(length);
+            if (Method.HEAD.equals(request.getMethod()) || count == 0) {
+                return;
+            }
 
-                final OutputBuffer outputBuffer = response.getOutputBuffer();
+            final OutputBuffer outputBuffer = response.getOutputBuffer();
+            if (content.content != null) {
+                // Cached, written straight from the direct buffer
+                outputBuffer.writeByteBuffer(content.content(offset, count));
+                return;
+            }
+            // sendfile is not available for secure connections, and Grizzly
+            // resets the Content-Encoding of the files it sends to identity
+            if (sendFileEnabled && content.encoding == null && !request.isSecure()) {
+                // Transferred from the file to the socket by the kernel, the
+                // response is suspended until the transfer completes.
+                outputBuffer.sendfile(content.file, offset, count, null);
+                return;
+            }
 
-                byte b[] = new byte[8192];
-                int rd;
-                while ((rd = fis.read(b)) > 0) {
-                    outputBuffer.write(b, 0, rd);
+            final FileChannel channel = new FileInputStream(content.file).getChannel();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, 65536));
+                long position = offset;
+                long remaining = count;
+                while (remaining > 0) {
+                    buffer.clear();
+                    if (remaining < buffer.capacity()) {
+                        buffer.limit((int) remaining);
+                    }
+                    int rd = channel.read(buffer, position);
+                    if (rd < 0) {
+                        break;
+                    }
+                    outputBuffer.write(buffer.array(), 0, rd);
+                    position += rd;
+                    remaining -= rd;
                 }
             } finally {
                 try {
-                    fis.close();
+                    channel.close();
                 } catch (IOException ignore) {
                 }
             }
         }
+
+        private void setContentType(final Response response, final File file) {
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                String ct = MimeType.get(name.substring(dot + 1));
+                if (ct != null) {
+                    response.setContentType(ct);
+                }
+            } else {
+                response.setContentType(MimeType.get("html"));
+            }
+        }
+
+        /**
+         * @return whether the <code>Accept-Encoding</code> header accepts the
+         * coding with a non-zero quality.
+         */
+        static boolean accepts(String acceptEncoding, String coding) {
+            if (acceptEncoding == null) {
+                return false;
+            }
+            for (String token : acceptEncoding.split(",")) {
+                String[] params = token.split(";");
+                if (!params[0].trim().equalsIgnoreCase(coding)) {
+                    continue;
+                }
+                for (int i = 1; i < params.length; i++) {
+                    String param = params[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            return Float.parseFloat(param.substring(2)) > 0;
+                        } catch (NumberFormatException nfe) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * <code>If-None-Match</code> takes precedence over
+         * <code>If-Modified-Since</code>, as required by RFC 7232.
+         */
+        private static boolean notModified(Request request, String etag, long lastModified) {
+            String ifNoneMatch = request.getHeader("If-None-Match");
+            if (ifNoneMatch != null) {
+                return matches(ifNoneMatch, etag);
+            }
+            long ifModifiedSince = dateHeader(request, "If-Modified-Since");
+            return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+        }
+
+        /**
+         * A range is only honored if the representation has not changed since
+         * the date or entity tag of the <code>If-Range</code> header.
+         */
+        private static boolean ifRange(Request request, String etag, long lastModified) {
+            String ifRange = request.getHeader("If-Range");
+            if (ifRange == null) {
+                return true;
+            }
+            if (ifRange.trim().startsWith("\"") || ifRange.trim().startsWith("W/")) {
+                return ifRange.trim().equals(etag);
+            }
+            long date = dateHeader(request, "If-Range");
+            return date != -1 && lastModified / 1000 == date / 1000;
+        }
+
+        private static boolean matches(String header, String etag) {
+            for (String tag : header.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static long dateHeader(Request request, String name) {
+            try {
+                return request.getDateHeader(name);
+            } catch (IllegalArgumentException iae) {
+                return -1;
+            }
+        }
+
+        /**
+         * Parse a single byte range: <code>bytes=first-last</code>,
+         * <code>bytes=first-</code> or <code>bytes=-suffixLength</code>.
+         *
+         * @return the first and last (inclusive) positions of the range,
+         * <code>null</code> if the header is ignored and the whole file
+         * should be sent, or {@link #UNSATISFIABLE}.
+         */
+        static long[] parseRange(String range, long length) {
+            range = range.trim();
+            if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+                // Multiple ranges are not supported, send the whole file
+                return null;
+            }
+            String spec = range.substring("bytes=".length()).trim();
+            int dash = spec.indexOf('-');
+            if (dash == -1) {
+                return null;
+            }
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.length() == 0) {
+                    if (last.length() == 0) {
+                        return null;
+                    }
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) {
+                        return UNSATISFIABLE;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = length - 1;
+                    if (last.length() > 0) {
+                        long lastPosition = Long.parseLong(last);
+                        if (lastPosition < start) {
+                            // Invalid range, ignored
+                            return null;
+                        }
+                        end = Math.min(lastPosition, end);
+                    }
+                }
+                if (start >= length) {
+                    return UNSATISFIABLE;
+                }
+                return new long[]{start, end};
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
     }
 }
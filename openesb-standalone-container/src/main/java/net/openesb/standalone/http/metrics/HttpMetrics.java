@@ -0,0 +1,283 @@
+package net.openesb.standalone.http.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.ConnectionProbe;
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.attributes.Attribute;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServerFilter;
+import org.glassfish.grizzly.http.server.HttpServerProbe;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+
+/**
+ * Per-route metrics of the HTTP server, recorded by Grizzly probes.
+ *
+ * <p>The route of a request is the mapping of the handler serving it, set by
+ * the wrapper returned by {@link #wrap(HttpHandler, String)}: requests not
+ * reaching a wrapped handler are accounted to the <code>other</code> route.
+ * The latency goes from the reception of the request headers to the
+ * completion of the response, asynchronous responses included. Bytes are
+ * counted on the connection as read and written by the transport, headers
+ * included: bytes written after the completion of a response are accounted
+ * to the next request of the connection.</p>
+ *
+ * <p>The state of the request in progress is held by its connection and
+ * reused by the following requests, so that recording does not allocate.</p>
+ *
+ * @author OpenESB Community
+ */
+public class HttpMetrics {
+
+    public static final String OTHER_ROUTE = "other";
+
+    private static final int MIN_LATENCY_EXPONENT = 8;
+    private static final int MAX_LATENCY_EXPONENT = 25;
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<String, RouteMetrics>();
+    private final RouteMetrics other = new RouteMetrics(OTHER_ROUTE);
+
+    private final Attribute<ConnectionMetrics> connectionMetrics =
+            Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(
+                    HttpMetrics.class.getName() + ".connection");
+
+    public HttpMetrics() {
+        routes.put(OTHER_ROUTE, other);
+    }
+
+    /**
+     * Install the probes on the listener and on its transport.
+     */
+    public void register(NetworkListener listener,
+            org.glassfish.grizzly.http.server.HttpServer server) {
+        server.getServerConfiguration().getMonitoringConfig().getWebServerConfig()
+                .addProbes(new RequestProbe());
+        listener.getTransport().getConnectionMonitoringConfig()
+                .addProbes(new BytesProbe());
+    }
+
+    /**
+     * @return the handler accounting the requests it serves to the route.
+     */
+    public HttpHandler wrap(HttpHandler handler, String route) {
+        return new RouteHttpHandler(handler, route(route));
+    }
+
+    /**
+     * @return the metrics of the route, created if needed.
+     */
+    public RouteMetrics route(String route) {
+        RouteMetrics metrics = routes.get(route);
+        if (metrics == null) {
+            synchronized (routes) {
+                metrics = routes.get(route);
+                if (metrics == null) {
+                    metrics = new RouteMetrics(route);
+                    routes.put(route, metrics);
+                }
+            }
+        }
+        return metrics;
+    }
+
+    public Collection<RouteMetrics> getRoutes() {
+        List<RouteMetrics> sorted = new ArrayList<RouteMetrics>(routes.values());
+        Collections.sort(sorted, new Comparator<RouteMetrics>() {
+            @Override
+            public int compare(RouteMetrics r1, RouteMetrics r2) {
+                return r1.getRoute().compareTo(r2.getRoute());
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Append the metrics in the Prometheus text format.
+     */
+    public void writePrometheus(StringBuilder sb) {
+        Collection<RouteMetrics> all = getRoutes();
+
+        header(sb, "openesb_http_requests_total", "counter",
+                "Requests served, by route and status class.");
+        for (RouteMetrics route : all) {
+            for (int i = 0; i < RouteMetrics.STATUS_CLASSES.length; i++) {
+                sb.append("openesb_http_requests_total{route=\"").append(escape(route.getRoute()))
+                        .append("\",status=\"").append(RouteMetrics.STATUS_CLASSES[i])
+                        .append("\"} ").append(route.statusCount(i)).append('\n');
+            }
+        }
+
+        // Buckets from 256 microseconds to 33 seconds, doubling: rates and
+        // quantiles over a time window are computed by the server scraping
+        header(sb, "openesb_http_request_duration_seconds", "histogram",
+                "Time from the reception of the request to the completion of the response.");
+        for (RouteMetrics route : all) {
+            String name = escape(route.getRoute());
+            LatencyHistogram latency = route.latency();
+            long[] cumulativeCounts = latency.getCumulativeCounts(
+                    MIN_LATENCY_EXPONENT, MAX_LATENCY_EXPONENT);
+            for (int e = MIN_LATENCY_EXPONENT; e <= MAX_LATENCY_EXPONENT; e++) {
+                sb.append("openesb_http_request_duration_seconds_bucket{route=\"").append(name)
+                        .append("\",le=\"").append(seconds(1L << e)).append("\"} ")
+                        .append(cumulativeCounts[e - MIN_LATENCY_EXPONENT]).append('\n');
+            }
+            long count = cumulativeCounts[cumulativeCounts.length - 1];
+            sb.append("openesb_http_request_duration_seconds_bucket{route=\"").append(name)
+                    .append("\",le=\"+Inf\"} ").append(count).append('\n');
+            sb.append("openesb_http_request_duration_seconds_sum{route=\"").append(name)
+                    .append("\"} ").append(seconds(latency.getSum())).append('\n');
+            sb.append("openesb_http_request_duration_seconds_count{route=\"").append(name)
+                    .append("\"} ").append(count).append('\n');
+        }
+
+        header(sb, "openesb_http_received_bytes_total", "counter",
+                "Bytes read from the connections, headers included.");
+        for (RouteMetrics route : all) {
+            sb.append("openesb_http_received_bytes_total{route=\"").append(escape(route.getRoute()))
+                    .append("\"} ").append(route.getBytesIn()).append('\n');
+        }
+
+        header(sb, "openesb_http_sent_bytes_total", "counter",
+                "Bytes written to the connections, headers included.");
+        for (RouteMetrics route : all) {
+            sb.append("openesb_http_sent_bytes_total{route=\"").append(escape(route.getRoute()))
+                    .append("\"} ").append(route.getBytesOut()).append('\n');
+        }
+    }
+
+    /**
+     * Append the <code>HELP</code> and <code>TYPE</code> lines of a metric.
+     */
+    public static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1000000.0);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private ConnectionMetrics connectionMetrics(Connection<?> connection) {
+        ConnectionMetrics metrics = connectionMetrics.get(connection);
+        if (metrics == null) {
+            metrics = new ConnectionMetrics();
+            connectionMetrics.set(connection, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * The request in progress on a connection.
+     */
+    private static final class ConnectionMetrics {
+
+        private volatile long start;
+        private volatile RouteMetrics route;
+        private volatile long bytesIn;
+        private volatile long bytesOut;
+        private long accountedIn;
+        private long accountedOut;
+    }
+
+    /**
+     * The probe interfaces of Grizzly take raw <code>Connection</code>s.
+     */
+    private final class RequestProbe extends HttpServerProbe.Adapter {
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void onRequestReceiveEvent(HttpServerFilter filter, Connection connection,
+                Request request) {
+            ConnectionMetrics metrics = connectionMetrics(connection);
+            metrics.start = System.nanoTime();
+            metrics.route = other;
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void onRequestCompleteEvent(HttpServerFilter filter, Connection connection,
+                Response response) {
+            ConnectionMetrics metrics = connectionMetrics.get(connection);
+            if (metrics == null || metrics.route == null) {
+                return;
+            }
+            long in = metrics.bytesIn;
+            long out = metrics.bytesOut;
+            metrics.route.record(System.nanoTime() - metrics.start, response.getStatus(),
+                    in - metrics.accountedIn, out - metrics.accountedOut);
+            metrics.accountedIn = in;
+            metrics.accountedOut = out;
+            metrics.route = null;
+        }
+    }
+
+    /**
+     * The probe interfaces of Grizzly take raw <code>Connection</code>s.
+     */
+    private final class BytesProbe extends ConnectionProbe.Adapter {
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void onReadEvent(Connection connection, Buffer data, int size) {
+            if (size > 0) {
+                connectionMetrics(connection).bytesIn += size;
+            }
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void onWriteEvent(Connection connection, Buffer data, long size) {
+            if (size > 0) {
+                connectionMetrics(connection).bytesOut += size;
+            }
+        }
+    }
+
+    /**
+     * Sets the route of the requests it serves.
+     */
+    private final class RouteHttpHandler extends HttpHandler {
+
+        private final HttpHandler delegate;
+        private final RouteMetrics route;
+
+        RouteHttpHandler(HttpHandler delegate, RouteMetrics route) {
+            super(delegate.getName());
+            this.delegate = delegate;
+            this.route = route;
+        }
+
+        @Override
+        public void service(Request request, Response response) throws Exception {
+            ConnectionMetrics metrics = connectionMetrics.get(request.getContext().getConnection());
+            if (metrics != null) {
+                metrics.route = route;
+            }
+            delegate.service(request, response);
+        }
+
+        @Override
+        public void start() {
+            delegate.start();
+        }
+
+        @Override
+        public void destroy() {
+            delegate.destroy();
+        }
+    }
+}
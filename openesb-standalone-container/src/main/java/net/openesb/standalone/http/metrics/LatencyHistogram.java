@@ -0,0 +1,142 @@
+package net.openesb.standalone.http.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies, in microseconds, with a relative
+ * precision of 1/16 (about 6%) over the whole range.
+ *
+ * <p>Like an HDR histogram, buckets are log-linear: values below 16 have
+ * their own bucket, then each power of two is divided in 16 buckets of the
+ * same width. Recording a value computes its bucket with a few shifts and
+ * increments a counter: it neither locks nor allocates.</p>
+ *
+ * @author OpenESB Community
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Values up to 2^40 microseconds, about 12 days, larger ones are recorded
+     * in the last bucket.
+     */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS =
+            SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param micros the latency, in microseconds
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts.incrementAndGet(index(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long current;
+        while ((current = max.get()) < micros && !max.compareAndSet(current, micros)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of the recorded latencies, in microseconds.
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    /**
+     * @param quantile between <code>0</code> and <code>1</code>
+     * @return the upper bound of the bucket of the quantile, in
+     * microseconds, or <code>0</code> if nothing has been recorded.
+     */
+    public long getValueAtQuantile(double quantile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long cumulated = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulated += counts.get(i);
+            if (cumulated >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        // Counters are not read atomically
+        return max.get();
+    }
+
+    /**
+     * Fold the buckets to powers of two, for an export as a coarse
+     * cumulative histogram.
+     *
+     * @return the number of recorded values below <code>2^e</code>
+     * microseconds, for each exponent <code>e</code> from
+     * <code>minExponent</code> to <code>maxExponent</code>, followed by the
+     * number of recorded values, read in a single pass.
+     */
+    public long[] getCumulativeCounts(int minExponent, int maxExponent) {
+        long[] cumulativeCounts = new long[maxExponent - minExponent + 2];
+        long cumulated = 0;
+        int bucket = 0;
+        for (int e = minExponent; e <= maxExponent; e++) {
+            // Powers of two start a bucket
+            int limit = index(1L << e);
+            for (; bucket < limit; bucket++) {
+                cumulated += counts.get(bucket);
+            }
+            cumulativeCounts[e - minExponent] = cumulated;
+        }
+        for (; bucket < BUCKETS; bucket++) {
+            cumulated += counts.get(bucket);
+        }
+        cumulativeCounts[cumulativeCounts.length - 1] = cumulated;
+        return cumulativeCounts;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
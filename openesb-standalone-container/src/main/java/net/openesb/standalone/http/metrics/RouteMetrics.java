@@ -0,0 +1,126 @@
+package net.openesb.standalone.http.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency, status classes and bytes of the requests of one route.
+ *
+ * @author OpenESB Community
+ */
+public final class RouteMetrics implements RouteMetricsMBean {
+
+    /**
+     * Status classes, by first digit of the status code.
+     */
+    static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final String route;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLongArray statuses = new AtomicLongArray(STATUS_CLASSES.length);
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    RouteMetrics(String route) {
+        this.route = route;
+    }
+
+    void record(long nanos, int status, long in, long out) {
+        latency.record(nanos / 1000);
+        int statusClass = status / 100 - 1;
+        if (statusClass < 0 || statusClass >= STATUS_CLASSES.length) {
+            // Not a valid status: the request could not be answered
+            statusClass = 4;
+        }
+        statuses.incrementAndGet(statusClass);
+        if (in > 0) {
+            bytesIn.addAndGet(in);
+        }
+        if (out > 0) {
+            bytesOut.addAndGet(out);
+        }
+    }
+
+    LatencyHistogram latency() {
+        return latency;
+    }
+
+    long statusCount(int statusClass) {
+        return statuses.get(statusClass);
+    }
+
+    @Override
+    public String getRoute() {
+        return route;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getInformationalCount() {
+        return statuses.get(0);
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return statuses.get(1);
+    }
+
+    @Override
+    public long getRedirectionCount() {
+        return statuses.get(2);
+    }
+
+    @Override
+    public long getClientErrorCount() {
+        return statuses.get(3);
+    }
+
+    @Override
+    public long getServerErrorCount() {
+        return statuses.get(4);
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    @Override
+    public long getMeanLatency() {
+        return latency.getMean();
+    }
+
+    @Override
+    public long getMaxLatency() {
+        return latency.getMax();
+    }
+
+    @Override
+    public long getLatency50thPercentile() {
+        return latency.getValueAtQuantile(0.5);
+    }
+
+    @Override
+    public long getLatency90thPercentile() {
+        return latency.getValueAtQuantile(0.9);
+    }
+
+    @Override
+    public long getLatency99thPercentile() {
+        return latency.getValueAtQuantile(0.99);
+    }
+
+    @Override
+    public long getLatency999thPercentile() {
+        return latency.getValueAtQuantile(0.999);
+    }
+}
@@ -0,0 +1,49 @@
+package net.openesb.standalone.http.metrics;
+
+/**
+ * Requests served by one route of the HTTP server. Latencies are in
+ * microseconds, from the reception of the request to the completion of
+ * the response.
+ *
+ * @author OpenESB Community
+ */
+public interface RouteMetricsMBean {
+
+    String getRoute();
+
+    long getRequestCount();
+
+    long getInformationalCount();
+
+    long getSuccessCount();
+
+    long getRedirectionCount();
+
+    long getClientErrorCount();
+
+    long getServerErrorCount();
+
+    /**
+     * @return the number of bytes read from the connections, headers
+     * included.
+     */
+    long getBytesIn();
+
+    /**
+     * @return the number of bytes written to the connections, headers
+     * included.
+     */
+    long getBytesOut();
+
+    long getMeanLatency();
+
+    long getMaxLatency();
+
+    long getLatency50thPercentile();
+
+    long getLatency90thPercentile();
+
+    long getLatency99thPercentile();
+
+    long getLatency999thPercentile();
+}
@@ -0,0 +1,154 @@
+package net.openesb.standalone.jobs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.openesb.standalone.LocalStringKeys;
+import net.openesb.standalone.utils.I18NBundle;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+
+/**
+ * A management request replayed in the background, and its response.
+ *
+ * @author OpenESB Community
+ */
+public final class Job implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(Job.class.getPackage().getName());
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String id;
+    private final String user;
+    private final ContainerRequest request;
+    private final ApplicationHandler applicationHandler;
+    private final File spool;
+    private final long submittedAt = System.currentTimeMillis();
+
+    private volatile State state = State.QUEUED;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile int status;
+    private volatile String contentType;
+    private volatile byte[] result;
+    private volatile String error;
+
+    /**
+     * @param spool the temporary file holding the entity of the request,
+     * <code>null</code> if it is in memory
+     */
+    Job(String id, String user, ContainerRequest request, ApplicationHandler applicationHandler,
+            File spool) {
+        this.id = id;
+        this.user = user;
+        this.request = request;
+        this.applicationHandler = applicationHandler;
+        this.spool = spool;
+    }
+
+    @Override
+    public void run() {
+        startedAt = System.currentTimeMillis();
+        state = State.RUNNING;
+        State outcome = State.FAILED;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ContainerResponse response = applicationHandler.apply(request, out).get();
+            status = response.getStatus();
+            contentType = response.getMediaType() != null
+                    ? response.getMediaType().toString() : null;
+            result = out.toByteArray();
+            if (status < 400) {
+                outcome = State.SUCCEEDED;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            error = "Interrupted";
+        } catch (ExecutionException ee) {
+            failed(ee.getCause() != null ? ee.getCause() : ee);
+        } catch (RuntimeException re) {
+            failed(re);
+        } finally {
+            release();
+            // Finished once the time is set
+            finishedAt = System.currentTimeMillis();
+            state = outcome;
+        }
+    }
+
+    /**
+     * Delete the temporary file of the entity, if any.
+     */
+    void release() {
+        if (spool != null) {
+            try {
+                request.getEntityStream().close();
+            } catch (IOException ignore) {
+            }
+            spool.delete();
+        }
+    }
+
+    private void failed(Throwable cause) {
+        I18NBundle.getBundle().log(LOG, Level.WARNING, cause,
+                LocalStringKeys.JOB_FAILED, id, request.getMethod(), getPath());
+        error = cause.toString();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isFinished() {
+        return state == State.SUCCEEDED || state == State.FAILED;
+    }
+
+    long getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * @return the HTTP status of the operation, <code>0</code> until it is
+     * finished or if it did not respond.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the entity of the response, <code>null</code> until the job
+     * is finished.
+     */
+    public byte[] getResult() {
+        return result;
+    }
+
+    private String getPath() {
+        return request.getRequestUri().getPath();
+    }
+
+    JobInfo info(Integer position) {
+        boolean finished = isFinished();
+        return new JobInfo(id, user, request.getMethod(), getPath(), state.name(), position,
+                submittedAt,
+                startedAt != 0 ? startedAt : null,
+                finished ? finishedAt : null,
+                finished && status != 0 ? status : null,
+                error);
+    }
+}
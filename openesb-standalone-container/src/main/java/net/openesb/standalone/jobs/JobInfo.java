@@ -0,0 +1,89 @@
+package net.openesb.standalone.jobs;
+
+/**
+ * State of a management job. Times are in milliseconds since the epoch,
+ * <code>null</code> until reached.
+ *
+ * @author OpenESB Community
+ */
+public class JobInfo {
+
+    private final String id;
+    private final String user;
+    private final String method;
+    private final String path;
+    private final String state;
+    private final Integer position;
+    private final Long submittedAt;
+    private final Long startedAt;
+    private final Long finishedAt;
+    private final Integer status;
+    private final String error;
+
+    /**
+     * @param position the number of jobs to run before this one,
+     * <code>null</code> unless it is queued
+     * @param status the HTTP status of the operation, <code>null</code>
+     * until it is finished
+     * @param error the failure of the operation, if it did not respond
+     */
+    public JobInfo(String id, String user, String method, String path, String state,
+            Integer position, Long submittedAt, Long startedAt, Long finishedAt,
+            Integer status, String error) {
+        this.id = id;
+        this.user = user;
+        this.method = method;
+        this.path = path;
+        this.state = state;
+        this.position = position;
+        this.submittedAt = submittedAt;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.status = status;
+        this.error = error;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public Integer getPosition() {
+        return position;
+    }
+
+    public Long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Long getStartedAt() {
+        return startedAt;
+    }
+
+    public Long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
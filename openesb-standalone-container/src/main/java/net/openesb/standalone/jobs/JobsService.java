@@ -0,0 +1,289 @@
+package net.openesb.standalone.jobs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.container.ContainerRequestContext;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
+
+/**
+ * Runs long management operations in the background, so that they hold
+ * neither an HTTP worker nor the client connection.
+ *
+ * <p>A request submitted as a job is buffered, answered at once, then
+ * replayed through the same Jersey application by one of the job threads.
+ * Entities larger than <code>spoolThreshold</code> bytes, like deployment
+ * archives, are buffered in a temporary file rather than in memory. The
+ * response is kept with the job. Jobs wait in a bounded queue, and
+ * finished jobs are forgotten after <code>retention</code> seconds, or
+ * when more than <code>maxRetained</code> of them are kept.</p>
+ *
+ * <p>It must be registered on the application, to get its handler.</p>
+ *
+ * @author OpenESB Community
+ */
+public class JobsService implements ContainerLifecycleListener {
+
+    /**
+     * Request property set on the replayed requests.
+     */
+    public static final String JOB_PROPERTY = "net.openesb.standalone.jobs.id";
+
+    private final boolean heavyAsync;
+    private final int spoolThreshold;
+    private final long retentionMillis;
+    private final int maxRetained;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<String, Job>();
+
+    private volatile ApplicationHandler applicationHandler;
+
+    /**
+     * @param heavyAsync whether heavy operations run as jobs without being
+     * asked to
+     * @param threads number of jobs running at once
+     * @param queueLimit number of jobs waiting to run
+     * @param retention how long finished jobs are kept, in seconds
+     * @param maxRetained number of finished jobs kept
+     * @param spoolThreshold size, in bytes, above which entities are
+     * buffered in a temporary file
+     */
+    public JobsService(boolean heavyAsync, int threads, int queueLimit,
+            int retention, int maxRetained, int spoolThreshold) {
+        this.heavyAsync = heavyAsync;
+        this.spoolThreshold = Math.max(0, spoolThreshold);
+        this.retentionMillis = TimeUnit.SECONDS.toMillis(Math.max(0, retention));
+        this.maxRetained = Math.max(0, maxRetained);
+        int size = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(Math.max(1, queueLimit)),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "openesb-jobs(" + counter.incrementAndGet() + ")");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return whether heavy operations run as jobs when the client did not
+     * ask for it.
+     */
+    public boolean isHeavyAsync() {
+        return heavyAsync;
+    }
+
+    /**
+     * Buffer the request and queue its replay.
+     *
+     * @param user the authenticated user, may be <code>null</code>
+     * @throws RejectedExecutionException if the queue is full
+     * @throws IOException if the entity can not be read
+     */
+    public Job submit(ContainerRequestContext requestCtx, String user)
+            throws IOException {
+        ApplicationHandler handler = applicationHandler;
+        if (handler == null) {
+            throw new RejectedExecutionException("Application not started");
+        }
+        expire();
+
+        String id = UUID.randomUUID().toString();
+        ContainerRequest request = new ContainerRequest(
+                requestCtx.getUriInfo().getBaseUri(), requestCtx.getUriInfo().getRequestUri(),
+                requestCtx.getMethod(), requestCtx.getSecurityContext(),
+                new MapPropertiesDelegate());
+        request.getHeaders().putAll(requestCtx.getHeaders());
+        request.setProperty(JOB_PROPERTY, id);
+
+        File spool = null;
+        if (requestCtx.hasEntity()) {
+            InputStream in = requestCtx.getEntityStream();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            if (copy(in, buffer, spoolThreshold + 1L) > spoolThreshold) {
+                spool = File.createTempFile("openesb-job-", ".tmp");
+                spool(buffer, in, spool);
+                request.setEntityStream(new FileInputStream(spool));
+            } else {
+                request.setEntityStream(new ByteArrayInputStream(buffer.toByteArray()));
+            }
+        } else {
+            request.setEntityStream(new ByteArrayInputStream(new byte[0]));
+        }
+
+        Job job = new Job(id, user, request, handler, spool);
+        jobs.put(id, job);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException ree) {
+            jobs.remove(id);
+            job.release();
+            throw ree;
+        }
+        return job;
+    }
+
+    public Job getJob(String id) {
+        expire();
+        return jobs.get(id);
+    }
+
+    /**
+     * @return the jobs, by submission order.
+     */
+    public List<JobInfo> getJobs() {
+        expire();
+        List<JobInfo> infos = new ArrayList<JobInfo>();
+        for (Job job : jobs.values()) {
+            infos.add(info(job));
+        }
+        Collections.sort(infos, new Comparator<JobInfo>() {
+            @Override
+            public int compare(JobInfo j1, JobInfo j2) {
+                return j1.getSubmittedAt().compareTo(j2.getSubmittedAt());
+            }
+        });
+        return infos;
+    }
+
+    public JobInfo info(Job job) {
+        Integer position = null;
+        if (job.getState() == Job.State.QUEUED) {
+            int index = 0;
+            for (Runnable queued : executor.getQueue()) {
+                if (queued == job) {
+                    position = index;
+                    break;
+                }
+                index++;
+            }
+        }
+        return job.info(position);
+    }
+
+    /**
+     * Forget a finished job.
+     *
+     * @return <code>false</code> if the job is not finished.
+     */
+    public boolean remove(Job job) {
+        if (!job.isFinished()) {
+            return false;
+        }
+        jobs.remove(job.getId());
+        return true;
+    }
+
+    public void shutdown() {
+        for (Runnable queued : executor.shutdownNow()) {
+            // Never run, delete their temporary files
+            ((Job) queued).release();
+        }
+    }
+
+    /**
+     * Forget the finished jobs past the retention, then the oldest ones
+     * above the maximum number.
+     */
+    private void expire() {
+        long limit = System.currentTimeMillis() - retentionMillis;
+        List<Job> finished = new ArrayList<Job>();
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            if (job.isFinished()) {
+                if (job.getFinishedAt() < limit) {
+                    it.remove();
+                } else {
+                    finished.add(job);
+                }
+            }
+        }
+        if (finished.size() > maxRetained) {
+            Collections.sort(finished, new Comparator<Job>() {
+                @Override
+                public int compare(Job j1, Job j2) {
+                    return j1.getFinishedAt() < j2.getFinishedAt() ? -1
+                            : (j1.getFinishedAt() == j2.getFinishedAt() ? 0 : 1);
+                }
+            });
+            for (int i = 0; i < finished.size() - maxRetained; i++) {
+                jobs.remove(finished.get(i).getId());
+            }
+        }
+    }
+
+    private static void spool(ByteArrayOutputStream buffered, InputStream in, File spool)
+            throws IOException {
+        OutputStream out = new FileOutputStream(spool);
+        boolean spooled = false;
+        try {
+            buffered.writeTo(out);
+            copy(in, out, Long.MAX_VALUE);
+            spooled = true;
+        } finally {
+            out.close();
+            if (!spooled) {
+                spool.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes copied, at most <code>max</code>.
+     */
+    private static long copy(InputStream in, OutputStream out, long max) throws IOException {
+        byte[] buffer = new byte[8192];
+        long copied = 0;
+        int read;
+        while (copied < max
+                && (read = in.read(buffer, 0, (int) Math.min(buffer.length, max - copied))) != -1) {
+            out.write(buffer, 0, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    @Override
+    public void onStartup(Container container) {
+        applicationHandler = container.getApplicationHandler();
+    }
+
+    @Override
+    public void onReload(Container container) {
+        applicationHandler = container.getApplicationHandler();
+    }
+
+    @Override
+    public void onShutdown(Container container) {
+        applicationHandler = null;
+    }
+}
@@ -0,0 +1,88 @@
+package net.openesb.standalone.jobs.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import net.openesb.standalone.http.admission.AdmissionControl;
+import net.openesb.standalone.jobs.Job;
+import net.openesb.standalone.jobs.JobsService;
+import net.openesb.standalone.rest.filter.ContainerBasedAuthenticationFilter;
+
+/**
+ * Runs long management operations as jobs: the request is answered with
+ * <code>202 Accepted</code>, the job state in the entity and its URI in the
+ * <code>Location</code> header, and the operation runs in the background.
+ *
+ * <p>Modifications run as jobs when the client sends
+ * <code>Prefer: respond-async</code>, and heavy operations (deployment,
+ * installation) also without it when the service is configured so. When
+ * the job queue is full, the request is answered with 503.</p>
+ *
+ * @author OpenESB Community
+ */
+@Provider
+@PreMatching
+@Priority(Priorities.USER)
+public class AsyncJobFilter implements ContainerRequestFilter {
+
+    private static final String RESPOND_ASYNC = "respond-async";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private JobsService jobsService;
+
+    @Inject
+    private AdmissionControl admissionControl;
+
+    @Override
+    public void filter(ContainerRequestContext requestCtx) throws IOException {
+        if (requestCtx.getProperty(JobsService.JOB_PROPERTY) != null
+                || !isAsync(requestCtx)) {
+            return;
+        }
+
+        Job job;
+        try {
+            job = jobsService.submit(requestCtx,
+                    (String) requestCtx.getProperty(ContainerBasedAuthenticationFilter.USER_PROPERTY));
+        } catch (RejectedExecutionException ree) {
+            requestCtx.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", 10)
+                    .build());
+            return;
+        }
+
+        requestCtx.abortWith(Response.status(Response.Status.ACCEPTED)
+                .location(requestCtx.getUriInfo().getBaseUriBuilder()
+                        .path(JobsResource.class).path(job.getId()).build())
+                .entity(mapper.writeValueAsString(jobsService.info(job)))
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .build());
+    }
+
+    private boolean isAsync(ContainerRequestContext requestCtx) {
+        String method = requestCtx.getMethod();
+        if (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method)
+                || HttpMethod.OPTIONS.equals(method)) {
+            return false;
+        }
+        String prefer = requestCtx.getHeaderString("Prefer");
+        if (prefer != null && prefer.toLowerCase().contains(RESPOND_ASYNC)) {
+            return true;
+        }
+        return jobsService.isHeavyAsync()
+                && admissionControl.classify(method, requestCtx.getUriInfo().getRequestUri().getPath())
+                == AdmissionControl.Operation.HEAVY;
+    }
+}
@@ -0,0 +1,93 @@
+package net.openesb.standalone.jobs.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import javax.inject.Inject;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import net.openesb.standalone.jobs.Job;
+import net.openesb.standalone.jobs.JobsService;
+
+/**
+ * State and result of the management jobs.
+ *
+ * <pre>
+ * GET    /jobs
+ * GET    /jobs/{id}
+ * GET    /jobs/{id}/result
+ * DELETE /jobs/{id}
+ * </pre>
+ *
+ * The result is the response of the operation, status included, once the
+ * job is finished. Until then, it is the job state with a 202 status.
+ * Only finished jobs can be deleted.
+ *
+ * @author OpenESB Community
+ */
+@Path("/jobs")
+public class JobsResource {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private JobsService jobsService;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String jobs() throws JsonProcessingException {
+        return mapper.writeValueAsString(jobsService.getJobs());
+    }
+
+    @GET
+    @Path("{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String job(@PathParam("id") String id) throws JsonProcessingException {
+        return mapper.writeValueAsString(jobsService.info(getJob(id)));
+    }
+
+    @GET
+    @Path("{id}/result")
+    public Response result(@PathParam("id") String id) throws JsonProcessingException {
+        Job job = getJob(id);
+        if (!job.isFinished()) {
+            return Response.status(Response.Status.ACCEPTED)
+                    .entity(mapper.writeValueAsString(jobsService.info(job)))
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .build();
+        }
+        if (job.getStatus() == 0) {
+            // The operation failed without responding
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(mapper.writeValueAsString(jobsService.info(job)))
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .build();
+        }
+        return Response.status(job.getStatus())
+                .entity(job.getResult().length > 0 ? job.getResult() : null)
+                .type(job.getContentType())
+                .build();
+    }
+
+    @DELETE
+    @Path("{id}")
+    public Response delete(@PathParam("id") String id) {
+        if (!jobsService.remove(getJob(id))) {
+            throw new WebApplicationException(Response.Status.CONFLICT);
+        }
+        return Response.noContent().build();
+    }
+
+    private Job getJob(String id) {
+        Job job = jobsService.getJob(id);
+        if (job == null) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        return job;
+    }
+}
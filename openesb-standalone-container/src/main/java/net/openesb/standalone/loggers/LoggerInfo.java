@@ -0,0 +1,45 @@
+package net.openesb.standalone.loggers;
+
+/**
+ * Level information about a logger.
+ *
+ * @author OpenESB Community
+ */
+public class LoggerInfo {
+
+    private final String name;
+    private final String level;
+    private final String effectiveLevel;
+    private final Long revertAt;
+
+    /**
+     * @param name the logger name
+     * @param level the level set on the logger, <code>null</code> if
+     * inherited
+     * @param effectiveLevel the level applied to the logger
+     * @param revertAt when the previous level will be restored, in
+     * milliseconds since the epoch, <code>null</code> if never
+     */
+    public LoggerInfo(String name, String level, String effectiveLevel, Long revertAt) {
+        this.name = name;
+        this.level = level;
+        this.effectiveLevel = effectiveLevel;
+        this.revertAt = revertAt;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getEffectiveLevel() {
+        return effectiveLevel;
+    }
+
+    public Long getRevertAt() {
+        return revertAt;
+    }
+}
@@ -0,0 +1,234 @@
+package net.openesb.standalone.loggers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import net.openesb.standalone.LocalStringKeys;
+import net.openesb.standalone.utils.I18NBundle;
+
+/**
+ * Reads and changes logger levels at runtime, optionally for a limited time.
+ *
+ * <p>Levels are changed with <code>Logger.setLevel</code>, which updates
+ * the level cached by the logger and by every child inheriting it. The
+ * <code>isLoggable</code> checks keep comparing two integers, whatever the
+ * number of overrides.</p>
+ *
+ * <p>The service keeps a strong reference to every logger it changed, so
+ * that the new level is not lost if the logger is garbage collected.</p>
+ *
+ * @author OpenESB Community
+ */
+public class LoggersService implements LoggersServiceMBean {
+
+    private static final Logger LOG = Logger.getLogger(LoggersService.class.getName());
+
+    private final ConcurrentMap<String, LevelOverride> overrides =
+            new ConcurrentHashMap<String, LevelOverride>();
+
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Loggers-revert");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * @param prefix name of the root of the subtree, <code>null</code> or
+     * empty for all the loggers.
+     * @return the loggers of the subtree, sorted by name.
+     */
+    public List<LoggerInfo> loggers(String prefix) {
+        List<LoggerInfo> infos = new ArrayList<LoggerInfo>();
+        for (String name : getLoggerNames(prefix)) {
+            LoggerInfo info = logger(name);
+            if (info != null) {
+                infos.add(info);
+            }
+        }
+        return infos;
+    }
+
+    /**
+     * @return the logger information, or <code>null</code> if no logger is
+     * registered with this name.
+     */
+    public LoggerInfo logger(String name) {
+        Logger logger = LogManager.getLogManager().getLogger(name);
+        if (logger == null) {
+            return null;
+        }
+
+        LevelOverride override = overrides.get(name);
+        Level level = logger.getLevel();
+        return new LoggerInfo(name,
+                level == null ? null : level.getName(),
+                effectiveLevel(logger).getName(),
+                override == null || override.revertAt == 0 ? null : override.revertAt);
+    }
+
+    /**
+     * Set the level of a logger.
+     *
+     * @param name the logger name, empty for the root logger.
+     * @param level the new level, <code>null</code> to inherit the level of
+     * the parent.
+     * @param revertAfter delay after which the previous level is restored,
+     * <code>0</code> to keep the new level.
+     * @param unit unit of the delay.
+     */
+    public synchronized void setLevel(String name, Level level, long revertAfter, TimeUnit unit) {
+        LevelOverride override = overrides.get(name);
+        if (override == null) {
+            Logger logger = Logger.getLogger(name);
+            override = new LevelOverride(logger, logger.getLevel());
+            overrides.put(name, override);
+        } else {
+            override.cancelRevert();
+        }
+
+        override.logger.setLevel(level);
+
+        if (revertAfter > 0) {
+            final String loggerName = name;
+            final long generation = ++override.generation;
+            override.revertAt = System.currentTimeMillis() + unit.toMillis(revertAfter);
+            override.revert = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    revert(loggerName, generation);
+                }
+            }, revertAfter, unit);
+        }
+
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, I18NBundle.getBundle().getMessage(
+                    LocalStringKeys.LOGGERS_LEVEL_CHANGED, name, level,
+                    revertAfter > 0 ? unit.toSeconds(revertAfter) : 0));
+        }
+    }
+
+    @Override
+    public String[] getLoggerNames(String prefix) {
+        List<String> names = new ArrayList<String>();
+        Enumeration<String> loggerNames = LogManager.getLogManager().getLoggerNames();
+        while (loggerNames.hasMoreElements()) {
+            String name = loggerNames.nextElement();
+            if (inSubtree(name, prefix)) {
+                names.add(name);
+            }
+        }
+        Collections.sort(names);
+        return names.toArray(new String[names.size()]);
+    }
+
+    @Override
+    public String getLevel(String name) {
+        Logger logger = LogManager.getLogManager().getLogger(name);
+        if (logger == null || logger.getLevel() == null) {
+            return null;
+        }
+        return logger.getLevel().getName();
+    }
+
+    @Override
+    public String getEffectiveLevel(String name) {
+        Logger logger = LogManager.getLogManager().getLogger(name);
+        if (logger == null) {
+            return null;
+        }
+        return effectiveLevel(logger).getName();
+    }
+
+    @Override
+    public void setLevel(String name, String level, long revertAfter) {
+        // No level, the logger inherits the level of its parent
+        Level parsed = level == null || level.trim().length() == 0
+                ? null : Level.parse(level.trim().toUpperCase());
+        setLevel(name, parsed, revertAfter, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void resetLevel(String name) {
+        LevelOverride override = overrides.remove(name);
+        if (override == null) {
+            return;
+        }
+
+        override.cancelRevert();
+        override.logger.setLevel(override.originalLevel);
+
+        if (LOG.isLoggable(Level.INFO)) {
+            LOG.log(Level.INFO, I18NBundle.getBundle().getMessage(
+                    LocalStringKeys.LOGGERS_LEVEL_RESET, name, override.originalLevel));
+        }
+    }
+
+    /**
+     * Restore the original level, unless the level has been changed again
+     * since the revert has been scheduled.
+     */
+    private synchronized void revert(String name, long generation) {
+        LevelOverride override = overrides.get(name);
+        if (override != null && override.generation == generation) {
+            resetLevel(name);
+        }
+    }
+
+    private static boolean inSubtree(String name, String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return true;
+        }
+        return name.startsWith(prefix)
+                && (name.length() == prefix.length() || name.charAt(prefix.length()) == '.');
+    }
+
+    private static Level effectiveLevel(Logger logger) {
+        for (Logger current = logger; current != null; current = current.getParent()) {
+            if (current.getLevel() != null) {
+                return current.getLevel();
+            }
+        }
+        return Level.INFO;
+    }
+
+    /**
+     * A level changed through this service.
+     */
+    private static class LevelOverride {
+
+        private final Logger logger;
+        private final Level originalLevel;
+        private ScheduledFuture<?> revert;
+        private volatile long revertAt;
+        private long generation;
+
+        LevelOverride(Logger logger, Level originalLevel) {
+            this.logger = logger;
+            this.originalLevel = originalLevel;
+        }
+
+        void cancelRevert() {
+            if (revert != null) {
+                revert.cancel(false);
+                revert = null;
+            }
+            revertAt = 0;
+            generation++;
+        }
+    }
+}
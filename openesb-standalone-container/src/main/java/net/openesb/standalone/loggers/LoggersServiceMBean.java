@@ -0,0 +1,44 @@
+package net.openesb.standalone.loggers;
+
+/**
+ * Management interface to read and change logger levels at runtime.
+ *
+ * @author OpenESB Community
+ */
+public interface LoggersServiceMBean {
+
+    /**
+     * @param prefix name of the root of the subtree, empty for all the
+     * loggers.
+     * @return the names of the registered loggers in the subtree, sorted.
+     */
+    String[] getLoggerNames(String prefix);
+
+    /**
+     * @return the level set on the logger, or <code>null</code> if it
+     * inherits the level of its parent.
+     */
+    String getLevel(String name);
+
+    /**
+     * @return the level actually applied to the logger.
+     */
+    String getEffectiveLevel(String name);
+
+    /**
+     * Set the level of a logger, and of its subtree through inheritance.
+     *
+     * @param name the logger name, empty for the root logger.
+     * @param level the level name or value, <code>null</code> or empty to
+     * inherit the level of the parent.
+     * @param revertAfter delay in seconds after which the previous level is
+     * restored, <code>0</code> to keep the new level.
+     */
+    void setLevel(String name, String level, long revertAfter);
+
+    /**
+     * Restore the level the logger had before it was first changed through
+     * this service.
+     */
+    void resetLevel(String name);
+}
@@ -0,0 +1,102 @@
+package net.openesb.standalone.loggers.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import javax.inject.Inject;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import net.openesb.standalone.loggers.LoggerInfo;
+import net.openesb.standalone.loggers.LoggersService;
+
+/**
+ * Read and change logger levels at runtime.
+ *
+ * <pre>
+ * GET    /loggers?prefix=com.sun.jbi
+ * GET    /loggers/{name}
+ * PUT    /loggers/{name}?level=FINEST&amp;revertAfter=600
+ * DELETE /loggers/{name}
+ * </pre>
+ *
+ * The <code>root</code> name designates the root logger. <code>revertAfter</code>
+ * is expressed in seconds.
+ *
+ * @author OpenESB Community
+ */
+@Path("/loggers")
+public class LoggersResource {
+
+    private static final String ROOT_LOGGER = "root";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private LoggersService loggersService;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String loggers(@QueryParam("prefix") String prefix) throws JsonProcessingException {
+        return mapper.writeValueAsString(loggersService.loggers(prefix));
+    }
+
+    @GET
+    @Path("{name}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String logger(@PathParam("name") String name) throws JsonProcessingException {
+        return mapper.writeValueAsString(getLogger(loggerName(name)));
+    }
+
+    @PUT
+    @Path("{name}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String setLevel(@PathParam("name") String name,
+            @QueryParam("level") String level,
+            @QueryParam("revertAfter") @DefaultValue("0") long revertAfter) throws JsonProcessingException {
+        String loggerName = loggerName(name);
+        loggersService.setLevel(loggerName, parseLevel(level), revertAfter, TimeUnit.SECONDS);
+        return mapper.writeValueAsString(getLogger(loggerName));
+    }
+
+    @DELETE
+    @Path("{name}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String resetLevel(@PathParam("name") String name) throws JsonProcessingException {
+        String loggerName = loggerName(name);
+        loggersService.resetLevel(loggerName);
+        return mapper.writeValueAsString(getLogger(loggerName));
+    }
+
+    private LoggerInfo getLogger(String name) {
+        LoggerInfo info = loggersService.logger(name);
+        if (info == null) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        return info;
+    }
+
+    private static String loggerName(String name) {
+        return ROOT_LOGGER.equals(name) ? "" : name;
+    }
+
+    private static Level parseLevel(String level) {
+        if (level == null) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+        try {
+            return Level.parse(level.trim().toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+    }
+}
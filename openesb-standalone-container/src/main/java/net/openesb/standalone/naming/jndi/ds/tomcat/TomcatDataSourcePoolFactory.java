@@ -52,8 +52,8 @@ public class TomcatDataSourcePoolFactory implements DataSourcePoolFactory {
 
             return ds;
         } catch (Exception ex) {
-            LOG.log(Level.SEVERE, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.DS_UNABLE_TO_CREATE_DATASOURCE, dspProperties.getDbConnectorName()), ex);
+            I18NBundle.getBundle().log(LOG, Level.SEVERE, ex,
+                    LocalStringKeys.DS_UNABLE_TO_CREATE_DATASOURCE, dspProperties.getDbConnectorName());
 
             return null;
         }
@@ -69,8 +69,8 @@ public class TomcatDataSourcePoolFactory implements DataSourcePoolFactory {
 
             return ds;
         } catch (Exception ex) {
-            LOG.log(Level.SEVERE, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.DS_UNABLE_TO_CREATE_DATASOURCE, dspProperties.getDbConnectorName()), ex);
+            I18NBundle.getBundle().log(LOG, Level.SEVERE, ex,
+                    LocalStringKeys.DS_UNABLE_TO_CREATE_DATASOURCE, dspProperties.getDbConnectorName());
 
             return null;
         }
@@ -87,8 +87,8 @@ public class TomcatDataSourcePoolFactory implements DataSourcePoolFactory {
             String mBeanName = "net.open-esb.standalone:type=DataSources,name=" + ds.getName();
             mBeanServer.registerMBean(ds.getPool().getJmxPool(), new ObjectName(mBeanName));
         } catch (Exception ex) {
-            LOG.log(Level.SEVERE, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.DS_UNABLE_TO_CREATE_MBEAN, ds.getName()), ex);
+            I18NBundle.getBundle().log(LOG, Level.SEVERE, ex,
+                    LocalStringKeys.DS_UNABLE_TO_CREATE_MBEAN, ds.getName());
 
         }
     }
@@ -103,17 +103,15 @@ public class TomcatDataSourcePoolFactory implements DataSourcePoolFactory {
          */
         String dsName = dspProperties.getDatasourceClassname();
 
-        if (LOG.isLoggable(Level.INFO)) {
-            LOG.log(Level.INFO, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.DS_CREATE_DATASOURCE, dspProperties.getDbConnectorName()));
-        }
+        I18NBundle.getBundle().log(LOG, Level.INFO,
+                LocalStringKeys.DS_CREATE_DATASOURCE, dspProperties.getDbConnectorName());
 
         Class<?> dsClass;
         try {
             dsClass = Class.forName(dsName);
         } catch (ClassNotFoundException ex) {
-            LOG.log(Level.SEVERE, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.DS_CLASS_NOT_FOUND, dsName, dspProperties.getDbConnectorName()));
+            I18NBundle.getBundle().log(LOG, Level.SEVERE,
+                    LocalStringKeys.DS_CLASS_NOT_FOUND, dsName, dspProperties.getDbConnectorName());
 
             throw ex;
         }
@@ -128,12 +126,12 @@ public class TomcatDataSourcePoolFactory implements DataSourcePoolFactory {
         try {
             nativeDS = dsClass.newInstance();
         } catch (InstantiationException ex) {
-            LOG.log(Level.SEVERE, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.DS_UNABLE_TO_INSTANCIATE_CLASS, dsName, dspProperties.getDbConnectorName()));
+            I18NBundle.getBundle().log(LOG, Level.SEVERE,
+                    LocalStringKeys.DS_UNABLE_TO_INSTANCIATE_CLASS, dsName, dspProperties.getDbConnectorName());
             throw ex;
         } catch (IllegalAccessException ex) {
-            LOG.log(Level.SEVERE, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.DS_UNABLE_TO_ACCESS_CLASS, dsName, dspProperties.getDbConnectorName()));
+            I18NBundle.getBundle().log(LOG, Level.SEVERE,
+                    LocalStringKeys.DS_UNABLE_TO_ACCESS_CLASS, dsName, dspProperties.getDbConnectorName());
             throw ex;
         }
 
@@ -142,18 +140,14 @@ public class TomcatDataSourcePoolFactory implements DataSourcePoolFactory {
         /* Datasouce fields are set with data properties found in the context 
          * Now let's set the pool with the pool properties found in the context
          * get the properties for the pool */
-        if (LOG.isLoggable(Level.INFO)) {
-            LOG.log(Level.INFO, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.DS_DATASOURCE_PROPERTIES_SETTLED, dspProperties.getDbConnectorName()));
-        }
+        I18NBundle.getBundle().log(LOG, Level.INFO,
+                LocalStringKeys.DS_DATASOURCE_PROPERTIES_SETTLED, dspProperties.getDbConnectorName());
 
         /**
          * ** Set up Pool
          */
-        if (LOG.isLoggable(Level.FINE)) {
-            LOG.log(Level.FINE, I18NBundle.getBundle().getMessage(
-                    LocalStringKeys.DS_POOL_CONFIGURATION, dspProperties.getDbConnectorName()));
-        }
+        I18NBundle.getBundle().log(LOG, Level.FINE,
+                LocalStringKeys.DS_POOL_CONFIGURATION, dspProperties.getDbConnectorName());
 
         PoolProperties contextPoolProperties = dspProperties.getPoolProperties();
         Map<String, String> poolMap = this.listToMap(contextPoolProperties.getProperty());
@@ -184,8 +178,8 @@ public class TomcatDataSourcePoolFactory implements DataSourcePoolFactory {
             String fieldName = keys.next();
             Method m = setters.get(fieldName.toLowerCase());
             if (null == m) {
-                LOG.log(Level.WARNING, I18NBundle.getBundle().getMessage(
-                    errPrefix+"PROPERTY_NOT_FOUND", fieldName, cl.getName()));
+                I18NBundle.getBundle().log(LOG, Level.WARNING,
+                        errPrefix+"PROPERTY_NOT_FOUND", fieldName, cl.getName());
                 continue;
             }
             String fieldValue = props.get(fieldName);
@@ -215,18 +209,18 @@ public class TomcatDataSourcePoolFactory implements DataSourcePoolFactory {
                 } else if (t.equals(String.class)) {
                     m.invoke(obj, fieldValue);
                 } else {
-                    LOG.log(Level.WARNING, I18NBundle.getBundle().getMessage(
-                        errPrefix+"PROPERTY_NOT_SET", fieldName, t, cl.getName()));
+                    I18NBundle.getBundle().log(LOG, Level.WARNING,
+                            errPrefix+"PROPERTY_NOT_SET", fieldName, t, cl.getName());
                 }
             } catch (InvocationTargetException ex) {
                 throw ex;
             } catch (IllegalArgumentException ex) {
-                LOG.log(Level.SEVERE, I18NBundle.getBundle().getMessage(
-                    errPrefix+"PROPERTY_INVALID_VALUE", fieldValue, fieldName));
+                I18NBundle.getBundle().log(LOG, Level.SEVERE,
+                        errPrefix+"PROPERTY_INVALID_VALUE", fieldValue, fieldName);
                 throw ex;
             } catch (IllegalAccessException ex) {
-                LOG.log(Level.SEVERE, I18NBundle.getBundle().getMessage(
-                    errPrefix+"PROPERTY_ACCESS", fieldName));
+                I18NBundle.getBundle().log(LOG, Level.SEVERE,
+                        errPrefix+"PROPERTY_ACCESS", fieldName);
                 throw ex;
             }
         }
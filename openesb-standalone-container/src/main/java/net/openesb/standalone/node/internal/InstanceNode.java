@@ -2,6 +2,7 @@ package net.openesb.standalone.node.internal;
 
 import com.google.inject.Injector;
 import com.sun.jbi.platform.PlatformContext;
+import java.lang.management.ManagementFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.management.MBeanServer;
@@ -21,6 +22,8 @@ import net.openesb.standalone.inject.ModulesBuilder;
 import net.openesb.standalone.jmx.JMXService;
 import net.openesb.standalone.jta.TransactionManagerService;
 import net.openesb.standalone.jta.TransactionModule;
+import net.openesb.standalone.loggers.LoggersService;
+import net.openesb.standalone.loggers.LoggersServiceMBean;
 import net.openesb.standalone.naming.NamingModule;
 import net.openesb.standalone.node.Node;
 import net.openesb.standalone.plugins.PluginsModule;
@@ -41,6 +44,7 @@ public class InstanceNode implements Node {
             Logger.getLogger(InstanceNode.class.getName());
     
     private static final String INSTANCE_NAME = "instance.name";
+    private static final String LOGGERS_MBEAN_NAME = "net.open-esb.standalone:type=Loggers";
     private final String nodeName;
     private final Injector injector;
     private final Environment environment;
@@ -130,6 +134,8 @@ public class InstanceNode implements Node {
             e.printStackTrace();
         }
 
+        registerLoggersMBean();
+
         long endTime = System.currentTimeMillis(); // Get the end Time
 
         if (LOG.isLoggable(Level.INFO)) {
@@ -150,6 +156,7 @@ public class InstanceNode implements Node {
             injector.getInstance(plugin).stop();
         }
         
+        unregisterLoggersMBean();
         injector.getInstance(HttpServer.class).stop();
         injector.getInstance(FrameworkService.class).stop();
         tmService.stop();
@@ -161,6 +168,38 @@ public class InstanceNode implements Node {
         }
     }
 
+    /**
+     * Register the management MBean used to change logger levels at runtime.
+     */
+    private void registerLoggersMBean() {
+        try {
+            ObjectName loggersMBeanName = new ObjectName(LOGGERS_MBEAN_NAME);
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            if (mbs.isRegistered(loggersMBeanName)) {
+                mbs.unregisterMBean(loggersMBeanName);
+            }
+
+            final StandardMBean mbean = new StandardMBean(
+                    injector.getInstance(LoggersService.class), LoggersServiceMBean.class);
+            mbs.registerMBean(mbean, loggersMBeanName);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, I18NBundle.getBundle().getMessage(
+                    LocalStringKeys.LOGGERS_MBEAN_REGISTRATION_FAILED), e);
+        }
+    }
+
+    private void unregisterLoggersMBean() {
+        try {
+            ObjectName loggersMBeanName = new ObjectName(LOGGERS_MBEAN_NAME);
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            if (mbs.isRegistered(loggersMBeanName)) {
+                mbs.unregisterMBean(loggersMBeanName);
+            }
+        } catch (Exception e) {
+            LOG.log(Level.FINE, e.getMessage(), e);
+        }
+    }
+
     @Override
     public String name() {
         return this.nodeName;
@@ -2,6 +2,9 @@ package net.openesb.standalone.rest;
 
 import java.util.Set;
 import net.openesb.rest.api.ManagementApplication;
+import net.openesb.standalone.jobs.rest.AsyncJobFilter;
+import net.openesb.standalone.jobs.rest.JobsResource;
+import net.openesb.standalone.loggers.rest.LoggersResource;
 import net.openesb.standalone.rest.filter.ContainerBasedAuthenticationFilter;
 
 /**
@@ -16,6 +19,9 @@ public final class ExtendedManagementApplication extends ManagementApplication {
         Set<Class<?>> classes = super.getClasses();
        
         classes.add(ContainerBasedAuthenticationFilter.class);
+        classes.add(LoggersResource.class);
+        classes.add(AsyncJobFilter.class);
+        classes.add(JobsResource.class);
         
         return classes;
     }
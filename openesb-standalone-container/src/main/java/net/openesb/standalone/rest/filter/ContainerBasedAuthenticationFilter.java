@@ -3,33 +3,69 @@ package net.openesb.standalone.rest.filter;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Priority;
 import javax.inject.Inject;
+import javax.ws.rs.Priorities;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.Provider;
 import net.openesb.security.AuthenticationException;
 import net.openesb.security.SecurityProvider;
 import net.openesb.security.UsernamePasswordToken;
+import net.openesb.standalone.http.admission.AdmissionControl;
+import net.openesb.standalone.jobs.JobsService;
+import net.openesb.standalone.security.SessionTokens;
 
 /**
+ * Authenticates the REST API requests, with Basic credentials or with a
+ * bearer token.
+ *
+ * <p>A request to <code>/login</code> with Basic credentials returns a
+ * token, to be sent in an <code>Authorization: Bearer</code> header by the
+ * following requests: tokens are verified without the realm.</p>
+ *
+ * <p>Authenticated requests are then subject to the rate of their user,
+ * and answered with 429 when it is exceeded.</p>
  *
  * @author David BRASSELY (brasseld at gmail.com)
  * @author OpenESB Community
  */
 @Provider
 @PreMatching
+@Priority(Priorities.AUTHENTICATION)
 public class ContainerBasedAuthenticationFilter implements ContainerRequestFilter {
 
     private final static Logger log = Logger.getLogger(ContainerBasedAuthenticationFilter.class.getName());
 
+    /**
+     * Request property holding the name of the authenticated user.
+     */
+    public final static String USER_PROPERTY = "net.openesb.standalone.user";
+
+    private final static String BEARER = "Bearer ";
+
+    private final static int TOO_MANY_REQUESTS = 429;
+
     @Inject
     private SecurityProvider securityProvider;
 
+    @Inject
+    private SessionTokens sessionTokens;
+
+    @Inject
+    private AdmissionControl admissionControl;
+
     @Override
     public void filter(ContainerRequestContext requestCtx) throws IOException {
 
+        if (requestCtx.getProperty(JobsService.JOB_PROPERTY) != null) {
+            // Replay of a job, authenticated and admitted when submitted
+            return;
+        }
+
         // When HttpMethod comes as OPTIONS, just acknowledge that it accepts...
         // In the real world, this should more sophisticated
         if (requestCtx.getRequest().getMethod().equals("OPTIONS")) {
@@ -37,12 +73,30 @@ public class ContainerBasedAuthenticationFilter implements ContainerRequestFilte
             requestCtx.abortWith(Response.status(Response.Status.OK).build());
         } else {
 
+            String authorization = requestCtx.getHeaderString("authorization");
+            String requestUriPath = requestCtx.getUriInfo().getRequestUri().getPath();
+
+            if (null != authorization && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+                String user = sessionTokens.verify(authorization.substring(BEARER.length()).trim());
+                if (user == null) {
+                    requestCtx.abortWith(Response.status(Response.Status.UNAUTHORIZED).build());
+                    return;
+                }
+                if (!admit(requestCtx, user, requestUriPath)) {
+                    return;
+                }
+                requestCtx.setProperty(USER_PROPERTY, user);
+                if (requestUriPath.endsWith("/login")) {
+                    // Renew the token
+                    requestCtx.abortWith(tokenResponse(user));
+                }
+                return;
+            }
+
             //try to authenticate
             String username = "";
             String password = "";
 
-            String authorization = requestCtx.getHeaderString("authorization");
-
             if (null != authorization && authorization.length() > "Basic ".length()) {
                 String usernamePassword = new String(javax.xml.bind.DatatypeConverter.parseBase64Binary(authorization.substring("Basic ".length())));
                 if (usernamePassword.contains(":")) {
@@ -61,12 +115,39 @@ public class ContainerBasedAuthenticationFilter implements ContainerRequestFilte
                 return;
             }
 
-            String requestUriPath = requestCtx.getUriInfo().getRequestUri().getPath();
-
+            if (!admit(requestCtx, username, requestUriPath)) {
+                return;
+            }
+            requestCtx.setProperty(USER_PROPERTY, username);
             if (requestUriPath.endsWith("/login")) {
-                requestCtx.abortWith(Response.status(Response.Status.OK).build());
+                requestCtx.abortWith(tokenResponse(username));
                 return;
             }
         }
     }
+
+    /**
+     * Apply the rate of the authenticated user, aborting the request if it
+     * is exceeded.
+     */
+    private boolean admit(ContainerRequestContext requestCtx, String user, String requestUriPath) {
+        long retryAfter = admissionControl.admitUser(user,
+                admissionControl.classify(requestCtx.getMethod(), requestUriPath));
+        if (retryAfter > 0) {
+            requestCtx.abortWith(Response.status(TOO_MANY_REQUESTS)
+                    .header("Retry-After", retryAfter)
+                    .build());
+            return false;
+        }
+        return true;
+    }
+
+    private Response tokenResponse(String user) {
+        // Tokens are base64 encoded, nothing to escape
+        String entity = "{\"token\":\"" + sessionTokens.issue(user)
+                + "\",\"token_type\":\"Bearer\",\"expires_in\":" + sessionTokens.getTtl() + "}";
+        return Response.ok(entity, MediaType.APPLICATION_JSON_TYPE)
+                .header("Cache-Control", "no-store")
+                .build();
+    }
 }
@@ -0,0 +1,163 @@
+package net.openesb.standalone.security;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
+
+/**
+ * Credentials recently verified by a realm, so that clients polling the REST
+ * API or reconnecting to JMX are not authenticated again on each request.
+ *
+ * <p>Entries are keyed by a SHA-256 digest of the realm name, user name and
+ * password, salted with a random value drawn at startup: passwords are never
+ * kept. Only successful logins are cached. An entry is valid for
+ * <code>ttl</code> and as long as the realm has not been reloaded since the
+ * login; the least recently used entries are dropped beyond
+ * <code>maxSize</code> entries.</p>
+ *
+ * @author OpenESB Community
+ */
+final class CredentialCache {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte[] salt = new byte[16];
+    private final long ttlNanos;
+    private final Map<Key, Entry> entries;
+
+    private final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException nsae) {
+                // Required by the Java platform specification
+                throw new IllegalStateException(nsae);
+            }
+        }
+    };
+
+    /**
+     * @param maxSize maximum number of entries
+     * @param ttl how long a verified credential is trusted, in seconds
+     */
+    CredentialCache(final int maxSize, long ttl) {
+        new SecureRandom().nextBytes(salt);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
+        this.entries = new LinkedHashMap<Key, Entry>(64, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the key of the credentials, or <code>null</code> if they can
+     * not be cached.
+     */
+    Key key(String realmName, Object principal, Object credentials) {
+        if (!(principal instanceof String) || !(credentials instanceof char[])) {
+            return null;
+        }
+        MessageDigest digest = digests.get();
+        digest.reset();
+        digest.update(salt);
+        update(digest, realmName);
+        update(digest, (String) principal);
+        ByteBuffer password = UTF8.encode(CharBuffer.wrap((char[]) credentials));
+        digest.update(password);
+        if (password.hasArray()) {
+            Arrays.fill(password.array(), (byte) 0);
+        }
+        return new Key(digest.digest());
+    }
+
+    /**
+     * @return a copy of the subject of the login, or <code>null</code> if
+     * the credentials have not been verified recently for this revision of
+     * the realm.
+     */
+    Subject get(Key key, int realmRevision) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.realmRevision != realmRevision
+                    || System.nanoTime() - entry.verified > ttlNanos) {
+                entries.remove(key);
+                return null;
+            }
+        }
+        // Callers may change the subject
+        return new Subject(false, entry.subject.getPrincipals(),
+                entry.subject.getPublicCredentials(), entry.subject.getPrivateCredentials());
+    }
+
+    void put(Key key, int realmRevision, Subject subject) {
+        Entry entry = new Entry(new Subject(false, subject.getPrincipals(),
+                subject.getPublicCredentials(), subject.getPrivateCredentials()),
+                realmRevision, System.nanoTime());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(UTF8));
+        // Separator, so that ("ab", "c") and ("a", "bc") differ
+        digest.update((byte) 0);
+    }
+
+    static final class Key {
+
+        private final byte[] digest;
+        private final int hash;
+
+        Key(byte[] digest) {
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && MessageDigest.isEqual(digest, ((Key) obj).digest);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Subject subject;
+        private final int realmRevision;
+        private final long verified;
+
+        Entry(Subject subject, int realmRevision, long verified) {
+            this.subject = subject;
+            this.realmRevision = realmRevision;
+            this.verified = verified;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import net.openesb.security.AuthenticationException;
 import net.openesb.security.AuthenticationToken;
 import net.openesb.security.SecurityProvider;
 import net.openesb.standalone.LocalStringKeys;
+import net.openesb.standalone.security.realm.AbstractRealm;
 import net.openesb.standalone.security.realm.Realm;
 import net.openesb.standalone.security.realm.RealmBuilder;
 import net.openesb.standalone.security.realm.shiro.ShiroAuthenticator;
@@ -28,13 +29,34 @@ public class SecurityProviderImpl implements SecurityProvider {
     private static final Logger LOG =
             Logger.getLogger(SecurityProviderImpl.class.getName());
     private final static String SETTINGS_KEY = "realm";
+    private final static String CACHE_SIZE_SETTINGS_KEY = "security.cache.size";
+    private final static String CACHE_TTL_SETTINGS_KEY = "security.cache.ttl";
+    private final static int DEFAULT_CACHE_SIZE = 1000;
+    private final static int DEFAULT_CACHE_TTL = 300;
     
     private final Map<String, Realm> realms = new HashMap<String, Realm>();
     private final ShiroAuthenticator authenticator = new ShiroAuthenticator();
+    private final CredentialCache credentialCache;
 
     @Inject
     public SecurityProviderImpl(final Settings settings) {
         init(settings);
+        credentialCache = createCredentialCache(settings);
+    }
+
+    /**
+     * Verified credentials are cached unless <code>security.cache.size</code>
+     * or <code>security.cache.ttl</code> (in seconds) is <code>0</code>.
+     */
+    private CredentialCache createCredentialCache(final Settings settings) {
+        int size = settings.getAsInt(CACHE_SIZE_SETTINGS_KEY, DEFAULT_CACHE_SIZE);
+        int ttl = settings.getAsInt(CACHE_TTL_SETTINGS_KEY, DEFAULT_CACHE_TTL);
+        if (size <= 0 || ttl <= 0) {
+            return null;
+        }
+        I18NBundle.getBundle().log(LOG, Level.FINE,
+                LocalStringKeys.SECURITY_CREDENTIAL_CACHE, size, ttl);
+        return new CredentialCache(size, ttl);
     }
 
     private void init(final Settings settings) {
@@ -86,7 +108,26 @@ public class SecurityProviderImpl implements SecurityProvider {
 
     @Override
     public Subject login(String realmName, AuthenticationToken authenticationToken) throws AuthenticationException {
-        return authenticator.authenticate(realmName, authenticationToken);
+        Realm realm = realms.get(realmName);
+        if (credentialCache == null || !(realm instanceof AbstractRealm)) {
+            return authenticator.authenticate(realmName, authenticationToken);
+        }
+
+        CredentialCache.Key key = credentialCache.key(realmName,
+                authenticationToken.getPrincipal(), authenticationToken.getCredentials());
+        if (key == null) {
+            return authenticator.authenticate(realmName, authenticationToken);
+        }
+
+        // Read before the login, so that a reload during the login
+        // invalidates the entry
+        int revision = ((AbstractRealm) realm).getRevision();
+        Subject subject = credentialCache.get(key, revision);
+        if (subject == null) {
+            subject = authenticator.authenticate(realmName, authenticationToken);
+            credentialCache.put(key, revision, subject);
+        }
+        return subject;
     }
 
     @Override
@@ -0,0 +1,146 @@
+package net.openesb.standalone.security;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Short-lived bearer tokens issued to authenticated users, verified without
+ * the realm.
+ *
+ * <p>A token is <code>base64(keyId:expiry:user).base64(signature)</code>,
+ * the signature being the HMAC-SHA256 of the first part. Signing keys are
+ * random, kept in memory only, and rotated every <code>rotation</code>
+ * seconds: a key is used to sign during its period, and to verify as long
+ * as tokens it signed can be valid. Tokens do not survive a restart, and
+ * can not be revoked before they expire.</p>
+ *
+ * @author OpenESB Community
+ */
+public final class SessionTokens {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final long ttlMillis;
+    private final long rotationMillis;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Long, SecretKeySpec> keys = new ConcurrentHashMap<Long, SecretKeySpec>();
+
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance(ALGORITHM);
+            } catch (GeneralSecurityException gse) {
+                // Required by the Java platform specification
+                throw new IllegalStateException(gse);
+            }
+        }
+    };
+
+    /**
+     * @param ttl validity of the tokens, in seconds
+     * @param rotation validity of the signing keys, in seconds
+     */
+    public SessionTokens(long ttl, long rotation) {
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(1, ttl));
+        this.rotationMillis = TimeUnit.SECONDS.toMillis(Math.max(1, rotation));
+    }
+
+    /**
+     * @return the validity of the tokens, in seconds.
+     */
+    public long getTtl() {
+        return TimeUnit.MILLISECONDS.toSeconds(ttlMillis);
+    }
+
+    /**
+     * @return a new token for the user.
+     */
+    public String issue(String user) {
+        long now = System.currentTimeMillis();
+        long keyId = now / rotationMillis;
+        String payload = DatatypeConverter.printBase64Binary(
+                (keyId + ":" + (now + ttlMillis) + ":" + user).getBytes(UTF8));
+        return payload + '.' + DatatypeConverter.printBase64Binary(sign(signingKey(keyId), payload));
+    }
+
+    /**
+     * @return the user of the token, or <code>null</code> if the token is
+     * malformed, has not been signed by a current key, or has expired.
+     */
+    public String verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        try {
+            String[] claims = new String(DatatypeConverter.parseBase64Binary(payload), UTF8)
+                    .split(":", 3);
+            if (claims.length != 3) {
+                return null;
+            }
+            SecretKeySpec key = keys.get(Long.valueOf(claims[0]));
+            if (key == null) {
+                return null;
+            }
+            byte[] signature = DatatypeConverter.parseBase64Binary(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, sign(key, payload))) {
+                return null;
+            }
+            if (Long.parseLong(claims[1]) <= System.currentTimeMillis()) {
+                return null;
+            }
+            return claims[2];
+        } catch (IllegalArgumentException iae) {
+            // Includes NumberFormatException
+            return null;
+        }
+    }
+
+    private SecretKeySpec signingKey(long keyId) {
+        SecretKeySpec key = keys.get(keyId);
+        if (key != null) {
+            return key;
+        }
+        synchronized (keys) {
+            key = keys.get(keyId);
+            if (key == null) {
+                byte[] secret = new byte[32];
+                random.nextBytes(secret);
+                key = new SecretKeySpec(secret, ALGORITHM);
+                keys.put(keyId, key);
+
+                // Drop the keys of the periods which can not have signed a
+                // valid token anymore
+                long oldest = (System.currentTimeMillis() - ttlMillis) / rotationMillis;
+                for (Iterator<Long> it = keys.keySet().iterator(); it.hasNext();) {
+                    if (it.next() < oldest) {
+                        it.remove();
+                    }
+                }
+            }
+            return key;
+        }
+    }
+
+    private byte[] sign(SecretKeySpec key, String payload) {
+        Mac mac = macs.get();
+        try {
+            mac.init(key);
+        } catch (GeneralSecurityException gse) {
+            throw new IllegalStateException(gse);
+        }
+        return mac.doFinal(payload.getBytes(UTF8));
+    }
+}
@@ -1,5 +1,7 @@
 package net.openesb.standalone.security.realm;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  *
  * @author David BRASSELY (brasseld at gmail.com)
@@ -9,6 +11,8 @@ public abstract class AbstractRealm implements Realm {
     
     private String realmName;
     
+    private final AtomicInteger revision = new AtomicInteger();
+    
     protected AbstractRealm() {
     }
     
@@ -24,4 +28,19 @@ public abstract class AbstractRealm implements Realm {
     public void setName(String realmName) {
         this.realmName = realmName;
     }
+
+    /**
+     * @return a number changing each time the users of the realm are
+     * (re)loaded.
+     */
+    public int getRevision() {
+        return revision.get();
+    }
+
+    /**
+     * Called when the users of the realm have been (re)loaded.
+     */
+    public void loaded() {
+        revision.incrementAndGet();
+    }
 }
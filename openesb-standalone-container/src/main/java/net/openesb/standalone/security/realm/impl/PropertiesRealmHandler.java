@@ -50,6 +50,7 @@ public class PropertiesRealmHandler extends AbstractRealmHandler<PropertiesRealm
         boolean reload = Boolean.parseBoolean(properties.get(PROPERTY_RELOAD_ENABLE));
         PropertiesRealm propertiesRealm = new PropertiesRealm(realmName);
         propertiesRealm.setPath(propertyFile.getAbsolutePath());
+        propertiesRealm.setReload(reload);
 
         if (reload) {
             String sInterval = properties.get(PROPERTY_RELOAD_INTERVAL);
@@ -17,8 +17,16 @@ public class PropertiesRealmConverter implements
         RealmConverter<net.openesb.standalone.security.realm.impl.PropertiesRealm, PropertiesRealm> {
 
     @Override
-    public PropertiesRealm convert(net.openesb.standalone.security.realm.impl.PropertiesRealm realm) {
-        PropertiesRealm cRealm = new PropertiesRealm();
+    public PropertiesRealm convert(final net.openesb.standalone.security.realm.impl.PropertiesRealm realm) {
+        PropertiesRealm cRealm = new PropertiesRealm() {
+
+            @Override
+            public void onInit() {
+                // Called on the first load and on each reload of the file
+                super.onInit();
+                realm.loaded();
+            }
+        };
         cRealm.setCredentialsMatcher(new SimpleCredentialsMatcher() {
             
             private final PasswordManagement manager = new PasswordManagement();
@@ -35,10 +43,14 @@ public class PropertiesRealmConverter implements
             }
         });
         
-        cRealm.setResourcePath(realm.getPath());
-        
         if (realm.isReload()) {
-            cRealm.setReloadIntervalSeconds(realm.getReloadInterval());
+            // Shiro only watches resources with the file: prefix
+            cRealm.setResourcePath("file:" + realm.getPath());
+            if (realm.getReloadInterval() > 0) {
+                cRealm.setReloadIntervalSeconds(realm.getReloadInterval());
+            }
+        } else {
+            cRealm.setResourcePath(realm.getPath());
         }
         
         // Initialize the realm
@@ -4,6 +4,8 @@ import java.text.MessageFormat;
 import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,6 +14,12 @@ import java.util.logging.Logger;
  * Bundle[locale].properties or bundle[locale].properties file in a specified
  * package. This class has methods for formating the messages.
  *
+ * <p>Patterns are parsed once per key and cached. A cached
+ * <code>MessageFormat</code> is not thread-safe, so each call formats with
+ * a copy of it, which is much cheaper than parsing the pattern again. The
+ * <code>log</code> methods only look up and format the message if the
+ * logger is enabled for the level.</p>
+ *
  * @author David BRASSELY (brasseld at gmail.com)
  * @author OpenESB Community
  */
@@ -28,9 +36,22 @@ public class I18NBundle {
     /**
      * resource bundle
      */
-    private ResourceBundle mBundle = null;
+    private volatile ResourceBundle mBundle = null;
+
+    /**
+     * parsed patterns, by key
+     */
+    private final ConcurrentMap<String, MessageFormat> mFormats =
+            new ConcurrentHashMap<String, MessageFormat>();
+
+    /**
+     * Initialized on first use of {@link I18NBundle#getBundle()}, the class
+     * loader guarantees that it is created once.
+     */
+    private static class Holder {
 
-    private static I18NBundle instance;
+        private static final I18NBundle INSTANCE = new I18NBundle("net.openesb.standalone");
+    }
     
     /**
      * constructor
@@ -44,11 +65,7 @@ public class I18NBundle {
     }
 
     public static I18NBundle getBundle() {
-        if (instance == null) {
-            instance = new I18NBundle("net.openesb.standalone");
-        }
-        
-        return instance;
+        return Holder.INSTANCE;
     }
     
     /**
@@ -84,27 +101,41 @@ public class I18NBundle {
      * @return resource bundle
      */
     private ResourceBundle getResourceBundle() {
+        ResourceBundle bundle = this.mBundle;
+        if (bundle != null) {
+            return bundle;
+        }
         // lazzy init
-        if (this.mBundle == null) {
-            loadBundle(this.mBundlePackageName, "Bundle");
-            // try to load the bundle with lower case first letter
+        synchronized (this) {
             if (this.mBundle == null) {
-                loadBundle(this.mBundlePackageName, "bundle");
+                loadBundle(this.mBundlePackageName, "Bundle");
+                // try to load the bundle with lower case first letter
+                if (this.mBundle == null) {
+                    loadBundle(this.mBundlePackageName, "bundle");
+                }
             }
+            return this.mBundle;
         }
-        return this.mBundle;
     }
 
     /**
      * gets the i18n message
      *
-     * @param aI18NMsg String.
+     * @param aI18NKey i18n key
      * @param aArgs Object[]
      * @return formated i18n string.
      */
-    private static String getFormattedMessage(
-            String aI18NMsg, Object[] aArgs) {
-        return MessageFormat.format(aI18NMsg, aArgs);
+    private String getFormattedMessage(String aI18NKey, Object[] aArgs) {
+        MessageFormat format = mFormats.get(aI18NKey);
+        if (format == null) {
+            format = new MessageFormat(getResourceBundle().getString(aI18NKey));
+            MessageFormat previous = mFormats.putIfAbsent(aI18NKey, format);
+            if (previous != null) {
+                format = previous;
+            }
+        }
+        // The cached instance is shared, format with a copy
+        return ((MessageFormat) format.clone()).format(aArgs, new StringBuffer(), null).toString();
     }
 
     /**
@@ -115,11 +146,10 @@ public class I18NBundle {
      * @return formatted i18n string
      */
     public String getMessage(String aI18NKey, Object[] anArgsArray) {
-        String i18nMessage = getResourceBundle().getString(aI18NKey);
         if (anArgsArray != null) {
-            return getFormattedMessage(i18nMessage, anArgsArray);
+            return getFormattedMessage(aI18NKey, anArgsArray);
         } else {
-            return i18nMessage;
+            return getResourceBundle().getString(aI18NKey);
         }
     }
 
@@ -171,4 +201,35 @@ public class I18NBundle {
         Object[] args = {arg1, arg2, arg3};
         return getMessage(aI18NKey, args);
     }
-}
\ No newline at end of file
+
+    /**
+     * logs the i18n message, only formatted if the logger is enabled for the
+     * level
+     *
+     * @param logger target logger
+     * @param level message level
+     * @param aI18NKey i18n key
+     * @param args arguments of the formatted string
+     */
+    public void log(Logger logger, Level level, String aI18NKey, Object... args) {
+        if (logger.isLoggable(level)) {
+            logger.log(level, getMessage(aI18NKey, args.length == 0 ? null : args));
+        }
+    }
+
+    /**
+     * logs the i18n message with a throwable, only formatted if the logger is
+     * enabled for the level
+     *
+     * @param logger target logger
+     * @param level message level
+     * @param thrown throwable associated with the message
+     * @param aI18NKey i18n key
+     * @param args arguments of the formatted string
+     */
+    public void log(Logger logger, Level level, Throwable thrown, String aI18NKey, Object... args) {
+        if (logger.isLoggable(level)) {
+            logger.log(level, getMessage(aI18NKey, args.length == 0 ? null : args), thrown);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package net.openesb.standalone.http.handlers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author OpenESB Community
+ */
+public class LogsHandlerTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("logs", ".log");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void tailOfShortFile() throws IOException {
+        write("a\nb\nc\n");
+        assertEquals(6, tailStart(0));
+        assertEquals(4, tailStart(1));
+        assertEquals(2, tailStart(2));
+        assertEquals(0, tailStart(3));
+        assertEquals(0, tailStart(10));
+    }
+
+    @Test
+    public void tailWithoutFinalNewline() throws IOException {
+        write("a\nb\nc");
+        assertEquals(4, tailStart(1));
+        assertEquals(2, tailStart(2));
+        assertEquals(0, tailStart(3));
+    }
+
+    @Test
+    public void tailOfEmptyFile() throws IOException {
+        write("");
+        assertEquals(0, tailStart(0));
+        assertEquals(0, tailStart(5));
+    }
+
+    @Test
+    public void tailStartInEarlierChunk() throws IOException {
+        StringBuilder content = new StringBuilder();
+        content.append(repeat('x', 9000)).append('\n');
+        content.append(repeat('y', 100)).append('\n');
+        content.append("LAST");
+        write(content.toString());
+
+        assertEquals(9001 + 101, tailStart(1));
+        assertEquals(9001, tailStart(2));
+        assertEquals(0, tailStart(3));
+    }
+
+    @Test
+    public void tailOfLinesAcrossChunks() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        write(content.toString());
+
+        String text = content.toString();
+        long start = tailStart(1000);
+        assertEquals(text.indexOf("line 4000\n"), start);
+    }
+
+    @Test
+    public void tailOfMappedFileStillOpen() throws IOException {
+        byte[] content = "a\nb\nc\n".getBytes("UTF-8");
+        RandomAccessFile writer = new RandomAccessFile(file, "rw");
+        try {
+            // The segment mapped by the handler extends the file with zeros
+            MappedByteBuffer segment = writer.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, 16 * 1024);
+            segment.put(content);
+            assertEquals(16 * 1024, file.length());
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                long length = LogsHandler.LocalLogsHandler.trimmedLength(channel);
+                assertEquals(content.length, length);
+                assertEquals(4, LogsHandler.LocalLogsHandler.tailStart(channel, length, 1));
+                assertEquals(0, LogsHandler.LocalLogsHandler.tailStart(channel, length, 3));
+            } finally {
+                raf.close();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void trimmedLengthOfEmptyFile() throws IOException {
+        write("");
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            assertEquals(0, LogsHandler.LocalLogsHandler.trimmedLength(raf.getChannel()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void recordTimestamps() throws IOException {
+        // 2026-10-16T11:00:00Z
+        long millis = 1792148400000L;
+        LogsHandler.RecordFilter filter = new LogsHandler.RecordFilter(
+                millis, millis + 1000, Level.ALL, null);
+
+        assertTrue(accept(filter, "{\"timestamp\":\"2026-10-16T12:00:00.500+01:00\",\"level\":\"INFO\"}\n"));
+        assertTrue(accept(filter, "{\"timestamp\":\"2026-10-16T11:00:00.500Z\",\"level\":\"INFO\"}\n"));
+        assertFalse(accept(filter, "{\"timestamp\":\"2026-10-16T12:00:00.500Z\",\"level\":\"INFO\"}\n"));
+        assertTrue(accept(filter, "2026-10-16T12:00:00.500+0100 INFO [a.b] (main) message\n"));
+        assertFalse(accept(filter, "2026-10-16T12:00:02.500+0100 INFO [a.b] (main) message\n"));
+    }
+
+    private static boolean accept(LogsHandler.RecordFilter filter, String line)
+            throws IOException {
+        byte[] bytes = line.getBytes("UTF-8");
+        return filter.isRecordStart(bytes, 0, bytes.length)
+                && filter.accept(bytes, 0, bytes.length, true);
+    }
+
+    private long tailStart(int lines) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return LogsHandler.LocalLogsHandler.tailStart(channel, channel.size(), lines);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void write(String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package net.openesb.standalone.http.handlers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import net.openesb.standalone.Constants;
+import net.openesb.standalone.env.Environment;
+import net.openesb.standalone.settings.ImmutableSettings;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.junit.Test;
+
+import static net.openesb.standalone.http.handlers.SitePluginHandler.LocalPluginHandler.UNSATISFIABLE;
+import static net.openesb.standalone.http.handlers.SitePluginHandler.LocalPluginHandler.parseRange;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author OpenESB Community
+ */
+public class SitePluginHandlerTest {
+
+    @Test
+    public void closedRange() {
+        assertArrayEquals(new long[]{0, 99}, parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{500, 999}, parseRange(" bytes=500-2000 ", 1000));
+    }
+
+    @Test
+    public void openRange() {
+        assertArrayEquals(new long[]{900, 999}, parseRange("bytes=900-", 1000));
+    }
+
+    @Test
+    public void suffixRange() {
+        assertArrayEquals(new long[]{900, 999}, parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[]{0, 999}, parseRange("bytes=-5000", 1000));
+    }
+
+    @Test
+    public void unsatisfiableRange() {
+        assertSame(UNSATISFIABLE, parseRange("bytes=1000-", 1000));
+        assertSame(UNSATISFIABLE, parseRange("bytes=-0", 1000));
+        assertSame(UNSATISFIABLE, parseRange("bytes=0-", 0));
+    }
+
+    @Test
+    public void ignoredRange() {
+        assertNull(parseRange("items=0-99", 1000));
+        assertNull(parseRange("bytes=0-9,20-29", 1000));
+        assertNull(parseRange("bytes=99-0", 1000));
+        assertNull(parseRange("bytes=-", 1000));
+        assertNull(parseRange("bytes=10", 1000));
+        assertNull(parseRange("bytes=a-b", 1000));
+    }
+
+    @Test
+    public void largePrecompressedFileKeepsItsEncoding() throws Exception {
+        File plugins = File.createTempFile("plugins", "");
+        plugins.delete();
+        File site = new File(plugins, "test" + File.separator + "_site");
+        site.mkdirs();
+        File file = new File(site, "app.js");
+        File gz = new File(site, "app.js.gz");
+        write(file, 1024 * 1024);
+        write(gz, 512 * 1024);
+        gz.setLastModified(file.lastModified());
+
+        String home = System.getProperty(Constants.OPENESB_HOME_PROP);
+        System.setProperty(Constants.OPENESB_HOME_PROP, plugins.getPath());
+        Map<String, String> settings = new HashMap<String, String>();
+        settings.put("path.plugins", plugins.getPath());
+        Environment environment = new Environment(new ImmutableSettings(settings));
+        if (home == null) {
+            System.clearProperty(Constants.OPENESB_HOME_PROP);
+        } else {
+            System.setProperty(Constants.OPENESB_HOME_PROP, home);
+        }
+
+        int port = freePort();
+        HttpServer server = new HttpServer();
+        NetworkListener listener = new NetworkListener("test", "127.0.0.1", port);
+        listener.setSendFileEnabled(true);
+        server.addListener(listener);
+        SitePluginHandler handler = new SitePluginHandler(environment, 0, null, true);
+        server.getServerConfiguration().addHttpHandler(handler.getHandler(), handler.path());
+        server.start();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://127.0.0.1:" + port + "/plugin/test/app.js").openConnection();
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            assertEquals(200, connection.getResponseCode());
+            assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+            assertEquals(gz.length(), drain(connection.getInputStream()));
+        } finally {
+            server.shutdownNow();
+            gz.delete();
+            file.delete();
+            site.delete();
+            site.getParentFile().delete();
+            plugins.delete();
+        }
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        try {
+            long length = 0;
+            byte[] buffer = new byte[8192];
+            int rd;
+            while ((rd = in.read(buffer)) > 0) {
+                length += rd;
+            }
+            return length;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package net.openesb.standalone.http.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author OpenESB Community
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.index(value));
+            assertEquals(value, LatencyHistogram.upperBound(value));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        assertEquals(16, LatencyHistogram.index(16));
+        assertEquals(16, LatencyHistogram.upperBound(16));
+        assertEquals(31, LatencyHistogram.index(31));
+        assertEquals(32, LatencyHistogram.index(32));
+        assertEquals(33, LatencyHistogram.upperBound(32));
+        assertEquals(32, LatencyHistogram.index(33));
+
+        for (int index = 1; index < 600; index++) {
+            long lower = LatencyHistogram.upperBound(index - 1) + 1;
+            assertEquals(index, LatencyHistogram.index(lower));
+            assertEquals(index, LatencyHistogram.index(LatencyHistogram.upperBound(index)));
+        }
+    }
+
+    @Test
+    public void relativePrecision() {
+        long[] values = {17, 100, 1000, 12345, 999999, 123456789L, 1L << 39};
+        for (long value : values) {
+            long upperBound = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+            assertTrue(upperBound >= value);
+            assertTrue((upperBound - value) * 16 <= value);
+        }
+    }
+
+    @Test
+    public void largeValuesInLastBucket() {
+        int last = LatencyHistogram.index(Long.MAX_VALUE);
+        assertEquals(last, LatencyHistogram.index(1L << 41));
+        assertTrue(LatencyHistogram.index(1L << 40) < last);
+    }
+
+    @Test
+    public void cumulativeCounts() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(255);
+        histogram.record(256);
+        histogram.record(1000);
+        histogram.record(1L << 30);
+
+        long[] cumulativeCounts = histogram.getCumulativeCounts(8, 10);
+        assertEquals(4, cumulativeCounts.length);
+        assertEquals(2, cumulativeCounts[0]);
+        assertEquals(3, cumulativeCounts[1]);
+        assertEquals(4, cumulativeCounts[2]);
+        assertEquals(5, cumulativeCounts[3]);
+    }
+
+    @Test
+    public void quantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtQuantile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        long median = histogram.getValueAtQuantile(0.5);
+        assertTrue(median >= 50000 && median <= 50000 + 50000 / 16);
+        assertEquals(100000, histogram.getValueAtQuantile(1.0));
+    }
+}